@@ -2,6 +2,7 @@ package coffeeshop.app;
 
 import java.util.Scanner;
 
+import coffeeshop.dao.OrderDAO;
 import coffeeshop.db.DatabaseConnection;
 import coffeeshop.ui.CustomerView;
 import coffeeshop.ui.ManagementView;
@@ -34,8 +35,13 @@ public class CoffeeShopApp {
             return;
         }
         
+        boolean firstPaint = true;
         while (true) {
             showMainMenu();
+            if (firstPaint) {
+                StartupOrchestrator.getInstance().markFirstPaint();
+                firstPaint = false;
+            }
             int choice = getIntInput();
             
             switch (choice) {
@@ -80,8 +86,10 @@ public class CoffeeShopApp {
             
             databaseConnection = DatabaseConnection.getInstance();
             
-            DatabaseConnection.createTables();
-            DatabaseConnection.insertSampleData();
+            StartupOrchestrator startup = StartupOrchestrator.getInstance().start();
+            if (!startup.awaitDatabase()) {
+                return false;
+            }
             
             System.out.println("Database initialized successfully!");
             return true;
@@ -206,6 +214,9 @@ public class CoffeeShopApp {
             }
             
             if (databaseConnection != null) {
+                if (!OrderDAO.awaitSubmittedOrders(5000)) {
+                    System.out.println("Some orders are still being saved; they will be resubmitted on next start.");
+                }
                 DatabaseConnection.closeConnection();
             }
             
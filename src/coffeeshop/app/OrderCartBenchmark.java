@@ -0,0 +1,113 @@
+package coffeeshop.app;
+
+import coffeeshop.model.Coffee;
+import coffeeshop.model.MenuItem;
+import coffeeshop.model.Order;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * OrderCartBenchmark
+ * ------------------
+ * Đo thao tác giỏ hàng trong bộ nhớ (không cần DB) trên giỏ 1..200 dòng: thêm món, thêm lại món đã có,
+ * đổi số lượng rồi xóa từng món; sau mỗi thao tác đọc tổng tiền, số món và danh sách món như khi UI làm mới.
+ * Kết quả là ns mỗi thao tác (trung vị của các vòng đo, sau các vòng warm-up cho JIT).
+ *
+ *   java -cp "bin:Library/*" coffeeshop.app.OrderCartBenchmark [rounds]
+ */
+public class OrderCartBenchmark {
+
+    private static final int[] CART_SIZES = {1, 5, 10, 25, 50, 100, 200};
+    private static final int WARMUP_ROUNDS = 5;
+    private static final long TARGET_NANOS_PER_ROUND = 200_000_000L;
+
+    // Giữ kết quả để JIT không bỏ phần tính toán
+    private static volatile double sink;
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        List<MenuItem> menu = menu(CART_SIZES[CART_SIZES.length - 1]);
+        // Một order dùng lại cho mọi giỏ (mỗi giỏ kết thúc rỗng): không đo việc tạo Order và khóa UUID
+        Order order = new Order(0, 1, Order.ServiceType.TAKEAWAY);
+
+        System.out.printf("%-6s %14s %16s%n", "lines", "ns/operation", "carts/sec");
+        for (int lines : CART_SIZES) {
+            // Số giỏ mỗi vòng sao cho một vòng chạy khoảng TARGET_NANOS_PER_ROUND
+            int carts = calibrate(order, menu, lines);
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                runCarts(order, menu, lines, carts);
+            }
+            long[] samples = new long[rounds];
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+                runCarts(order, menu, lines, carts);
+                samples[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(samples);
+            long median = samples[rounds / 2];
+            long operations = (long) carts * operationsPerCart(lines);
+            System.out.printf("%-6d %14.1f %16.1f%n", lines, (double) median / operations,
+                    carts / (median / 1_000_000_000.0));
+        }
+    }
+
+    private static int calibrate(Order order, List<MenuItem> menu, int lines) {
+        int carts = 1;
+        while (true) {
+            long start = System.nanoTime();
+            runCarts(order, menu, lines, carts);
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= TARGET_NANOS_PER_ROUND / 10 || carts >= 1 << 24) {
+                return (int) Math.max(1, (long) carts * TARGET_NANOS_PER_ROUND / Math.max(1, elapsed));
+            }
+            carts *= 2;
+        }
+    }
+
+    private static int operationsPerCart(int lines) {
+        return lines * 4;
+    }
+
+    private static void runCarts(Order order, List<MenuItem> menu, int lines, int carts) {
+        double acc = 0;
+        for (int c = 0; c < carts; c++) {
+            for (int i = 0; i < lines; i++) {
+                order.addItem(menu.get(i), 1);
+                acc += refresh(order);
+            }
+            for (int i = 0; i < lines; i++) {
+                order.addItem(menu.get(i), 1);
+                acc += refresh(order);
+            }
+            for (int i = 0; i < lines; i++) {
+                order.updateItemQuantity(menu.get(i).getId(), 3);
+                acc += refresh(order);
+            }
+            for (int i = 0; i < lines; i++) {
+                order.removeItem(menu.get(i).getId());
+                acc += refresh(order);
+            }
+        }
+        sink = acc;
+    }
+
+    // Những gì giỏ hàng trên UI đọc sau mỗi thay đổi (trừ việc vẽ từng dòng)
+    private static double refresh(Order order) {
+        return order.getTotalAmount() + order.getTax() + order.getTotalItems() + order.getOrderItems().size();
+    }
+
+    private static List<MenuItem> menu(int count) {
+        List<MenuItem> items = new ArrayList<>(count);
+        Coffee.Size[] sizes = Coffee.Size.values();
+        for (int i = 0; i < count; i++) {
+            Coffee coffee = new Coffee(i + 1, "Coffee " + (i + 1), "", 20000 + 500 * (i % 40),
+                    Coffee.CoffeeType.values()[i % Coffee.CoffeeType.values().length], sizes[i % sizes.length], i % 2 == 0);
+            if (i % 3 == 0) {
+                coffee.addCustomization("Extra shot");
+            }
+            items.add(coffee);
+        }
+        return items;
+    }
+}
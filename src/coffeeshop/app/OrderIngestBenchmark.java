@@ -0,0 +1,192 @@
+package coffeeshop.app;
+
+import coffeeshop.dao.CustomerDAO;
+import coffeeshop.dao.MenuItemDAO;
+import coffeeshop.dao.OrderDAO;
+import coffeeshop.db.DatabaseConnection;
+import coffeeshop.model.Customer;
+import coffeeshop.model.MenuItem;
+import coffeeshop.model.Order;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * OrderIngestBenchmark
+ * --------------------
+ * Đo tốc độ ghi order (orders/giây): createOrder từng order một so với createOrders hàng loạt.
+ * Các order sinh ra được đánh dấu bằng special_instructions = "bench-{thời điểm chạy}" và xóa khi chạy xong.
+ * Thêm một lượt nhập order của các ngày trước (backfill) rồi kiểm tra sales_daily đã cộng đúng ngày.
+ *
+ *   java -cp "bin:Library/*" coffeeshop.app.OrderIngestBenchmark [count] [commitEvery]
+ *   java -Ddb.type=mysql -cp "bin:Library/*" coffeeshop.app.OrderIngestBenchmark 20000 1000
+ */
+public class OrderIngestBenchmark {
+
+    private static final int WARMUP_ORDERS = 200;
+    private static final int MAX_SINGLE_ORDERS = 1000;
+    private static final int BACKFILL_DAYS = 7;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int commitEvery = args.length > 1 ? Integer.parseInt(args[1]) : DatabaseConnection.getBulkCommitSize();
+
+        if (!DatabaseConnection.ensureSchema() || !DatabaseConnection.ensureSampleData()) {
+            System.err.println("Database is not ready, aborting benchmark");
+            return;
+        }
+
+        List<Customer> customers = new CustomerDAO().getAllCustomers();
+        List<MenuItem> menuItems = new MenuItemDAO().getAllMenuItems();
+        if (customers.isEmpty() || menuItems.isEmpty()) {
+            System.err.println("Benchmark needs at least one customer and one menu item");
+            return;
+        }
+
+        String tag = "bench-" + System.currentTimeMillis();
+        OrderDAO orderDAO = new OrderDAO();
+        Random random = new Random(42);
+
+        try {
+            // Warm-up: nạp JIT, pool và statement cache trước khi đo
+            orderDAO.createOrders(generate(WARMUP_ORDERS, customers, menuItems, tag, random), commitEvery);
+            for (Order order : generate(WARMUP_ORDERS / 10, customers, menuItems, tag, random)) {
+                orderDAO.createOrder(order);
+            }
+
+            int singleCount = Math.min(count, MAX_SINGLE_ORDERS);
+            List<Order> single = generate(singleCount, customers, menuItems, tag, random);
+            long start = System.nanoTime();
+            int failed = 0;
+            for (Order order : single) {
+                if (orderDAO.createOrder(order) <= 0) failed++;
+            }
+            report("createOrder (one tx per order)", singleCount, failed, System.nanoTime() - start);
+
+            List<Order> bulk = generate(count, customers, menuItems, tag, random);
+            start = System.nanoTime();
+            int[] ids = orderDAO.createOrders(bulk, commitEvery);
+            long elapsed = System.nanoTime() - start;
+            failed = 0;
+            for (int id : ids) {
+                if (id <= 0) failed++;
+            }
+            report("createOrders (commit every " + commitEvery + ")", count, failed, elapsed);
+
+            backfill(orderDAO, generate(count, customers, menuItems, tag, random), commitEvery, random);
+        } finally {
+            cleanup(tag);
+            DatabaseConnection.closeConnection();
+        }
+    }
+
+    private static List<Order> generate(int count, List<Customer> customers, List<MenuItem> menuItems,
+                                        String tag, Random random) {
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Order order = new Order();
+            order.setCustomerId(customers.get(random.nextInt(customers.size())).getCustomerId());
+            order.setServiceType(random.nextBoolean() ? Order.ServiceType.DINE_IN : Order.ServiceType.TAKEAWAY);
+            order.setSpecialInstructions(tag);
+            int lines = 1 + random.nextInt(3);
+            for (int j = 0; j < lines; j++) {
+                order.addItem(menuItems.get(random.nextInt(menuItems.size())), 1 + random.nextInt(2));
+            }
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * Nhập order đã hoàn thành của BACKFILL_DAYS ngày trước rồi so sales_daily của các ngày đó trước và sau:
+     * mỗi ngày phải tăng đúng số order và doanh thu đã nhập cho ngày đó.
+     */
+    private static void backfill(OrderDAO orderDAO, List<Order> orders, int commitEvery, Random random) {
+        LocalDate today = LocalDate.now();
+        LocalDate from = today.minusDays(BACKFILL_DAYS);
+        LocalDate to = today.minusDays(1);
+        Map<LocalDate, double[]> expected = new TreeMap<>();
+        for (Order order : orders) {
+            LocalDateTime time = from.plusDays(random.nextInt(BACKFILL_DAYS))
+                    .atTime(7 + random.nextInt(14), random.nextInt(60), random.nextInt(60));
+            order.setOrderTime(time);
+            order.setStatus(Order.OrderStatus.COMPLETED);
+            order.setCompletionTime(time.plusMinutes(5 + random.nextInt(20)));
+        }
+
+        Map<LocalDate, double[]> before = dailyTotals(orderDAO, from, to);
+        long start = System.nanoTime();
+        int[] ids = orderDAO.createOrders(orders, commitEvery);
+        long elapsed = System.nanoTime() - start;
+        int failed = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] <= 0) {
+                failed++;
+                continue;
+            }
+            double[] day = expected.computeIfAbsent(orders.get(i).getOrderTime().toLocalDate(), d -> new double[2]);
+            day[0]++;
+            day[1] += orders.get(i).getTotalAmount();
+        }
+        report("createOrders backfill (" + BACKFILL_DAYS + " past days)", orders.size(), failed, elapsed);
+
+        Map<LocalDate, double[]> after = dailyTotals(orderDAO, from, to);
+        int mismatched = 0;
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            double[] want = expected.getOrDefault(day, new double[2]);
+            double[] was = before.getOrDefault(day, new double[2]);
+            double[] now = after.getOrDefault(day, new double[2]);
+            if (now[0] - was[0] != want[0] || Math.abs(now[1] - was[1] - want[1]) > 0.01) {
+                mismatched++;
+                System.err.printf("sales_daily %s: expected +%d orders / +%.2f, got +%d / +%.2f%n",
+                        day, (long) want[0], want[1], (long) (now[0] - was[0]), now[1] - was[1]);
+            }
+        }
+        System.out.println(mismatched == 0
+                ? "sales_daily matches the backfilled orders for " + from + ".." + to
+                : "sales_daily is off on " + mismatched + " of " + BACKFILL_DAYS + " backfilled days");
+    }
+
+    private static Map<LocalDate, double[]> dailyTotals(OrderDAO orderDAO, LocalDate from, LocalDate to) {
+        Map<LocalDate, double[]> totals = new TreeMap<>();
+        for (OrderDAO.SalesRow row : orderDAO.getDailySales(from, to)) {
+            double[] day = totals.computeIfAbsent(row.getDate(), d -> new double[2]);
+            day[0] += row.getOrderCount();
+            day[1] += row.getRevenue();
+        }
+        return totals;
+    }
+
+    private static void report(String label, int count, int failed, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        System.out.printf("[%s] %-36s %7d orders in %8.3f s = %10.1f orders/sec%s%n",
+                DatabaseConnection.getDbType(), label, count, seconds, count / seconds,
+                failed > 0 ? " (" + failed + " failed)" : "");
+    }
+
+    private static void cleanup(String tag) {
+        try {
+            int removed = DatabaseConnection.executeWrite(conn -> {
+                try (PreparedStatement items = conn.prepareStatement(
+                        "DELETE FROM order_items WHERE order_id IN (SELECT order_id FROM orders WHERE special_instructions = ?)");
+                     PreparedStatement orders = conn.prepareStatement("DELETE FROM orders WHERE special_instructions = ?")) {
+                    items.setString(1, tag);
+                    items.executeUpdate();
+                    orders.setString(1, tag);
+                    return orders.executeUpdate();
+                }
+            });
+            System.out.println("Removed " + removed + " benchmark orders");
+            // Các order vừa xóa đã được cộng vào bảng tổng hợp doanh số
+            new OrderDAO().rebuildSalesRollup();
+        } catch (SQLException e) {
+            System.err.println("Error removing benchmark orders (" + tag + "): " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package coffeeshop.app;
+
+import coffeeshop.dao.CustomerDAO;
+import coffeeshop.dao.KitchenQueue;
+import coffeeshop.dao.MenuItemDAO;
+import coffeeshop.dao.OrderDAO;
+import coffeeshop.db.DatabaseConnection;
+import coffeeshop.model.Customer;
+import coffeeshop.model.MenuItem;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * StartupOrchestrator
+ * -------------------
+ * Chạy các pha khởi động (connect → migrate → seed → warm caches) trên luồng nền
+ * để giao diện có thể hiển thị ngay trạng thái "đang tải". Menu và khách hàng được
+ * nạp song song sau khi DB sẵn sàng; UI lấy kết quả qua các CompletableFuture.
+ *
+ * Khi pha cuối (first paint) được đánh dấu và cache đã nạp xong, bảng thời gian
+ * từng pha được in ra một lần để theo dõi thời gian khởi động lạnh.
+ */
+public class StartupOrchestrator {
+
+    public enum Phase {
+        CONNECT("connect"),
+        MIGRATE("migrate"),
+        SEED("seed"),
+        WARM_CACHES("warm caches"),
+        FIRST_PAINT("first paint");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static StartupOrchestrator instance;
+
+    private final long startNanos = System.nanoTime();
+    private final Map<Phase, Long> durations = Collections.synchronizedMap(new EnumMap<>(Phase.class));
+    private final ExecutorService executor;
+
+    private CompletableFuture<Boolean> databaseReady;
+    private CompletableFuture<List<MenuItem>> menuItems;
+    private CompletableFuture<List<String>> categories;
+    private CompletableFuture<List<Customer>> customers;
+    private long preloadedMenuVersion;
+    private boolean preloadedMenuClaimed;
+    private volatile boolean reported;
+
+    private StartupOrchestrator() {
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(3, r -> {
+            Thread t = new Thread(r, "startup-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static synchronized StartupOrchestrator getInstance() {
+        if (instance == null) {
+            instance = new StartupOrchestrator();
+        }
+        return instance;
+    }
+
+    // ==========================
+    // Khởi động
+    // ==========================
+    /** Bắt đầu các pha khởi động trên luồng nền; gọi nhiều lần chỉ chạy một lần. */
+    public synchronized StartupOrchestrator start() {
+        if (databaseReady != null) return this;
+
+        databaseReady = CompletableFuture.supplyAsync(() -> {
+            if (!timed(Phase.CONNECT, DatabaseConnection::testConnection)) return false;
+            if (!timed(Phase.MIGRATE, DatabaseConnection::ensureSchema)) return false;
+            if (!timed(Phase.SEED, DatabaseConnection::ensureSampleData)) return false;
+            // Ghi lại các order thanh toán còn trong journal của lần chạy trước
+            OrderDAO.resumeSubmittedOrders();
+            OrderDAO.scheduleArchiving();
+            // Hàng đợi bếp: nạp các order đang hoạt động một lần, sau đó cập nhật theo sự kiện ghi
+            KitchenQueue.get().reload();
+            return true;
+        }, executor);
+
+        long[] warmStart = new long[1];
+        CompletableFuture<Boolean> warmGate = databaseReady.thenApply(ok -> {
+            warmStart[0] = System.nanoTime();
+            return ok;
+        });
+        MenuItemDAO menuDAO = new MenuItemDAO();
+        // Lấy trước khi đọc: một lần ghi menu trong lúc nạp cũng làm bản nạp sẵn bị bỏ
+        preloadedMenuVersion = MenuItemDAO.menuVersion();
+        CustomerDAO customerDAO = new CustomerDAO();
+        menuItems = warmGate.thenApplyAsync(ok -> ok ? menuDAO.getAvailableMenuItems() : new ArrayList<MenuItem>(), executor);
+        categories = warmGate.thenApplyAsync(ok -> ok ? menuDAO.getAllCategories() : new ArrayList<String>(), executor);
+        customers = warmGate.thenApplyAsync(ok -> ok ? customerDAO.getAllCustomers() : new ArrayList<Customer>(), executor);
+        CompletableFuture.allOf(menuItems, categories, customers).handle((v, ex) -> {
+            durations.put(Phase.WARM_CACHES, warmStart[0] == 0 ? 0L : System.nanoTime() - warmStart[0]);
+            if (ex != null) {
+                System.err.println("Cache warm-up failed: " + ex.getMessage());
+            }
+            reportIfComplete();
+            return null;
+        });
+        return this;
+    }
+
+    private boolean timed(Phase phase, BooleanSupplier step) {
+        long t0 = System.nanoTime();
+        try {
+            return step.getAsBoolean();
+        } finally {
+            durations.put(phase, System.nanoTime() - t0);
+        }
+    }
+
+    // ==========================
+    // Kết quả cho UI
+    // ==========================
+    public CompletableFuture<Boolean> databaseReady() {
+        return start().databaseReady;
+    }
+
+    public CompletableFuture<List<MenuItem>> menuItems() {
+        return start().menuItems;
+    }
+
+    public CompletableFuture<List<String>> categories() {
+        return start().categories;
+    }
+
+    /**
+     * Menu nạp sẵn chỉ dành cho cửa sổ đầu tiên: trả về true đúng một lần và chỉ khi menu chưa bị ghi
+     * từ lúc nạp. Các cửa sổ sau (hoặc khi menu đã đổi) đọc lại từ DB.
+     */
+    public synchronized boolean claimPreloadedMenu() {
+        start();
+        if (preloadedMenuClaimed) return false;
+        preloadedMenuClaimed = true;
+        return isPreloadedMenuCurrent();
+    }
+
+    public synchronized boolean isPreloadedMenuCurrent() {
+        return preloadedMenuVersion == MenuItemDAO.menuVersion();
+    }
+
+    public CompletableFuture<List<Customer>> customers() {
+        return start().customers;
+    }
+
+    /** Chờ DB sẵn sàng (dùng cho giao diện console). */
+    public boolean awaitDatabase() {
+        try {
+            return databaseReady().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            System.err.println("Database startup failed: " + e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    /** Đánh dấu khung giao diện đầu tiên đã hiển thị (tính từ lúc khởi tạo orchestrator). */
+    public void markFirstPaint() {
+        if (durations.putIfAbsent(Phase.FIRST_PAINT, System.nanoTime() - startNanos) == null) {
+            reportIfComplete();
+        }
+    }
+
+    // ==========================
+    // Báo cáo
+    // ==========================
+    private void reportIfComplete() {
+        synchronized (this) {
+            if (reported || !durations.containsKey(Phase.FIRST_PAINT) || !durations.containsKey(Phase.WARM_CACHES)) {
+                return;
+            }
+            reported = true;
+        }
+        System.out.println(timingTable());
+    }
+
+    public String timingTable() {
+        StringBuilder sb = new StringBuilder("Startup timings:\n");
+        sb.append(String.format("  %-12s %10s%n", "phase", "ms"));
+        for (Phase phase : Phase.values()) {
+            Long nanos = durations.get(phase);
+            sb.append(String.format("  %-12s %10s%n", phase.getLabel(),
+                    nanos == null ? "-" : String.format("%.1f", nanos / 1e6)));
+        }
+        sb.append(String.format("  %-12s %10.1f", "total", (System.nanoTime() - startNanos) / 1e6));
+        return sb.toString();
+    }
+}
@@ -1,6 +1,7 @@
 package coffeeshop.dao;
 
 import coffeeshop.db.DatabaseConnection;
+import coffeeshop.db.IdAllocator;
 import coffeeshop.model.*;
 import java.sql.*;
 import java.util.ArrayList;
@@ -11,6 +12,7 @@ import java.util.List;
  * Handles all database operations related to customers
  */
 public class CustomerDAO {
+    private static final IdAllocator CUSTOMER_IDS = IdAllocator.forTable("customers", "customer_id");
     private final DatabaseConnection dbConnection;
 
     public CustomerDAO() {
@@ -19,22 +21,19 @@ public class CustomerDAO {
 
     // Create a new customer
     public int createCustomer(Customer customer) {
-        String query = "INSERT INTO customers (name, email, phone_number, loyalty_points) VALUES (?, ?, ?, ?)";
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-
-            pstmt.setString(1, customer.getName());
-            pstmt.setString(2, customer.getEmail());
-            pstmt.setString(3, customer.getPhoneNumber());
-            pstmt.setDouble(4, customer.getLoyaltyPoints());
-            int rowsAffected = pstmt.executeUpdate();
-
-            if (rowsAffected > 0) {
-                ResultSet generatedKeys = pstmt.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
+        String query = "INSERT INTO customers (customer_id, name, email, phone_number, loyalty_points) VALUES (?, ?, ?, ?, ?)";
+        try {
+            return DatabaseConnection.executeWrite(conn -> {
+                int customerId = CUSTOMER_IDS.next(conn);
+                try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    pstmt.setInt(1, customerId);
+                    pstmt.setString(2, customer.getName());
+                    pstmt.setString(3, customer.getEmail());
+                    pstmt.setString(4, customer.getPhoneNumber());
+                    pstmt.setDouble(5, customer.getLoyaltyPoints());
+                    return pstmt.executeUpdate() > 0 ? customerId : -1;
                 }
-            }
+            });
         } catch (SQLException e) {
             System.err.println("Error creating customer: " + e.getMessage());
         }
@@ -80,8 +79,8 @@ public class CustomerDAO {
         List<Customer> customers = new ArrayList<>();
         String query = "SELECT * FROM customers ORDER BY name";
         try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 customers.add(createCustomerFromResultSet(rs));
@@ -92,18 +91,53 @@ public class CustomerDAO {
         return customers;
     }
 
+    // Phân trang theo (name, customer_id), cùng thứ tự với getAllCustomers; after = null lấy trang đầu
+    public Page<Customer> getCustomersPage(Page.Cursor after, int limit) {
+        String query = "SELECT * FROM customers" +
+                (after == null ? "" : " WHERE name >= ? AND (name > ? OR customer_id > ?)") +
+                " ORDER BY name, customer_id LIMIT ?";
+        List<Customer> customers = new ArrayList<>();
+        Page.Cursor next = null;
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            int i = 1;
+            if (after != null) {
+                stmt.setString(i++, after.key);
+                stmt.setString(i++, after.key);
+                stmt.setInt(i++, after.id);
+            }
+            stmt.setInt(i, limit + 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                String lastKey = null;
+                while (rs.next()) {
+                    if (customers.size() == limit) {
+                        next = new Page.Cursor(lastKey, customers.get(customers.size() - 1).getCustomerId());
+                        break;
+                    }
+                    customers.add(createCustomerFromResultSet(rs));
+                    lastKey = rs.getString("name");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error getting customers page: " + e.getMessage());
+        }
+        return new Page<>(customers, next);
+    }
+
     // Update customer info
     public boolean updateCustomer(Customer customer) {
         String query = "UPDATE customers SET name = ?, email = ?, phone_number = ?, loyalty_points = ?, updated_at = CURRENT_TIMESTAMP WHERE customer_id = ?";
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-
-            pstmt.setString(1, customer.getName());
-            pstmt.setString(2, customer.getEmail());
-            pstmt.setString(3, customer.getPhoneNumber());
-            pstmt.setDouble(4, customer.getLoyaltyPoints());
-            pstmt.setInt(5, customer.getCustomerId());
-            return pstmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.executeWrite(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    pstmt.setString(1, customer.getName());
+                    pstmt.setString(2, customer.getEmail());
+                    pstmt.setString(3, customer.getPhoneNumber());
+                    pstmt.setDouble(4, customer.getLoyaltyPoints());
+                    pstmt.setInt(5, customer.getCustomerId());
+                    return pstmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error updating customer: " + e.getMessage());
         }
@@ -222,12 +256,14 @@ public class CustomerDAO {
     // Add loyalty points
     public boolean addLoyaltyPoints(int customerId, double pointsToAdd) {
         String query = "UPDATE customers SET loyalty_points = loyalty_points + ?, updated_at = CURRENT_TIMESTAMP WHERE customer_id = ?";
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-
-            pstmt.setDouble(1, pointsToAdd);
-            pstmt.setInt(2, customerId);
-            return pstmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.executeWrite(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    pstmt.setDouble(1, pointsToAdd);
+                    pstmt.setInt(2, customerId);
+                    return pstmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error adding loyalty points: " + e.getMessage());
         }
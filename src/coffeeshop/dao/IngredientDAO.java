@@ -1,17 +1,21 @@
 package coffeeshop.dao;
 
 import coffeeshop.db.DatabaseConnection;
+import coffeeshop.db.IdAllocator;
 import coffeeshop.model.*;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object for Ingredient operations
  * Handles all database operations related to ingredient management (MySQL version)
  */
 public class IngredientDAO {
+    private static final IdAllocator INGREDIENT_IDS = IdAllocator.forTable("ingredients", "ingredient_id");
     private DatabaseConnection dbConnection;
     
     public IngredientDAO() {
@@ -20,32 +24,30 @@ public class IngredientDAO {
     
     // --- Create a new ingredient ---
     public int createIngredient(Ingredient ingredient) {
-        String query = "INSERT INTO ingredients (name, current_stock, minimum_stock, maximum_stock, " +
-                      "unit, cost_per_unit, supplier, expiration_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        String query = "INSERT INTO ingredients (ingredient_id, name, current_stock, minimum_stock, maximum_stock, " +
+                      "unit, cost_per_unit, supplier, expiration_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
         
         try (Connection conn = dbConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
 
-            pstmt.setString(1, ingredient.getName());
-            pstmt.setDouble(2, ingredient.getCurrentStock());
-            pstmt.setDouble(3, ingredient.getMinimumStock());
-            pstmt.setDouble(4, ingredient.getMaximumStock());
-            pstmt.setString(5, ingredient.getUnit().toString());
-            pstmt.setDouble(6, ingredient.getCostPerUnit());
-            pstmt.setString(7, ingredient.getSupplier());
+            int ingredientId = INGREDIENT_IDS.next(conn);
+            pstmt.setInt(1, ingredientId);
+            pstmt.setString(2, ingredient.getName());
+            pstmt.setDouble(3, ingredient.getCurrentStock());
+            pstmt.setDouble(4, ingredient.getMinimumStock());
+            pstmt.setDouble(5, ingredient.getMaximumStock());
+            pstmt.setString(6, ingredient.getUnit().toString());
+            pstmt.setDouble(7, ingredient.getCostPerUnit());
+            pstmt.setString(8, ingredient.getSupplier());
             if (ingredient.getExpirationDate() != null)
-                pstmt.setDate(8, Date.valueOf(ingredient.getExpirationDate()));
+                pstmt.setDate(9, Date.valueOf(ingredient.getExpirationDate()));
             else
-                pstmt.setNull(8, Types.DATE);
+                pstmt.setNull(9, Types.DATE);
             
             int rowsAffected = pstmt.executeUpdate();
             
             if (rowsAffected > 0) {
-                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        return generatedKeys.getInt(1);
-                    }
-                }
+                return ingredientId;
             }
         } catch (SQLException e) {
             System.err.println("Error creating ingredient: " + e.getMessage());
@@ -100,8 +102,8 @@ public class IngredientDAO {
         String query = "SELECT * FROM ingredients ORDER BY name";
         
         try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
                 Ingredient ingredient = createIngredientFromResultSet(rs);
@@ -116,14 +118,32 @@ public class IngredientDAO {
         return ingredients;
     }
     
+    // --- Duyệt toàn bộ ingredients theo tên, không nạp cả danh sách vào bộ nhớ ---
+    // Trả về số ingredient đã duyệt, hoặc -1 nếu lỗi truy vấn; kết nối được trả về pool cả khi consumer ném lỗi
+    public long forEachIngredient(Consumer<Ingredient> consumer) {
+        return ResultStreams.forEach("SELECT * FROM ingredients ORDER BY name", stmt -> { },
+                ResultStreams.rows(this::createIngredientFromResultSet), consumer, "Error streaming ingredients: ");
+    }
+    
+    // --- Stream đọc dần từ result set; phải đóng stream (try-with-resources) để trả kết nối ---
+    public Stream<Ingredient> streamIngredients() {
+        try {
+            return ResultStreams.stream("SELECT * FROM ingredients ORDER BY name", stmt -> { },
+                    ResultStreams.rows(this::createIngredientFromResultSet));
+        } catch (SQLException e) {
+            System.err.println("Error streaming ingredients: " + e.getMessage());
+            return Stream.empty();
+        }
+    }
+    
     // --- Get low stock ingredients ---
     public List<Ingredient> getLowStockIngredients() {
         List<Ingredient> ingredients = new ArrayList<>();
         String query = "SELECT * FROM ingredients WHERE current_stock <= minimum_stock ORDER BY name";
         
         try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
                 Ingredient ingredient = createIngredientFromResultSet(rs);
@@ -144,8 +164,8 @@ public class IngredientDAO {
         String query = "SELECT * FROM ingredients WHERE current_stock = 0 ORDER BY name";
         
         try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
                 Ingredient ingredient = createIngredientFromResultSet(rs);
@@ -166,8 +186,8 @@ public class IngredientDAO {
         String query = "SELECT * FROM ingredients WHERE expiration_date < CURDATE() ORDER BY expiration_date";
         
         try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
                 Ingredient ingredient = createIngredientFromResultSet(rs);
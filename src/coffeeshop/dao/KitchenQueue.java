@@ -0,0 +1,467 @@
+package coffeeshop.dao;
+
+import coffeeshop.db.DatabaseConnection;
+import coffeeshop.model.Order;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * KitchenQueue
+ * ------------
+ * Hàng đợi bếp trong bộ nhớ cho các order đang hoạt động (PENDING, CONFIRMED, PREPARING): nạp từ DB
+ * khi khởi động, sau đó cập nhật theo từng lần tạo order / đổi trạng thái đã commit
+ * (qua {@link DatabaseConnection#afterCommit}), nên màn hình bếp không phải đọc lại order và món.
+ *
+ * - Order chờ (PENDING/CONFIRMED) nằm trong cây treap theo thứ hạng; mỗi nút giữ số nút và tổng thời gian
+ *   pha chế của cây con, nên order kế tiếp, vị trí và ETA đều là O(log n).
+ * - Thứ hạng = giờ đặt − db.kitchen.takeawayLeadSec (mang đi) + thời gian pha chế × db.kitchen.prepWeightPct%:
+ *   khách mang đi đứng chờ tại quầy được ưu tiên, order ngắn được chen lên trước order dài đặt sớm hơn chút.
+ * - Thời gian pha chế = tổng (db.kitchen.prepSec.&lt;category&gt; × số lượng) của các món; ETA chia phần việc
+ *   phía trước cho db.kitchen.stations quầy pha chế.
+ * - Order PREPARING nạp lại từ DB được coi như bắt đầu lúc nạp (DB không lưu giờ bắt đầu pha chế).
+ * - Thay đổi ghi bởi tiến trình khác không được thấy cho tới {@link #reload()}.
+ */
+public final class KitchenQueue {
+
+    private static final String ACTIVE_SQL_SQLITE =
+            "SELECT o.order_id, o.status, o.service_type, CAST(strftime('%s', o.order_time) AS INTEGER), m.category, oi.quantity " +
+            "FROM orders o LEFT JOIN order_items oi ON oi.order_id = o.order_id LEFT JOIN menu_items m ON m.id = oi.menu_item_id " +
+            "WHERE o.status IN ('PENDING', 'CONFIRMED', 'PREPARING')";
+    private static final String ACTIVE_SQL_MYSQL =
+            "SELECT o.order_id, o.status, o.service_type, UNIX_TIMESTAMP(o.order_time), m.category, oi.quantity " +
+            "FROM orders o LEFT JOIN order_items oi ON oi.order_id = o.order_id LEFT JOIN menu_items m ON m.id = oi.menu_item_id " +
+            "WHERE o.status IN ('PENDING', 'CONFIRMED', 'PREPARING')";
+
+    // Thời gian pha chế mặc định theo category (giây); db.kitchen.prepSec.<category> ghi đè
+    private static final Map<String, Integer> DEFAULT_PREP_SEC = Map.of(
+            "Coffee", 180, "Tea", 150, "Smoothie", 180, "Juice", 120,
+            "Pastry", 60, "Food", 300, "Dessert", 60);
+
+    private static KitchenQueue instance;
+
+    /** Một order đang hoạt động trong bếp. */
+    public static final class Ticket {
+        private final int orderId;
+        private final Order.ServiceType serviceType;
+        private final long placedAtMillis;
+        private final int prepSeconds;
+        private final long rank;
+        private volatile Order.OrderStatus status;
+        private volatile long startedAtMillis;
+
+        Ticket(int orderId, Order.ServiceType serviceType, Order.OrderStatus status, long placedAtMillis, int prepSeconds) {
+            this.orderId = orderId;
+            this.serviceType = serviceType;
+            this.status = status;
+            this.placedAtMillis = placedAtMillis;
+            this.prepSeconds = prepSeconds;
+            long lead = serviceType == Order.ServiceType.TAKEAWAY
+                    ? DatabaseConnection.getLongSetting("db.kitchen.takeawayLeadSec", 120L) * 1000 : 0;
+            long prepWeight = prepSeconds * 10L * DatabaseConnection.getIntSetting("db.kitchen.prepWeightPct", 50);
+            this.rank = placedAtMillis - lead + prepWeight;
+        }
+
+        public int getOrderId() { return orderId; }
+        public Order.ServiceType getServiceType() { return serviceType; }
+        public Order.OrderStatus getStatus() { return status; }
+        public int getPrepSeconds() { return prepSeconds; }
+
+        public LocalDateTime getPlacedAt() {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(placedAtMillis), ZoneId.systemDefault());
+        }
+    }
+
+    private static final Comparator<Ticket> ORDER =
+            Comparator.comparingLong((Ticket t) -> t.rank).thenComparingInt(t -> t.orderId);
+
+    /** Nút treap: khóa theo ORDER, heap theo priority ngẫu nhiên. */
+    private static final class Node {
+        final Ticket ticket;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1;
+        long prepSum;
+
+        Node(Ticket ticket, int priority) {
+            this.ticket = ticket;
+            this.priority = priority;
+            this.prepSum = ticket.prepSeconds;
+        }
+
+        void update() {
+            size = 1 + size(left) + size(right);
+            prepSum = ticket.prepSeconds + prepSum(left) + prepSum(right);
+        }
+    }
+
+    private final Map<Integer, Ticket> tickets = new HashMap<>();
+    private final Map<Integer, Ticket> preparing = new LinkedHashMap<>();
+    private Node waiting;
+    private final Random random = new Random();
+
+    // Sự kiện đến trong lúc nạp lại được áp sau khi thay dữ liệu nạp
+    private final Object reloadLock = new Object();
+    private final List<Runnable> deferred = new ArrayList<>();
+    private boolean reloading;
+    private volatile boolean loaded;
+    private volatile boolean stale;
+
+    // menu_item id -> category, đọc lại khi menu đổi
+    private volatile Map<Integer, String> categories;
+
+    private KitchenQueue() {}
+
+    public static synchronized KitchenQueue get() {
+        if (instance == null) {
+            instance = new KitchenQueue();
+        }
+        return instance;
+    }
+
+    // --- Đọc ---
+    /** Order nên pha chế tiếp theo (chưa PREPARING), hoặc null nếu không còn order chờ. */
+    public Ticket next() {
+        ensureLoaded();
+        synchronized (this) {
+            Node n = waiting;
+            if (n == null) return null;
+            while (n.left != null) n = n.left;
+            return n.ticket;
+        }
+    }
+
+    /** Thời gian còn lại tới khi order xong, hoặc null nếu order không còn hoạt động. */
+    public Duration eta(int orderId) {
+        ensureLoaded();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Ticket t = tickets.get(orderId);
+            return t == null ? null : Duration.ofMillis(etaMillis(t, now));
+        }
+    }
+
+    /** Số order chờ đứng trước order này (0 = kế tiếp; -1 nếu đang pha chế hoặc không còn hoạt động). */
+    public int position(int orderId) {
+        ensureLoaded();
+        synchronized (this) {
+            Ticket t = tickets.get(orderId);
+            if (t == null || t.status == Order.OrderStatus.PREPARING) return -1;
+            return (int) ahead(t)[0];
+        }
+    }
+
+    /** Các order đang hoạt động: đang pha chế trước (theo giờ bắt đầu), sau đó order chờ theo thứ tự ưu tiên. */
+    public List<Ticket> getActiveOrders() {
+        ensureLoaded();
+        synchronized (this) {
+            List<Ticket> list = new ArrayList<>(tickets.size());
+            list.addAll(preparing.values());
+            Deque<Node> stack = new ArrayDeque<>();
+            Node n = waiting;
+            while (n != null || !stack.isEmpty()) {
+                while (n != null) {
+                    stack.push(n);
+                    n = n.left;
+                }
+                n = stack.pop();
+                list.add(n.ticket);
+                n = n.right;
+            }
+            return list;
+        }
+    }
+
+    public synchronized int getWaitingCount() {
+        return size(waiting);
+    }
+
+    public synchronized int getPreparingCount() {
+        return preparing.size();
+    }
+
+    // --- Sự kiện ghi (gọi sau commit) ---
+    void orderPlaced(int orderId, String serviceType, String status, int[] menuItemIds, int[] quantities) {
+        Order.OrderStatus s = Order.OrderStatus.valueOf(status);
+        if (!isActive(s) || (!loaded && !isReloading())) return;
+        // Tính ngoài khóa: có thể phải đọc category từ DB
+        int prep = 0;
+        for (int i = 0; i < menuItemIds.length; i++) {
+            prep += prepSeconds(categoryOf(menuItemIds[i])) * quantities[i];
+        }
+        Ticket ticket = new Ticket(orderId, Order.ServiceType.valueOf(serviceType), s, System.currentTimeMillis(), prep);
+        apply(() -> {
+            remove(orderId);
+            add(ticket, System.currentTimeMillis());
+        });
+    }
+
+    void statusChanged(int orderId, Order.OrderStatus newStatus) {
+        apply(() -> {
+            Ticket t = tickets.get(orderId);
+            if (t == null) {
+                // Order hoạt động trở lại (vd. READY -> PREPARING) mà không có món trong bộ nhớ: nạp lại khi đọc
+                if (isActive(newStatus)) stale = true;
+                return;
+            }
+            remove(orderId);
+            if (isActive(newStatus)) {
+                t.status = newStatus;
+                add(t, System.currentTimeMillis());
+            }
+        });
+    }
+
+    void invalidateMenu() {
+        categories = null;
+    }
+
+    private synchronized boolean isReloading() {
+        return reloading;
+    }
+
+    private synchronized void apply(Runnable event) {
+        if (reloading) {
+            deferred.add(event);
+        } else if (loaded) {
+            event.run();
+        }
+        // Chưa nạp: lần nạp đầu sẽ đọc cả thay đổi này từ DB
+    }
+
+    // --- Cấu trúc (gọi khi giữ khóa) ---
+    private void add(Ticket t, long now) {
+        tickets.put(t.orderId, t);
+        if (t.status == Order.OrderStatus.PREPARING) {
+            if (t.startedAtMillis == 0) t.startedAtMillis = now;
+            preparing.put(t.orderId, t);
+        } else {
+            t.startedAtMillis = 0;
+            Node[] parts = split(waiting, t);
+            waiting = merge(merge(parts[0], new Node(t, random.nextInt())), parts[1]);
+        }
+    }
+
+    private void remove(int orderId) {
+        Ticket t = tickets.remove(orderId);
+        if (t == null) return;
+        if (preparing.remove(orderId) == null) {
+            waiting = remove(waiting, t);
+        }
+    }
+
+    /** {số order chờ, tổng giây pha chế} đứng trước t trong cây. */
+    private long[] ahead(Ticket t) {
+        long count = 0;
+        long prep = 0;
+        Node n = waiting;
+        while (n != null) {
+            if (ORDER.compare(t, n.ticket) <= 0) {
+                n = n.left;
+            } else {
+                count += size(n.left) + 1;
+                prep += prepSum(n.left) + n.ticket.prepSeconds;
+                n = n.right;
+            }
+        }
+        return new long[] {count, prep};
+    }
+
+    private long etaMillis(Ticket t, long now) {
+        if (t.status == Order.OrderStatus.PREPARING) {
+            return Math.max(0, t.startedAtMillis + t.prepSeconds * 1000L - now);
+        }
+        // Phần việc còn lại của order đang pha chế (tối đa vài order, mỗi quầy một) + order chờ phía trước
+        long backlog = 0;
+        for (Ticket p : preparing.values()) {
+            backlog += Math.max(0, p.startedAtMillis + p.prepSeconds * 1000L - now);
+        }
+        backlog += ahead(t)[1] * 1000L;
+        int stations = Math.max(1, DatabaseConnection.getIntSetting("db.kitchen.stations", 2));
+        return backlog / stations + t.prepSeconds * 1000L;
+    }
+
+    private static int size(Node n) {
+        return n == null ? 0 : n.size;
+    }
+
+    private static long prepSum(Node n) {
+        return n == null ? 0 : n.prepSum;
+    }
+
+    /** Tách cây thành {nút &lt; t, nút &gt;= t}. */
+    private static Node[] split(Node n, Ticket t) {
+        if (n == null) return new Node[2];
+        if (ORDER.compare(n.ticket, t) < 0) {
+            Node[] parts = split(n.right, t);
+            n.right = parts[0];
+            n.update();
+            return new Node[] {n, parts[1]};
+        }
+        Node[] parts = split(n.left, t);
+        n.left = parts[1];
+        n.update();
+        return new Node[] {parts[0], n};
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.update();
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.update();
+        return b;
+    }
+
+    private static Node remove(Node n, Ticket t) {
+        if (n == null) return null;
+        int c = ORDER.compare(t, n.ticket);
+        if (c == 0) return merge(n.left, n.right);
+        if (c < 0) {
+            n.left = remove(n.left, t);
+        } else {
+            n.right = remove(n.right, t);
+        }
+        n.update();
+        return n;
+    }
+
+    private static boolean isActive(Order.OrderStatus status) {
+        return status == Order.OrderStatus.PENDING || status == Order.OrderStatus.CONFIRMED
+                || status == Order.OrderStatus.PREPARING;
+    }
+
+    // --- Thời gian pha chế ---
+    private static int prepSeconds(String category) {
+        int fallback = DatabaseConnection.getIntSetting("db.kitchen.prepSec", 120);
+        if (category == null) return fallback;
+        return DatabaseConnection.getIntSetting("db.kitchen.prepSec." + category,
+                DEFAULT_PREP_SEC.getOrDefault(category, fallback));
+    }
+
+    private String categoryOf(int menuItemId) {
+        Map<Integer, String> map = categories;
+        if (map == null) {
+            map = new HashMap<>();
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement("SELECT id, category FROM menu_items");
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    map.put(rs.getInt(1), rs.getString(2));
+                }
+                categories = map;
+            } catch (SQLException e) {
+                // Dùng thời gian pha chế mặc định, lần sau đọc lại
+                System.err.println("Error loading menu categories: " + e.getMessage());
+            }
+        }
+        return map.get(menuItemId);
+    }
+
+    // --- Nạp ---
+    private void ensureLoaded() {
+        if (!loaded || stale) {
+            reload();
+        }
+    }
+
+    /** Nạp lại các order đang hoạt động từ DB (gọi khi khởi động; đọc lần đầu cũng tự nạp). */
+    public void reload() {
+        synchronized (reloadLock) {
+            synchronized (this) {
+                reloading = true;
+                deferred.clear();
+            }
+            Map<Integer, Ticket> fresh;
+            try {
+                fresh = query();
+            } catch (SQLException e) {
+                System.err.println("Error loading kitchen queue: " + e.getMessage());
+                synchronized (this) {
+                    // Vẫn áp sự kiện đã hoãn nếu đã có dữ liệu, để không mất thay đổi
+                    reloading = false;
+                    if (loaded) deferred.forEach(Runnable::run);
+                    deferred.clear();
+                }
+                return;
+            }
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                Map<Integer, Ticket> previous = new HashMap<>(tickets);
+                tickets.clear();
+                preparing.clear();
+                waiting = null;
+                for (Ticket t : fresh.values()) {
+                    Ticket old = previous.get(t.orderId);
+                    if (t.status == Order.OrderStatus.PREPARING && old != null && old.startedAtMillis > 0) {
+                        t.startedAtMillis = old.startedAtMillis;
+                    }
+                    add(t, now);
+                }
+                loaded = true;
+                stale = false;
+                reloading = false;
+                deferred.forEach(Runnable::run);
+                deferred.clear();
+            }
+        }
+    }
+
+    /** Một order đọc từ DB, cộng dồn thời gian pha chế qua các dòng món. */
+    private static final class ActiveRow {
+        String status;
+        String serviceType;
+        long placedAtMillis;
+        int prepSeconds;
+    }
+
+    private static Map<Integer, Ticket> query() throws SQLException {
+        String sql = "sqlite".equals(DatabaseConnection.getDbType()) ? ACTIVE_SQL_SQLITE : ACTIVE_SQL_MYSQL;
+        Map<Integer, ActiveRow> rows = new HashMap<>();
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                ActiveRow row = rows.computeIfAbsent(rs.getInt(1), id -> new ActiveRow());
+                row.status = rs.getString(2);
+                row.serviceType = rs.getString(3);
+                row.placedAtMillis = rs.getLong(4) * 1000;
+                int quantity = rs.getInt(6);
+                if (!rs.wasNull()) {
+                    row.prepSeconds += prepSeconds(rs.getString(5)) * quantity;
+                }
+            }
+        }
+        Map<Integer, Ticket> result = new HashMap<>();
+        rows.forEach((orderId, row) -> result.put(orderId, new Ticket(orderId, Order.ServiceType.valueOf(row.serviceType),
+                Order.OrderStatus.valueOf(row.status), row.placedAtMillis, row.prepSeconds)));
+        return result;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long backlog = prepSum(waiting);
+        for (Ticket p : preparing.values()) backlog += p.prepSeconds;
+        return String.format("Kitchen queue | loaded: %s | waiting: %d | preparing: %d | backlog: %d min",
+                loaded ? "yes" : "no", size(waiting), preparing.size(), backlog / 60);
+    }
+}
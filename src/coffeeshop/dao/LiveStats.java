@@ -0,0 +1,366 @@
+package coffeeshop.dao;
+
+import coffeeshop.db.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * LiveStats
+ * ---------
+ * Thống kê order/payment/menu giữ trong bộ nhớ cho màn hình báo cáo: nạp từ DB một lần ở lần đọc đầu,
+ * sau đó cộng dồn theo từng lần ghi order/payment đã commit (qua {@link DatabaseConnection#afterCommit}).
+ * Đọc là O(số trạng thái), không truy vấn DB.
+ *
+ * - Bộ đếm theo trạng thái dùng {@link LongAdder} (số lượng và tiền tính theo phần nghìn đồng) nên
+ *   nhiều luồng ghi cùng lúc không tranh chấp một biến.
+ * - Đổi trạng thái/xóa payment và mọi thay đổi menu chỉ đánh dấu cần đếm lại; lần đọc sau đếm lại từ DB.
+ * - Mỗi db.liveStats.reconcileSec giây (0 = tắt) đối chiếu với SQL (sales_daily, payments + payments_archive); nếu cùng
+ *   một độ lệch xuất hiện ở hai lần đối chiếu liên tiếp (vd. tiến trình khác ghi cùng DB) thì ghi log và nạp lại.
+ *   Lệch chỉ một lần thường là sự kiện đã commit nhưng chưa kịp cộng, lần sau sẽ tự khớp.
+ * - Trong lúc nạp/đối chiếu, sự kiện ghi được giữ lại thay vì cộng ngay và áp dụng sau khi có số liệu mới
+ *   (như deferred của KitchenQueue.reload), nên thay đổi commit sau khi đọc SQL không bị mất.
+ */
+public final class LiveStats {
+
+    private static final String ORDER_SQL =
+            "SELECT status, COALESCE(SUM(order_count), 0), COALESCE(SUM(revenue), 0) FROM sales_daily GROUP BY status";
+    private static final String PAYMENT_SQL =
+            "SELECT status, COUNT(*), COALESCE(SUM(amount), 0) " +
+            "FROM (SELECT status, amount FROM payments UNION ALL SELECT status, amount FROM payments_archive) p GROUP BY status";
+
+    private static LiveStats instance;
+
+    /** Số lượng và tổng tiền (phần nghìn) theo trạng thái. */
+    private static final class Tally {
+        final Map<String, LongAdder[]> byStatus = new ConcurrentHashMap<>();
+
+        void add(String status, long count, long millis) {
+            LongAdder[] cell = byStatus.computeIfAbsent(status, s -> new LongAdder[] {new LongAdder(), new LongAdder()});
+            cell[0].add(count);
+            cell[1].add(millis);
+        }
+
+        long count(String status) {
+            LongAdder[] cell = byStatus.get(status);
+            return cell != null ? cell[0].sum() : 0;
+        }
+
+        long totalCount() {
+            long total = 0;
+            for (LongAdder[] cell : byStatus.values()) total += cell[0].sum();
+            return total;
+        }
+
+        long totalMillis() {
+            long total = 0;
+            for (LongAdder[] cell : byStatus.values()) total += cell[1].sum();
+            return total;
+        }
+
+        Map<String, long[]> snapshot() {
+            Map<String, long[]> copy = new HashMap<>();
+            byStatus.forEach((status, cell) -> {
+                long count = cell[0].sum();
+                long millis = cell[1].sum();
+                if (count != 0 || millis != 0) copy.put(status, new long[] {count, millis});
+            });
+            return copy;
+        }
+
+        void reset(Map<String, long[]> values) {
+            byStatus.clear();
+            values.forEach((status, v) -> add(status, v[0], v[1]));
+        }
+    }
+
+    private final Tally orders = new Tally();
+    private final Tally payments = new Tally();
+    // Sự kiện ghi giữ khóa đọc (chạy song song); nạp lại/đối chiếu giữ khóa ghi
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final MenuItemDAO menuItemDAO = new MenuItemDAO();
+
+    // Sự kiện đến trong lúc nạp/đối chiếu; deferring chỉ đổi khi giữ khóa ghi
+    private final List<Runnable> deferred = Collections.synchronizedList(new ArrayList<>());
+    private boolean deferring;
+    // Độ lệch của lần đối chiếu trước (rỗng = khớp)
+    private Map<String, long[]> lastOrderDrift = new HashMap<>();
+    private Map<String, long[]> lastPaymentDrift = new HashMap<>();
+
+    private volatile boolean seeded;
+    private volatile boolean paymentsDirty;
+    private volatile boolean menuDirty = true;
+    private volatile int menuItems;
+    private volatile int availableMenuItems;
+
+    private final AtomicLong reconciliations = new AtomicLong();
+    private final AtomicLong driftsCorrected = new AtomicLong();
+
+    private LiveStats() {
+        long reconcileSec = DatabaseConnection.getLongSetting("db.liveStats.reconcileSec", 300L);
+        if (reconcileSec > 0) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "live-stats-reconcile");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::reconcile, reconcileSec, reconcileSec, TimeUnit.SECONDS);
+        }
+    }
+
+    public static synchronized LiveStats get() {
+        if (instance == null) {
+            instance = new LiveStats();
+        }
+        return instance;
+    }
+
+    // --- Đọc ---
+    public OrderDAO.OrderStats getOrderStats() {
+        ensureSeeded();
+        long total = orders.totalCount();
+        double revenue = orders.totalMillis() / 1000.0;
+        return new OrderDAO.OrderStats((int) total, (int) orders.count("PENDING"), (int) orders.count("COMPLETED"),
+                (int) orders.count("CANCELLED"), total > 0 ? revenue / total : 0.0, revenue);
+    }
+
+    public PaymentDAO.PaymentStats getPaymentStats() {
+        ensureSeeded();
+        if (paymentsDirty) {
+            reloadPayments();
+        }
+        long total = payments.totalCount();
+        double amount = payments.totalMillis() / 1000.0;
+        return new PaymentDAO.PaymentStats((int) total, (int) payments.count("COMPLETED"),
+                (int) payments.count("CANCELLED"), amount, total > 0 ? amount / total : 0.0);
+    }
+
+    public int getMenuItemCount() {
+        refreshMenu();
+        return menuItems;
+    }
+
+    public int getAvailableMenuItemCount() {
+        refreshMenu();
+        return availableMenuItems;
+    }
+
+    // --- Sự kiện ghi (gọi sau commit) ---
+    void recordOrders(String status, long count, double amount) {
+        record(orders, status, count, amount);
+    }
+
+    void recordPayment(String status, long count, double amount) {
+        record(payments, status, count, amount);
+    }
+
+    void invalidatePayments() {
+        paymentsDirty = true;
+    }
+
+    void invalidateMenu() {
+        menuDirty = true;
+    }
+
+    private void record(Tally tally, String status, long count, double amount) {
+        long millis = Math.round(amount * 1000);
+        lock.readLock().lock();
+        try {
+            if (deferring) {
+                deferred.add(() -> tally.add(status, count, millis));
+            } else if (seeded) {
+                tally.add(status, count, millis);
+            }
+            // chưa nạp: lần nạp đầu sẽ đọc cả thay đổi này từ DB
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Từ đây đến {@link #endDeferring} sự kiện ghi được giữ lại; bộ đếm đứng yên trong lúc đọc SQL. */
+    private void beginDeferring() {
+        lock.writeLock().lock();
+        try {
+            deferred.clear();
+            deferring = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Áp dụng các sự kiện đã giữ lên bộ đếm hiện tại (đã cài số liệu mới hoặc giữ nguyên); gọi khi giữ khóa ghi. */
+    private void endDeferring(boolean apply) {
+        deferring = false;
+        if (apply) deferred.forEach(Runnable::run);
+        deferred.clear();
+    }
+
+    // --- Nạp và đối chiếu ---
+    private void ensureSeeded() {
+        if (seeded) return;
+        synchronized (this) {
+            if (seeded) return;
+            beginDeferring();
+            Map<String, long[]> orderValues = null;
+            Map<String, long[]> paymentValues = null;
+            try {
+                orderValues = query(ORDER_SQL);
+                paymentValues = query(PAYMENT_SQL);
+            } catch (SQLException e) {
+                System.err.println("Error loading live statistics: " + e.getMessage());
+            }
+            lock.writeLock().lock();
+            try {
+                if (orderValues != null && paymentValues != null) {
+                    orders.reset(orderValues);
+                    payments.reset(paymentValues);
+                    paymentsDirty = false;
+                    seeded = true;
+                }
+                // Chưa nạp được thì bỏ: lần nạp sau đọc lại từ DB
+                endDeferring(seeded);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private synchronized void reloadPayments() {
+        if (!paymentsDirty) return;
+        paymentsDirty = false; // xóa trước: thay đổi trong lúc đọc sẽ đánh dấu lại
+        beginDeferring();
+        Map<String, long[]> values = null;
+        try {
+            values = query(PAYMENT_SQL);
+        } catch (SQLException e) {
+            paymentsDirty = true;
+            System.err.println("Error reloading payment statistics: " + e.getMessage());
+        }
+        lock.writeLock().lock();
+        try {
+            if (values != null) payments.reset(values);
+            endDeferring(true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void refreshMenu() {
+        if (!menuDirty) return;
+        menuDirty = false;
+        menuItems = menuItemDAO.getMenuItemCount();
+        availableMenuItems = menuItemDAO.getAvailableMenuItemCount();
+    }
+
+    /**
+     * So bộ đếm với SQL; nạp lại khi cùng một độ lệch xuất hiện ở hai lần liên tiếp (payment đã đánh dấu
+     * cần đếm lại thì nạp ngay). Bộ đếm được so là giá trị lúc bắt đầu đọc, sự kiện trong lúc đọc áp dụng sau.
+     * Trả về true nếu đã sửa lệch.
+     */
+    public synchronized boolean reconcile() {
+        if (!seeded) return false;
+        boolean paymentsStale = paymentsDirty;
+        paymentsDirty = false;
+        beginDeferring();
+        Map<String, long[]> orderValues = null;
+        Map<String, long[]> paymentValues = null;
+        try {
+            orderValues = query(ORDER_SQL);
+            paymentValues = query(PAYMENT_SQL);
+            reconciliations.incrementAndGet();
+        } catch (SQLException e) {
+            System.err.println("Error reconciling live statistics: " + e.getMessage());
+        }
+        lock.writeLock().lock();
+        try {
+            if (orderValues == null || paymentValues == null) {
+                paymentsDirty |= paymentsStale;
+                endDeferring(true);
+                return false;
+            }
+            boolean drift = false;
+            Map<String, long[]> orderDrift = drift(orders.snapshot(), orderValues);
+            if (!orderDrift.isEmpty() && same(orderDrift, lastOrderDrift)) {
+                System.err.println("Live order statistics drifted from database, reloading");
+                orders.reset(orderValues);
+                orderDrift = new HashMap<>();
+                drift = true;
+            }
+            lastOrderDrift = orderDrift;
+            Map<String, long[]> paymentDrift = drift(payments.snapshot(), paymentValues);
+            if (paymentsStale) {
+                payments.reset(paymentValues);
+                paymentDrift = new HashMap<>();
+            } else if (!paymentDrift.isEmpty() && same(paymentDrift, lastPaymentDrift)) {
+                System.err.println("Live payment statistics drifted from database, reloading");
+                payments.reset(paymentValues);
+                paymentDrift = new HashMap<>();
+                drift = true;
+            }
+            lastPaymentDrift = paymentDrift;
+            endDeferring(true);
+            menuDirty = true;
+            if (drift) driftsCorrected.incrementAndGet();
+            return drift;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** SQL trừ bộ đếm theo trạng thái; bỏ các trạng thái khớp (tiền lệch dưới một đồng). */
+    private static Map<String, long[]> drift(Map<String, long[]> live, Map<String, long[]> sql) {
+        Map<String, long[]> diff = new HashMap<>();
+        for (String status : sql.keySet()) live.putIfAbsent(status, new long[2]);
+        live.forEach((status, v) -> {
+            long[] other = sql.getOrDefault(status, new long[2]);
+            long count = other[0] - v[0];
+            long millis = other[1] - v[1];
+            if (count != 0 || Math.abs(millis) >= 1000) diff.put(status, new long[] {count, millis});
+        });
+        return diff;
+    }
+
+    private static boolean same(Map<String, long[]> a, Map<String, long[]> b) {
+        if (!a.keySet().equals(b.keySet())) return false;
+        for (Map.Entry<String, long[]> e : a.entrySet()) {
+            long[] other = b.get(e.getKey());
+            // Tiền so theo đồng: tổng double trong SQL có thể lệch phần lẻ so với cộng từng đơn
+            if (e.getValue()[0] != other[0] || Math.abs(e.getValue()[1] - other[1]) >= 1000) return false;
+        }
+        return true;
+    }
+
+    private static Map<String, long[]> query(String sql) throws SQLException {
+        Map<String, long[]> values = new HashMap<>();
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                long count = rs.getLong(2);
+                long millis = Math.round(rs.getDouble(3) * 1000);
+                if (count != 0 || millis != 0) values.put(rs.getString(1), new long[] {count, millis});
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Live stats | loaded: %s | reconciliations: %d | drifts corrected: %d",
+                seeded ? "yes" : "no", reconciliations.get(), driftsCorrected.get());
+    }
+}
@@ -6,16 +6,19 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Data Access Object for MenuItem operations
  * Handles all database operations related to menu items
  */
 public class MenuItemDAO {
+    // Tăng mỗi lần menu bị ghi; nơi giữ menu đã nạp sẵn so sánh để biết bản của mình đã cũ
+    private static final AtomicLong MENU_VERSION = new AtomicLong();
+
     private final DatabaseConnection dbConnection;
 
     public MenuItemDAO() {
@@ -42,7 +45,9 @@ public class MenuItemDAO {
             }
 
             pstmt.setBoolean(6, menuItem.isAvailable());
-            return pstmt.executeUpdate() > 0;
+            boolean changed = pstmt.executeUpdate() > 0;
+            menuChanged();
+            return changed;
 
         } catch (SQLException e) {
             System.err.println("Error creating menu item: " + e.getMessage());
@@ -74,8 +79,8 @@ public class MenuItemDAO {
         String query = "SELECT * FROM menu_items ORDER BY category, name";
 
         try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 menuItems.add(createMenuItemFromResultSet(rs));
@@ -128,8 +133,8 @@ public class MenuItemDAO {
         String query = "SELECT * FROM menu_items WHERE is_available = TRUE ORDER BY category, name";
 
         try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
                 menuItems.add(createMenuItemFromResultSet(rs));
@@ -153,7 +158,9 @@ public class MenuItemDAO {
             pstmt.setString(4, menuItem.getCategory());
             pstmt.setBoolean(5, menuItem.isAvailable());
             pstmt.setInt(6, menuItem.getId());
-            return pstmt.executeUpdate() > 0;
+            boolean changed = pstmt.executeUpdate() > 0;
+            menuChanged();
+            return changed;
 
         } catch (SQLException e) {
             System.err.println("Error updating menu item: " + e.getMessage());
@@ -169,7 +176,9 @@ public class MenuItemDAO {
 
             pstmt.setBoolean(1, isAvailable);
             pstmt.setInt(2, id);
-            return pstmt.executeUpdate() > 0;
+            boolean changed = pstmt.executeUpdate() > 0;
+            menuChanged();
+            return changed;
 
         } catch (SQLException e) {
             System.err.println("Error updating availability: " + e.getMessage());
@@ -184,7 +193,9 @@ public class MenuItemDAO {
              PreparedStatement pstmt = conn.prepareStatement(query)) {
 
             pstmt.setInt(1, id);
-            return pstmt.executeUpdate() > 0;
+            boolean changed = pstmt.executeUpdate() > 0;
+            menuChanged();
+            return changed;
 
         } catch (SQLException e) {
             System.err.println("Error deleting menu item: " + e.getMessage());
@@ -214,13 +225,18 @@ public class MenuItemDAO {
 
     // Helper: Convert ResultSet → MenuItem
     private MenuItem createMenuItemFromResultSet(ResultSet rs) throws SQLException {
-        int id = rs.getInt("id");
-        String name = rs.getString("name");
-        String description = rs.getString("description");
-        double basePrice = rs.getDouble("base_price");
-        String category = rs.getString("category");
-        String coffeeTypeStr = rs.getString("coffee_type");
-        boolean isAvailable = rs.getBoolean("is_available");
+        return createMenuItemFromResultSet(rs, "");
+    }
+
+    // Dùng chung với câu JOIN của OrderDAO: các cột menu_items được đặt alias với tiền tố (vd. "mi_")
+    static MenuItem createMenuItemFromResultSet(ResultSet rs, String prefix) throws SQLException {
+        int id = rs.getInt(prefix + "id");
+        String name = rs.getString(prefix + "name");
+        String description = rs.getString(prefix + "description");
+        double basePrice = rs.getDouble(prefix + "base_price");
+        String category = rs.getString(prefix + "category");
+        String coffeeTypeStr = rs.getString(prefix + "coffee_type");
+        boolean isAvailable = rs.getBoolean(prefix + "is_available");
 
         MenuItem menuItem;
 
@@ -248,8 +264,8 @@ public class MenuItemDAO {
     public int getMenuItemCount() {
         String query = "SELECT COUNT(*) AS count FROM menu_items";
         try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
             return rs.next() ? rs.getInt("count") : 0;
         } catch (SQLException e) {
             System.err.println("Error getting menu item count: " + e.getMessage());
@@ -261,12 +277,22 @@ public class MenuItemDAO {
     public int getAvailableMenuItemCount() {
         String query = "SELECT COUNT(*) AS count FROM menu_items WHERE is_available = TRUE";
         try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
             return rs.next() ? rs.getInt("count") : 0;
         } catch (SQLException e) {
             System.err.println("Error getting available menu item count: " + e.getMessage());
             return 0;
         }
     }
+
+    public static long menuVersion() {
+        return MENU_VERSION.get();
+    }
+
+    private static void menuChanged() {
+        MENU_VERSION.incrementAndGet();
+        LiveStats.get().invalidateMenu();
+        KitchenQueue.get().invalidateMenu();
+    }
 }
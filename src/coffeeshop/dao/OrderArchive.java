@@ -0,0 +1,173 @@
+package coffeeshop.dao;
+
+import coffeeshop.db.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderArchive
+ * ------------
+ * Chuyển order đã xong (COMPLETED/CANCELLED) cũ hơn db.archive.afterDays ngày cùng order_items và payments
+ * sang orders_archive / order_items_archive / payments_archive, mỗi lô db.archive.batchSize order một
+ * transaction, để bảng orders và các index của nó chỉ chứa dữ liệu "nóng".
+ *
+ * - sales_daily/sales_hourly không đổi khi chuyển (doanh số lịch sử vẫn nằm trong bảng tổng hợp).
+ * - {@link #reaches} cho OrderDAO biết truy vấn theo thời gian có cần đọc thêm bảng archive không:
+ *   mốc là order_time mới nhất đã chuyển, nên đổi afterDays không làm sót dữ liệu.
+ * - Chỉ chuyển order cũ, các order mới nhất luôn còn trong orders nên AUTO_INCREMENT không cấp lại id đã dùng.
+ */
+final class OrderArchive {
+
+    static final String ORDER_COLUMNS = "order_id, customer_id, status, service_type, subtotal, tax, discount, " +
+            "total_amount, special_instructions, order_time, completion_time, created_at, updated_at";
+    static final String ORDER_ITEM_COLUMNS = "order_item_id, order_id, menu_item_id, quantity, unit_price, total_price, " +
+            "customizations, size, is_hot, created_at";
+    static final String PAYMENT_COLUMNS = "payment_id, order_id, payment_method, status, amount, amount_paid, change_given, " +
+            "transaction_reference, card_last_four_digits, failure_reason, payment_time, created_at, updated_at";
+
+    // order_time mới nhất trong orders_archive: null = chưa đọc, "" = archive rỗng
+    private static volatile String horizon;
+    private static ScheduledExecutorService scheduler;
+    // Một lần chuyển tại một thời điểm; khác khóa của raiseHorizon (chạy trên luồng ghi WAL)
+    private static final Object ARCHIVE_LOCK = new Object();
+
+    private OrderArchive() {}
+
+    /** Chạy {@link #archive} mỗi db.archive.intervalHours giờ trên luồng nền (0 = không tự chạy). */
+    static synchronized void schedule() {
+        long hours = DatabaseConnection.getLongSetting("db.archive.intervalHours", 24L);
+        if (hours <= 0 || scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "order-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            int moved = archive(DatabaseConnection.getIntSetting("db.archive.afterDays", 90));
+            if (moved > 0) {
+                System.out.println("Archived " + moved + " orders");
+            }
+        }, 1, hours * 60, TimeUnit.MINUTES);
+    }
+
+    /** Chuyển các order đã xong cũ hơn afterDays ngày; trả về số order đã chuyển, -1 nếu lỗi ngay lô đầu. */
+    static int archive(int afterDays) {
+        synchronized (ARCHIVE_LOCK) {
+            return archiveBatches(afterDays);
+        }
+    }
+
+    private static int archiveBatches(int afterDays) {
+        int batchSize = Math.max(1, DatabaseConnection.getIntSetting("db.archive.batchSize", 500));
+        boolean sqlite = "sqlite".equals(DatabaseConnection.getDbType());
+        String cutoff = sqlite ? "datetime('now', ?)" : "NOW() - INTERVAL ? DAY";
+        String pick = "SELECT order_id, order_time FROM orders WHERE status IN ('COMPLETED', 'CANCELLED') AND order_time < " + cutoff +
+                " ORDER BY order_id LIMIT " + batchSize;
+
+        int moved = 0;
+        while (true) {
+            int count;
+            try {
+                count = DatabaseConnection.executeWrite(conn -> {
+                    List<Integer> ids = new ArrayList<>(batchSize);
+                    try (PreparedStatement stmt = conn.prepareStatement(pick)) {
+                        if (sqlite) {
+                            stmt.setString(1, "-" + afterDays + " days");
+                        } else {
+                            stmt.setInt(1, afterDays);
+                        }
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                ids.add(rs.getInt(1));
+                                // Nâng mốc trước khi commit: người đọc không bỏ sót order vừa chuyển
+                                raiseHorizon(rs.getString(2));
+                            }
+                        }
+                    }
+                    if (!ids.isEmpty()) {
+                        moveBatch(conn, ids);
+                    }
+                    return ids.size();
+                });
+            } catch (SQLException e) {
+                System.err.println("Error archiving orders: " + e.getMessage());
+                return moved > 0 ? moved : -1;
+            }
+            moved += count;
+            if (count < batchSize) {
+                return moved;
+            }
+        }
+    }
+
+    private static void moveBatch(Connection conn, List<Integer> ids) throws SQLException {
+        String in = " WHERE order_id IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        String[] statements = {
+            "INSERT INTO orders_archive (" + ORDER_COLUMNS + ") SELECT " + ORDER_COLUMNS + " FROM orders" + in,
+            "INSERT INTO order_items_archive (" + ORDER_ITEM_COLUMNS + ") SELECT " + ORDER_ITEM_COLUMNS + " FROM order_items" + in,
+            "INSERT INTO payments_archive (" + PAYMENT_COLUMNS + ") SELECT " + PAYMENT_COLUMNS + " FROM payments" + in,
+            // Xóa con trước cha: không dựa vào ON DELETE CASCADE (SQLite chỉ áp khi bật foreign_keys)
+            "DELETE FROM payments" + in,
+            "DELETE FROM order_items" + in,
+            "DELETE FROM orders" + in
+        };
+        for (String sql : statements) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < ids.size(); i++) {
+                    stmt.setInt(i + 1, ids.get(i));
+                }
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Truy vấn từ thời điểm from (chuỗi theo cách lưu order_time, xem OrderDAO.sqlTime; null = không giới hạn)
+     * có thể gặp order đã chuyển sang archive không.
+     */
+    static boolean reaches(String from) {
+        String h = horizon();
+        if (h.isEmpty()) return false;
+        return from == null || from.compareTo(h) <= 0;
+    }
+
+    /** Archive có order nào không (tìm theo id cần đọc thêm bảng archive khi không thấy trong orders). */
+    static boolean isEmpty() {
+        return horizon().isEmpty();
+    }
+
+    private static synchronized void raiseHorizon(String orderTime) {
+        String h = horizon();
+        if (orderTime != null && orderTime.compareTo(h) > 0) {
+            horizon = orderTime;
+        }
+    }
+
+    private static String horizon() {
+        String h = horizon;
+        if (h == null) {
+            h = "";
+            try (Connection conn = DatabaseConnection.getReadConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MAX(order_time) FROM orders_archive")) {
+                if (rs.next() && rs.getString(1) != null) {
+                    h = rs.getString(1);
+                }
+                horizon = h;
+            } catch (SQLException e) {
+                // Chưa có bảng (chưa migrate) hoặc lỗi đọc: coi như archive rỗng, lần sau đọc lại
+                System.err.println("Error reading order archive horizon: " + e.getMessage());
+            }
+        }
+        return h;
+    }
+}
@@ -1,6 +1,7 @@
 package coffeeshop.dao;
 
 import coffeeshop.db.DatabaseConnection;
+import coffeeshop.db.IdAllocator;
 import coffeeshop.model.*;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -8,55 +9,122 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class OrderDAO {
     private DatabaseConnection dbConnection;
-    private MenuItemDAO menuItemDAO;
     
     public OrderDAO() {
     this.dbConnection = DatabaseConnection.getInstance();
-    this.menuItemDAO = new MenuItemDAO();
 }
 
 
-    // --- Tạo đơn hàng ---
-    public int createOrder(Order order) {
-        String orderQuery = "INSERT INTO orders (customer_id, status, service_type, subtotal, tax, discount, total_amount, special_instructions) " +
-                            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-
-        try (Connection conn = dbConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(orderQuery, Statement.RETURN_GENERATED_KEYS)) {
-
-            conn.setAutoCommit(false);
-
-            pstmt.setInt(1, order.getCustomerId());
-            pstmt.setString(2, order.getStatus().toString());
-            pstmt.setString(3, order.getServiceType().toString());
-            pstmt.setDouble(4, order.getSubtotal());
-            pstmt.setDouble(5, order.getTax());
-            pstmt.setDouble(6, order.getDiscount());
-            pstmt.setDouble(7, order.getTotalAmount());
-            pstmt.setString(8, order.getSpecialInstructions());
-
-            int rowsAffected = pstmt.executeUpdate();
-
-            if (rowsAffected > 0) {
-                try (ResultSet rs = pstmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        int orderId = rs.getInt(1);
-                        if (insertOrderItems(orderId, order.getOrderItems(), conn)) {
-                            conn.commit();
-                            return orderId;
-                        }
-                    }
+    // order_id cấp trước theo khối (hi/lo) nên không cần đọc generated keys sau INSERT
+    private static final IdAllocator ORDER_IDS = IdAllocator.forTable("orders", "order_id", "orders_archive");
+    private static final String ORDER_COLUMNS =
+            "order_id, customer_id, status, service_type, subtotal, tax, discount, total_amount, special_instructions, idempotency_key";
+    private static final String ORDER_ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String ORDER_INSERT_SQL = "INSERT INTO orders (" + ORDER_COLUMNS + ") VALUES " + ORDER_ROW;
+    // Nhập hàng loạt ghi cả thời điểm của order (order cũ); ghi trực tiếp để DB lấy CURRENT_TIMESTAMP
+    private static final String BULK_ORDER_COLUMNS = ORDER_COLUMNS + ", order_time, completion_time";
+    private static final String BULK_ORDER_ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String ORDER_ITEM_INSERT_SQL =
+            "INSERT INTO order_items (order_id, menu_item_id, quantity, unit_price, total_price, customizations, size, is_hot) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // --- Chống ghi trùng theo idempotency key ---
+    // Khóa đã commit gần đây -> order_id, LRU giới hạn db.idempotency.cacheSize khóa; lần gửi lại thường gặp
+    // được trả lời không cần DB. Khóa bị đẩy khỏi cache vẫn được chặn bởi unique index trên orders.
+    private static final int RECENT_KEY_LIMIT =
+            Math.max(0, DatabaseConnection.getIntSetting("db.idempotency.cacheSize", 10000));
+    private static final Map<String, Integer> RECENT_KEYS = Collections.synchronizedMap(
+            new LinkedHashMap<String, Integer>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > RECENT_KEY_LIMIT;
                 }
+            });
+
+    private static Integer recentOrderId(String key) {
+        return key == null ? null : RECENT_KEYS.get(key);
+    }
+
+    // Chỉ nhớ khóa sau commit: order bị rollback được gửi lại với cùng khóa phải ghi thật
+    private static void rememberKey(String key, int orderId) {
+        if (key != null && RECENT_KEY_LIMIT > 0) {
+            DatabaseConnection.afterCommit(() -> RECENT_KEYS.put(key, orderId));
+        }
+    }
+
+    // Báo order mới cho hàng đợi bếp sau commit; món được chụp ngay vì giỏ có thể bị xóa trước khi commit
+    private static void announcePlaced(int orderId, String serviceType, String status, int[] menuItemIds, int[] quantities) {
+        DatabaseConnection.afterCommit(() ->
+                KitchenQueue.get().orderPlaced(orderId, serviceType, status, menuItemIds, quantities));
+    }
+
+    private static void announcePlaced(int orderId, Order order) {
+        List<OrderItem> items = order.getOrderItems();
+        int[] menuItemIds = new int[items.size()];
+        int[] quantities = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            menuItemIds[i] = items.get(i).getMenuItem().getId();
+            quantities[i] = items.get(i).getQuantity();
+        }
+        announcePlaced(orderId, order.getServiceType().name(), order.getStatus().name(), menuItemIds, quantities);
+    }
+
+    private static Integer findOrderIdByKey(Connection conn, String key) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT order_id FROM orders WHERE idempotency_key = ?")) {
+            stmt.setString(1, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
             }
+        }
+    }
 
-            conn.rollback();
+    /**
+     * Ghi dòng orders với id cho trước. Nếu khóa đã có trong bảng (gửi lại, hoặc transaction khác vừa
+     * commit cùng khóa) thì trả về order_id đã có và caller không ghi gì thêm; ngược lại trả về null.
+     * Chỉ câu INSERT lỗi bị hủy, transaction hiện tại vẫn dùng tiếp được.
+     */
+    private static Integer insertOrderRow(Connection conn, PreparedStatement pstmt, String key) throws SQLException {
+        try {
+            pstmt.executeUpdate();
+            return null;
+        } catch (SQLException e) {
+            Integer existing = key == null ? null : findOrderIdByKey(conn, key);
+            if (existing == null) throw e;
+            rememberKey(key, existing);
+            return existing;
+        }
+    }
 
+    // --- Tạo đơn hàng ---
+    /** Trả về order_id mới; order có idempotency key đã ghi trước đó thì trả về order_id cũ, không ghi lại. */
+    public int createOrder(Order order) {
+        Integer known = recentOrderId(order.getIdempotencyKey());
+        if (known != null) {
+            return known;
+        }
+        try {
+            return DatabaseConnection.executeWrite(conn -> insertOrder(order, conn));
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -64,11 +132,162 @@ public class OrderDAO {
         return -1;
     }
 
+    // --- Thanh toán: ghi sau qua hàng đợi có journal, không chờ DB ---
+    /**
+     * Chụp lại order và đưa vào hàng đợi ghi nền; future hoàn tất với order_id sau khi đã commit.
+     * Chỉ chờ khi hàng đợi đầy (db.orderQueue.offerTimeoutMs), khi đó future trả về đã lỗi.
+     * Order không bị thay đổi (không gán orderId), nên caller có thể xóa/dùng lại ngay sau khi gọi.
+     */
+    public CompletableFuture<Integer> submitOrder(Order order) {
+        return submitOrder(order, null);
+    }
+
+    /** Như {@link #submitOrder(Order)}, payment (nếu có) được ghi cùng transaction với order. */
+    public CompletableFuture<Integer> submitOrder(Order order, Payment payment) {
+        Integer known = recentOrderId(order.getIdempotencyKey());
+        if (known != null) {
+            // Đã commit: không ghi lại order lẫn payment
+            return CompletableFuture.completedFuture(known);
+        }
+        return submissionQueue().submit(OrderSubmissionQueue.Submission.of(order, payment));
+    }
+
+    /** Khởi động luồng ghi nền và ghi lại các order còn trong journal từ lần chạy trước. */
+    public static void resumeSubmittedOrders() {
+        submissionQueue();
+    }
+
+    /** Chờ các order đã submit được ghi xong (gọi trước khi đóng kết nối); true nếu hàng đợi đã rỗng. */
+    public static boolean awaitSubmittedOrders(long timeoutMs) {
+        OrderSubmissionQueue queue = OrderSubmissionQueue.peek();
+        return queue == null || queue.awaitDrained(timeoutMs);
+    }
+
+    public static String getSubmissionQueueStats() {
+        OrderSubmissionQueue queue = OrderSubmissionQueue.peek();
+        return queue == null ? "Order queue | not started" : queue.toString();
+    }
+
+    private static OrderSubmissionQueue submissionQueue() {
+        return OrderSubmissionQueue.get(OrderDAO::insertSubmission);
+    }
+
+    private static int insertSubmission(OrderSubmissionQueue.Submission s, Connection conn) throws SQLException {
+        int orderId = ORDER_IDS.next(conn);
+        try (PreparedStatement pstmt = conn.prepareStatement(ORDER_INSERT_SQL)) {
+            pstmt.setInt(1, orderId);
+            pstmt.setInt(2, s.customerId);
+            pstmt.setString(3, s.status);
+            pstmt.setString(4, s.serviceType);
+            pstmt.setDouble(5, s.subtotal);
+            pstmt.setDouble(6, s.tax);
+            pstmt.setDouble(7, s.discount);
+            pstmt.setDouble(8, s.totalAmount);
+            pstmt.setString(9, s.specialInstructions);
+            pstmt.setString(10, s.idempotencyKey);
+            Integer existing = insertOrderRow(conn, pstmt, s.idempotencyKey);
+            if (existing != null) {
+                // Ghi lại từ journal sau khi đã commit (dừng trước dòng D) hoặc gửi lại khi đang xếp hàng
+                return existing;
+            }
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(ORDER_ITEM_INSERT_SQL)) {
+            for (OrderSubmissionQueue.Line line : s.lines) {
+                pstmt.setInt(1, orderId);
+                pstmt.setInt(2, line.menuItemId);
+                pstmt.setInt(3, line.quantity);
+                pstmt.setDouble(4, line.unitPrice);
+                pstmt.setDouble(5, line.totalPrice);
+                pstmt.setString(6, line.customizations);
+                bindSizeAndTemperature(pstmt, 7, line.size, line.hot);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+
+        Payment payment = s.toPayment(orderId);
+        if (payment != null) {
+            new PaymentDAO().insertPayment(payment, conn);
+        }
+        SalesRollup.add(conn, Collections.singletonList(orderId));
+        rememberKey(s.idempotencyKey, orderId);
+        int[] menuItemIds = new int[s.lines.size()];
+        int[] quantities = new int[s.lines.size()];
+        for (int i = 0; i < s.lines.size(); i++) {
+            menuItemIds[i] = s.lines.get(i).menuItemId;
+            quantities[i] = s.lines.get(i).quantity;
+        }
+        announcePlaced(orderId, s.serviceType, s.status, menuItemIds, quantities);
+        return orderId;
+    }
+
+    // --- Ghi order + order items trên kết nối của transaction hiện tại ---
+    private int insertOrder(Order order, Connection conn) throws SQLException {
+        int orderId = ORDER_IDS.next(conn);
+        String key = order.getIdempotencyKey();
+        try (PreparedStatement pstmt = conn.prepareStatement(ORDER_INSERT_SQL)) {
+            bindOrder(pstmt, 1, orderId, order);
+            Integer existing = insertOrderRow(conn, pstmt, key);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        insertOrderItems(orderId, order.getOrderItems(), conn);
+        SalesRollup.add(conn, Collections.singletonList(orderId));
+        rememberKey(key, orderId);
+        announcePlaced(orderId, order);
+        return orderId;
+    }
+
+    private static int bindOrder(PreparedStatement pstmt, int p, int orderId, Order order) throws SQLException {
+        pstmt.setInt(p++, orderId);
+        pstmt.setInt(p++, order.getCustomerId());
+        pstmt.setString(p++, order.getStatus().toString());
+        pstmt.setString(p++, order.getServiceType().toString());
+        pstmt.setDouble(p++, order.getSubtotal());
+        pstmt.setDouble(p++, order.getTax());
+        pstmt.setDouble(p++, order.getDiscount());
+        pstmt.setDouble(p++, order.getTotalAmount());
+        pstmt.setString(p++, order.getSpecialInstructions());
+        pstmt.setString(p++, order.getIdempotencyKey());
+        return p;
+    }
+
+    private static final DateTimeFormatter SQL_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Thời điểm địa phương ở dạng chuỗi so sánh được với order_time đã lưu: SQLite lưu UTC như
+     * CURRENT_TIMESTAMP, MySQL lưu giờ địa phương. Dùng cho mọi tham số thời gian của bảng orders.
+     */
+    static String sqlTime(LocalDateTime time) {
+        LocalDateTime stored = "sqlite".equals(DatabaseConnection.getDbType())
+                ? time.atZone(ZoneId.systemDefault()).withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime()
+                : time;
+        return stored.format(SQL_TIME);
+    }
+
+    /**
+     * order_time (giờ địa phương của Order) và completion_time (null nếu chưa xong).
+     * SQLite lưu dạng chuỗi UTC ({@link #sqlTime}) để sales_daily/sales_hourly ('localtime') ra đúng ngày giờ.
+     */
+    private static int bindOrderTimes(PreparedStatement pstmt, int p, Order order, boolean sqlite) throws SQLException {
+        LocalDateTime orderTime = order.getOrderTime() != null ? order.getOrderTime() : LocalDateTime.now();
+        for (LocalDateTime time : new LocalDateTime[] {orderTime, order.getCompletionTime()}) {
+            if (time == null) {
+                pstmt.setNull(p++, Types.TIMESTAMP);
+            } else if (sqlite) {
+                pstmt.setString(p++, sqlTime(time));
+            } else {
+                pstmt.setTimestamp(p++, Timestamp.valueOf(time));
+            }
+        }
+        return p;
+    }
+
     // --- Thêm order items ---
     private boolean insertOrderItems(int orderId, List<OrderItem> orderItems, Connection conn) throws SQLException {
-        String itemQuery = "INSERT INTO order_items (order_id, menu_item_id, quantity, unit_price, total_price, customizations) VALUES (?, ?, ?, ?, ?, ?)";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(itemQuery)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(ORDER_ITEM_INSERT_SQL)) {
             for (OrderItem item : orderItems) {
                 pstmt.setInt(1, orderId);
                 pstmt.setInt(2, item.getMenuItem().getId());
@@ -76,6 +295,7 @@ public class OrderDAO {
                 pstmt.setDouble(4, item.getUnitPrice());
                 pstmt.setDouble(5, item.getItemTotal());
                 pstmt.setString(6, item.getCustomizations());
+                bindSizeAndTemperature(pstmt, 7, item.getMenuItem());
                 pstmt.addBatch();
             }
 
@@ -84,99 +304,381 @@ public class OrderDAO {
         }
     }
 
-    // --- Lấy order theo ID ---
-    public List<Order> getOrdersByCustomerId(int customerId) {
-    List<Order> orders = new ArrayList<>();
-    String query = "SELECT * FROM orders WHERE customer_id = ?";
+    // Cỡ ly và nóng/đá chỉ có với cà phê; món khác để NULL
+    private static void bindSizeAndTemperature(PreparedStatement pstmt, int index, MenuItem menuItem) throws SQLException {
+        if (menuItem instanceof Coffee) {
+            Coffee coffee = (Coffee) menuItem;
+            bindSizeAndTemperature(pstmt, index, coffee.getSize().name(), coffee.isHot());
+        } else {
+            bindSizeAndTemperature(pstmt, index, null, null);
+        }
+    }
 
-    try (Connection conn = dbConnection.getConnection();
-         PreparedStatement stmt = conn.prepareStatement(query)) {
+    private static void bindSizeAndTemperature(PreparedStatement pstmt, int index, String size, Boolean hot) throws SQLException {
+        if (size != null) {
+            pstmt.setString(index, size);
+        } else {
+            pstmt.setNull(index, Types.VARCHAR);
+        }
+        if (hot != null) {
+            pstmt.setBoolean(index + 1, hot);
+        } else {
+            pstmt.setNull(index + 1, Types.BOOLEAN);
+        }
+    }
 
-        stmt.setInt(1, customerId);
-        ResultSet rs = stmt.executeQuery();
+    // --- Nhập order hàng loạt (backfill từ đối tác giao hàng / máy offline) ---
+    // Giới hạn số dòng mỗi câu INSERT nhiều dòng để không vượt 999 tham số của SQLite cũ (12 cột mỗi order)
+    private static final int ORDER_ROWS_PER_INSERT = 83;
+    private static final int KEY_LOOKUP_BATCH = 500;
+    private static final int ITEM_ROWS_PER_INSERT = 120;
 
-        while (rs.next()) {
-            Order order = new Order(); // dùng constructor rỗng
+    public int[] createOrders(List<Order> orders) {
+        return createOrders(orders, DatabaseConnection.getBulkCommitSize());
+    }
 
-            order.setOrderId(rs.getInt("order_id"));
-            order.setCustomerId(rs.getInt("customer_id"));
+    /**
+     * Ghi nhiều order bằng câu INSERT nhiều dòng (orders rồi order_items), commit sau mỗi commitEvery order.
+     * Trả về id theo đúng thứ tự đầu vào; order thuộc nhóm bị lỗi có id -1
+     * (các nhóm đã commit trước đó được giữ nguyên, nên có thể gửi lại riêng các order lỗi).
+     * Nếu gọi bên trong TransactionTemplate thì mọi nhóm commit cùng transaction ngoài.
+     * Order có idempotency key đã ghi (hoặc lặp lại trong cùng danh sách) nhận order_id đã có, không ghi lại.
+     * order_time/completion_time lấy từ Order, nên order nhập lại giữ đúng ngày trong báo cáo doanh số.
+     */
+    public int[] createOrders(List<Order> orders, int commitEvery) {
+        // SQLite: hạ synchronous (db.sqlite.bulk.synchronous) trên kết nối ghi trong suốt lần nhập
+        return DatabaseConnection.inBulkLoad(() -> insertOrders(orders, commitEvery));
+    }
 
-            // Convert chuỗi sang Enum
-            String statusStr = rs.getString("status");
-            if (statusStr != null) {
-                order.setStatus(Order.OrderStatus.valueOf(statusStr));
+    private int[] insertOrders(List<Order> orders, int commitEvery) {
+        int[] ids = new int[orders.size()];
+        int chunkSize = Math.max(1, commitEvery);
+
+        for (int start = 0; start < orders.size(); start += chunkSize) {
+            List<Order> chunk = orders.subList(start, Math.min(orders.size(), start + chunkSize));
+            int offset = start;
+            try {
+                int[] chunkIds = DatabaseConnection.executeWrite(conn -> insertOrderChunk(chunk, conn));
+                System.arraycopy(chunkIds, 0, ids, offset, chunkIds.length);
+            } catch (SQLException e) {
+                System.err.println("Error creating orders " + (offset + 1) + "-" + (offset + chunk.size())
+                        + ": " + e.getMessage());
+                Arrays.fill(ids, offset, offset + chunk.size(), -1);
             }
+        }
 
-            String serviceTypeStr = rs.getString("service_type");
-            if (serviceTypeStr != null) {
-                order.setServiceType(Order.ServiceType.valueOf(serviceTypeStr));
+        return ids;
+    }
+
+    private int[] insertOrderChunk(List<Order> chunk, Connection conn) throws SQLException {
+        int[] ids = new int[chunk.size()];
+        // Order có khóa đã ghi giữ id cũ; khóa lặp trong nhóm dùng id của lần xuất hiện đầu
+        Map<String, Integer> known = knownOrderIds(chunk, conn);
+        Map<String, Integer> firstIndex = new HashMap<>();
+        List<Integer> fresh = new ArrayList<>(chunk.size());
+        List<int[]> repeats = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            String key = chunk.get(i).getIdempotencyKey();
+            if (key != null) {
+                Integer id = known.get(key);
+                if (id != null) {
+                    ids[i] = id;
+                    continue;
+                }
+                Integer first = firstIndex.putIfAbsent(key, i);
+                if (first != null) {
+                    repeats.add(new int[] {i, first});
+                    continue;
+                }
             }
+            fresh.add(i);
+        }
 
-            order.setDiscount(rs.getDouble("discount"));
-            order.setSpecialInstructions(rs.getString("special_instructions"));
+        // Id cấp trước cho cả nhóm: dòng order_items dựng được ngay, không phụ thuộc khóa trả về
+        int[] newIds = ORDER_IDS.next(conn, fresh.size());
+        for (int j = 0; j < fresh.size(); j++) {
+            ids[fresh.get(j)] = newIds[j];
+        }
+        for (int[] repeat : repeats) {
+            ids[repeat[0]] = ids[repeat[1]];
+        }
 
-            // Gán thời gian
-            Timestamp ts = rs.getTimestamp("order_date");
-            if (ts != null) {
-                order.setOrderTime(ts.toLocalDateTime());
+        boolean sqlite = "sqlite".equals(DatabaseConnection.getDbType());
+        for (int start = 0; start < fresh.size(); start += ORDER_ROWS_PER_INSERT) {
+            int end = Math.min(fresh.size(), start + ORDER_ROWS_PER_INSERT);
+            String query = "INSERT INTO orders (" + BULK_ORDER_COLUMNS + ") VALUES "
+                    + String.join(", ", Collections.nCopies(end - start, BULK_ORDER_ROW));
+
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                int p = 1;
+                for (int j = start; j < end; j++) {
+                    int i = fresh.get(j);
+                    p = bindOrder(pstmt, p, ids[i], chunk.get(i));
+                    p = bindOrderTimes(pstmt, p, chunk.get(i), sqlite);
+                }
+                pstmt.executeUpdate();
             }
+        }
 
-            // Lấy danh sách món
-            order.getOrderItems().addAll(getOrderItems(order.getOrderId()));
+        List<Integer> itemOrderIds = new ArrayList<>();
+        List<OrderItem> items = new ArrayList<>();
+        for (int i : fresh) {
+            for (OrderItem item : chunk.get(i).getOrderItems()) {
+                itemOrderIds.add(ids[i]);
+                items.add(item);
+            }
+        }
 
-            orders.add(order);
+        for (int start = 0; start < items.size(); start += ITEM_ROWS_PER_INSERT) {
+            int end = Math.min(items.size(), start + ITEM_ROWS_PER_INSERT);
+            String query = "INSERT INTO order_items (order_id, menu_item_id, quantity, unit_price, total_price, customizations, size, is_hot) VALUES "
+                    + String.join(", ", Collections.nCopies(end - start, "(?, ?, ?, ?, ?, ?, ?, ?)"));
+
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                int p = 1;
+                for (int i = start; i < end; i++) {
+                    OrderItem item = items.get(i);
+                    pstmt.setInt(p++, itemOrderIds.get(i));
+                    pstmt.setInt(p++, item.getMenuItem().getId());
+                    pstmt.setInt(p++, item.getQuantity());
+                    pstmt.setDouble(p++, item.getUnitPrice());
+                    pstmt.setDouble(p++, item.getItemTotal());
+                    pstmt.setString(p++, item.getCustomizations());
+                    bindSizeAndTemperature(pstmt, p, item.getMenuItem());
+                    p += 2;
+                }
+                pstmt.executeUpdate();
+            }
         }
 
-    } catch (SQLException e) {
-        e.printStackTrace();
+        List<Integer> orderIds = new ArrayList<>(fresh.size());
+        for (int i : fresh) {
+            orderIds.add(ids[i]);
+            rememberKey(chunk.get(i).getIdempotencyKey(), ids[i]);
+            announcePlaced(ids[i], chunk.get(i));
+        }
+        if (!orderIds.isEmpty()) {
+            SalesRollup.add(conn, orderIds);
+        }
+        return ids;
     }
 
-    return orders;
-}
+    /** order_id đã ghi của các khóa trong nhóm: cache trước, phần còn lại đọc theo lô từ orders. */
+    private static Map<String, Integer> knownOrderIds(List<Order> chunk, Connection conn) throws SQLException {
+        Map<String, Integer> known = new HashMap<>();
+        List<String> lookup = new ArrayList<>();
+        for (Order order : chunk) {
+            String key = order.getIdempotencyKey();
+            if (key == null) continue;
+            Integer id = recentOrderId(key);
+            if (id != null) {
+                known.put(key, id);
+            } else {
+                lookup.add(key);
+            }
+        }
+        for (int start = 0; start < lookup.size(); start += KEY_LOOKUP_BATCH) {
+            List<String> keys = lookup.subList(start, Math.min(lookup.size(), start + KEY_LOOKUP_BATCH));
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT idempotency_key, order_id FROM orders WHERE idempotency_key IN (" + placeholders(keys.size()) + ")")) {
+                for (int i = 0; i < keys.size(); i++) {
+                    stmt.setString(i + 1, keys.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        known.put(rs.getString(1), rs.getInt(2));
+                    }
+                }
+            }
+        }
+        return known;
+    }
 
+    // --- Lấy order theo khách hàng (lịch sử đầy đủ, kể cả order đã chuyển sang archive) ---
+    public List<Order> getOrdersByCustomerId(int customerId) {
+        try {
+            return fetchOrderGraphs("WHERE o.customer_id = ?", (stmt, i) -> {
+                stmt.setInt(i, customerId);
+                return i + 1;
+            }, !OrderArchive.isEmpty());
+        } catch (SQLException e) {
+            System.err.println("Error retrieving orders by customer: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    /** Các order còn trong bảng orders (không gồm archive). */
     public List<Order> getAllOrders() {
-    List<Order> orders = new ArrayList<>();
-    String query = "SELECT * FROM orders ORDER BY order_time DESC";
+        try {
+            return fetchOrderGraphs("", (stmt, i) -> i, false);
+        } catch (SQLException e) {
+            System.err.println("Error retrieving all orders: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
 
-    try (Connection conn = dbConnection.getConnection();
-         Statement stmt = conn.createStatement();
-         ResultSet rs = stmt.executeQuery(query)) {
+    // --- Phân trang theo (order_time, order_id), mới nhất trước; after = null lấy trang đầu ---
+    public Page<Order> getOrdersPage(Page.Cursor after, int limit) {
+        // Bước 1: chỉ đọc khóa trên idx_orders_order_time (index phụ đã kèm order_id)
+        String keyQuery = "SELECT order_id, order_time FROM orders" +
+                (after == null ? "" : " WHERE order_time <= ? AND (order_time < ? OR order_id < ?)") +
+                " ORDER BY order_time DESC, order_id DESC LIMIT ?";
+        List<Integer> ids = new ArrayList<>();
+        Page.Cursor next = null;
+
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(keyQuery)) {
+
+            int i = 1;
+            if (after != null) {
+                stmt.setString(i++, after.key);
+                stmt.setString(i++, after.key);
+                stmt.setInt(i++, after.id);
+            }
+            stmt.setInt(i, limit + 1);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                String lastKey = null;
+                while (rs.next()) {
+                    if (ids.size() == limit) {
+                        next = new Page.Cursor(lastKey, ids.get(ids.size() - 1));
+                        break;
+                    }
+                    ids.add(rs.getInt("order_id"));
+                    lastKey = rs.getString("order_time");
+                }
+            }
 
-        while (rs.next()) {
-            Order order = createOrderFromResultSet(rs);
-            order.getOrderItems().addAll(getOrderItems(order.getOrderId()));
-            orders.add(order);
+        } catch (SQLException e) {
+            System.err.println("Error retrieving orders page: " + e.getMessage());
+            return new Page<>(new ArrayList<>(), null);
         }
 
-    } catch (SQLException e) {
-        System.err.println("Error retrieving all orders: " + e.getMessage());
+        if (ids.isEmpty()) {
+            return new Page<>(new ArrayList<>(), null);
+        }
+
+        // Bước 2: join fetch đúng các order của trang
+        try {
+            List<Order> orders = fetchOrderGraphs("WHERE o.order_id IN (" + placeholders(ids.size()) + ")", (stmt, i) -> {
+                for (int id : ids) {
+                    stmt.setInt(i++, id);
+                }
+                return i;
+            }, false);
+            return new Page<>(orders, next);
+        } catch (SQLException e) {
+            System.err.println("Error retrieving orders page: " + e.getMessage());
+        }
+        return new Page<>(new ArrayList<>(), null);
     }
 
-    return orders;
-}
+    // --- Điều kiện lọc cho forEachOrder/streamOrders ---
+    public static class OrderFilter {
+        private EnumSet<Order.OrderStatus> statuses;
+        private Integer customerId;
+        private LocalDateTime from;
+        private LocalDateTime to;
+
+        public static OrderFilter all() {
+            return new OrderFilter();
+        }
+
+        public OrderFilter status(Order.OrderStatus status) {
+            this.statuses = EnumSet.of(status);
+            return this;
+        }
 
+        public OrderFilter statuses(EnumSet<Order.OrderStatus> statuses) {
+            this.statuses = EnumSet.copyOf(statuses);
+            return this;
+        }
+
+        public OrderFilter customer(int customerId) {
+            this.customerId = customerId;
+            return this;
+        }
+
+        /** Đặt trong khoảng [from, to); null = không giới hạn phía đó. */
+        public OrderFilter placedBetween(LocalDateTime from, LocalDateTime to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        String whereClause() {
+            List<String> conditions = new ArrayList<>();
+            if (statuses != null) {
+                conditions.add(statuses.isEmpty() ? "1 = 0" : "o.status IN (" + placeholders(statuses.size()) + ")");
+            }
+            if (customerId != null) conditions.add("o.customer_id = ?");
+            if (from != null) conditions.add("o.order_time >= ?");
+            if (to != null) conditions.add("o.order_time < ?");
+            return conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+        }
+
+        // Thời gian bind dạng chuỗi đã đổi theo cách lưu (sqlTime): đúng với cột TEXT UTC của SQLite lẫn TIMESTAMP của MySQL
+        int bind(PreparedStatement stmt, int i) throws SQLException {
+            if (statuses != null) i = bindStatuses(stmt, i, statuses);
+            if (customerId != null) stmt.setInt(i++, customerId);
+            if (from != null) stmt.setString(i++, sqlTime(from));
+            if (to != null) stmt.setString(i++, sqlTime(to));
+            return i;
+        }
+
+        /** Khoảng thời gian có với tới phần đã chuyển sang archive không. */
+        boolean reachesArchive() {
+            return OrderArchive.reaches(from != null ? sqlTime(from) : null);
+        }
+    }
+
+    /**
+     * Duyệt các order (kèm món) theo filter, mới nhất trước, mà không nạp cả danh sách vào bộ nhớ.
+     * Khi khoảng thời gian với tới phần đã archive (hoặc không giới hạn from), đọc thêm bảng archive.
+     * Kết nối được trả về pool khi duyệt xong hoặc khi consumer ném lỗi.
+     * Trả về số order đã duyệt, hoặc -1 nếu lỗi truy vấn.
+     */
+    public long forEachOrder(OrderFilter filter, Consumer<Order> consumer) {
+        OrderFilter f = filter != null ? filter : OrderFilter.all();
+        boolean archive = f.reachesArchive();
+        return ResultStreams.forEach(graphQuery(f.whereClause(), archive), bindAll(f::bind, archive),
+                new OrderGraphReader(), consumer, "Error streaming orders: ");
+    }
+
+    /**
+     * Stream các order theo filter, đọc dần từ result set. Phải đóng stream (try-with-resources)
+     * để trả statement/kết nối; lỗi SQL khi đang đọc được ném ra dưới dạng IllegalStateException.
+     */
+    public Stream<Order> streamOrders(OrderFilter filter) {
+        OrderFilter f = filter != null ? filter : OrderFilter.all();
+        try {
+            boolean archive = f.reachesArchive();
+            return ResultStreams.stream(graphQuery(f.whereClause(), archive), bindAll(f::bind, archive),
+                    new OrderGraphReader());
+        } catch (SQLException e) {
+            System.err.println("Error streaming orders: " + e.getMessage());
+            return Stream.empty();
+        }
+    }
 
-    // --- Lấy danh sách item theo order ---
+    // --- Lấy danh sách item theo order (giá theo lúc bán, một truy vấn) ---
     public List<OrderItem> getOrderItems(int orderId) {
         List<OrderItem> orderItems = new ArrayList<>();
-        String query = "SELECT * FROM order_items WHERE order_id = ?";
+        String query = "SELECT oi.quantity, oi.unit_price, oi.customizations, " +
+                       "       m.id AS mi_id, m.name AS mi_name, m.description AS mi_description, m.base_price AS mi_base_price, " +
+                       "       m.category AS mi_category, m.coffee_type AS mi_coffee_type, m.is_available AS mi_is_available " +
+                       "FROM order_items oi JOIN menu_items m ON m.id = oi.menu_item_id " +
+                       "WHERE oi.order_id = ? ORDER BY oi.order_item_id";
 
-        try (Connection conn = dbConnection.getConnection();
+        try (Connection conn = DatabaseConnection.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(query)) {
 
             pstmt.setInt(1, orderId);
-            ResultSet rs = pstmt.executeQuery();
-
-            while (rs.next()) {
-                int menuItemId = rs.getInt("menu_item_id");
-                int quantity = rs.getInt("quantity");
-                double unitPrice = rs.getDouble("unit_price");
-                String customizations = rs.getString("customizations");
-
-                MenuItem menuItem = menuItemDAO.getMenuItemById(menuItemId);
-                if (menuItem != null) {
-                    OrderItem orderItem = new OrderItem(menuItem, quantity, customizations);
-                    orderItems.add(orderItem);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    MenuItem menuItem = MenuItemDAO.createMenuItemFromResultSet(rs, "mi_");
+                    orderItems.add(new OrderItem(menuItem, rs.getInt("quantity"), rs.getString("customizations"),
+                            rs.getDouble("unit_price")));
                 }
             }
 
@@ -187,43 +689,136 @@ public class OrderDAO {
         return orderItems;
     }
 
-    public List<Order> getOrdersByStatus(Order.OrderStatus status) {
-    List<Order> orders = new ArrayList<>();
-    String query = "SELECT * FROM orders WHERE status = ?";
-
-    try (Connection conn = dbConnection.getConnection();
-         PreparedStatement stmt = conn.prepareStatement(query)) {
+    // --- Dòng order dạng snapshot (lịch sử, hóa đơn): chỉ đọc order_items, kể cả món đã xóa khỏi menu ---
+    private static final String ORDER_LINE_COLUMNS =
+            "SELECT oi.order_item_id, oi.order_id, oi.menu_item_id, m.name AS item_name, oi.quantity, oi.unit_price, " +
+            "       oi.total_price, oi.customizations, oi.size, oi.is_hot ";
+    private static final String ORDER_LINE_QUERY =
+            ORDER_LINE_COLUMNS + "FROM order_items oi LEFT JOIN menu_items m ON m.id = oi.menu_item_id ";
+    private static final String ARCHIVED_ORDER_LINE_QUERY =
+            ORDER_LINE_COLUMNS + "FROM order_items_archive oi LEFT JOIN menu_items m ON m.id = oi.menu_item_id ";
+    // Số order_id mỗi truy vấn IN (...), dưới giới hạn 999 tham số của SQLite cũ
+    private static final int ORDER_LINE_IDS_PER_QUERY = 500;
+
+    public List<OrderLine> getOrderLines(int orderId) {
+        List<OrderLine> lines = getOrderLines(Collections.singletonList(orderId)).get(orderId);
+        return lines != null ? lines : new ArrayList<>();
+    }
 
-        stmt.setString(1, status.name());
-        ResultSet rs = stmt.executeQuery();
+    /**
+     * Dòng của nhiều order, nhóm theo order_id (order không có dòng nào không có trong map).
+     * Order không thấy trong order_items được tìm tiếp trong order_items_archive.
+     */
+    public Map<Integer, List<OrderLine>> getOrderLines(Collection<Integer> orderIds) {
+        Map<Integer, List<OrderLine>> linesByOrder = new HashMap<>();
+        readOrderLines(ORDER_LINE_QUERY, new ArrayList<>(orderIds), linesByOrder);
+        if (linesByOrder.size() < orderIds.size() && !OrderArchive.isEmpty()) {
+            List<Integer> missing = new ArrayList<>();
+            for (int id : orderIds) {
+                if (!linesByOrder.containsKey(id)) missing.add(id);
+            }
+            readOrderLines(ARCHIVED_ORDER_LINE_QUERY, missing, linesByOrder);
+        }
+        return linesByOrder;
+    }
 
-        while (rs.next()) {
-            Order order = new Order();
-            order.setOrderId(rs.getInt("order_id"));
-            order.setCustomerId(rs.getInt("customer_id"));
+    private static void readOrderLines(String baseQuery, List<Integer> ids, Map<Integer, List<OrderLine>> linesByOrder) {
+        try (Connection conn = DatabaseConnection.getReadConnection()) {
+            for (int start = 0; start < ids.size(); start += ORDER_LINE_IDS_PER_QUERY) {
+                List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + ORDER_LINE_IDS_PER_QUERY));
+                String query = baseQuery + "WHERE oi.order_id IN (" + placeholders(chunk.size()) + ") "
+                        + "ORDER BY oi.order_id, oi.order_item_id";
 
-            String serviceTypeStr = rs.getString("service_type");
-            if (serviceTypeStr != null) {
-                order.setServiceType(Order.ServiceType.valueOf(serviceTypeStr));
+                try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            OrderLine line = createOrderLineFromResultSet(rs);
+                            linesByOrder.computeIfAbsent(line.getOrderId(), k -> new ArrayList<>()).add(line);
+                        }
+                    }
+                }
             }
+        } catch (SQLException e) {
+            System.err.println("Error retrieving order lines: " + e.getMessage());
+        }
+    }
 
-            order.setStatus(status);
+    private static OrderLine createOrderLineFromResultSet(ResultSet rs) throws SQLException {
+        boolean hot = rs.getBoolean("is_hot");
+        Boolean isHot = rs.wasNull() ? null : hot;
+        return new OrderLine(
+                rs.getInt("order_item_id"),
+                rs.getInt("order_id"),
+                rs.getInt("menu_item_id"),
+                rs.getString("item_name"),
+                rs.getInt("quantity"),
+                rs.getDouble("unit_price"),
+                rs.getDouble("total_price"),
+                rs.getString("customizations"),
+                rs.getString("size"),
+                isHot);
+    }
+
+    public List<Order> getOrdersByStatus(Order.OrderStatus status) {
+        return getOrdersByStatuses(EnumSet.of(status));
+    }
+
+    // --- Order thuộc nhiều trạng thái (vd. hàng đợi PENDING/CONFIRMED/PREPARING) trong một truy vấn IN (...) ---
+    public List<Order> getOrdersByStatuses(EnumSet<Order.OrderStatus> statuses) {
+        if (statuses.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return fetchOrderGraphs("WHERE o.status IN (" + placeholders(statuses.size()) + ")",
+                    (stmt, i) -> bindStatuses(stmt, i, statuses), false);
+        } catch (SQLException e) {
+            System.err.println("Error retrieving orders by status: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
 
-            Timestamp ts = rs.getTimestamp("order_date");
-            if (ts != null) {
-                order.setOrderTime(ts.toLocalDateTime());
+    // --- Chỉ đếm số order theo trạng thái (badge/hàng đợi), không đọc order hay món ---
+    public Map<Order.OrderStatus, Integer> countOrdersByStatus(EnumSet<Order.OrderStatus> statuses) {
+        Map<Order.OrderStatus, Integer> counts = new EnumMap<>(Order.OrderStatus.class);
+        for (Order.OrderStatus status : statuses) {
+            counts.put(status, 0);
+        }
+        if (statuses.isEmpty()) {
+            return counts;
+        }
+        String query = "SELECT status, COUNT(*) AS count FROM orders WHERE status IN ("
+                + placeholders(statuses.size()) + ") GROUP BY status";
+
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            bindStatuses(stmt, 1, statuses);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(Order.OrderStatus.valueOf(rs.getString("status")), rs.getInt("count"));
+                }
             }
 
-            order.getOrderItems().addAll(getOrderItems(order.getOrderId()));
-            orders.add(order);
+        } catch (SQLException e) {
+            System.err.println("Error counting orders by status: " + e.getMessage());
         }
 
-    } catch (SQLException e) {
-        System.err.println("Error retrieving orders by status: " + e.getMessage());
+        return counts;
     }
 
-    return orders;
-}
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static int bindStatuses(PreparedStatement stmt, int index, EnumSet<Order.OrderStatus> statuses) throws SQLException {
+        for (Order.OrderStatus status : statuses) {
+            stmt.setString(index++, status.name());
+        }
+        return index;
+    }
 
     public Order getOrderById(int orderId) {
     String query = "SELECT * FROM orders WHERE order_id = ?";
@@ -248,9 +843,15 @@ public class OrderDAO {
             order = new Order(orderId, customerId, serviceType);
             order.setStatus(status);
             order.setSpecialInstructions(specialInstructions);
+            order.setDiscount(rs.getDouble("discount"));
 
-            // Lấy các item trong order
-            order.setOrderItems(getOrderItems(orderId));
+            // Lấy các item trong order (giá lúc bán) rồi tính lại tổng
+            finishOrderGraph(order, getOrderItems(orderId));
+        } else if (!OrderArchive.isEmpty()) {
+            // Không còn trong orders: có thể đã được chuyển sang archive
+            List<Order> archived = fetchGraphs(ARCHIVE_GRAPH_QUERY + "WHERE o.order_id = ?" + ORDER_GRAPH_ORDER_BY,
+                    s -> s.setInt(1, orderId));
+            order = archived.isEmpty() ? null : archived.get(0);
         }
 
     } catch (SQLException e) {
@@ -263,13 +864,21 @@ public class OrderDAO {
     public boolean updateOrderStatus(int orderId, Order.OrderStatus newStatus) {
     String query = "UPDATE orders SET status = ? WHERE order_id = ?";
 
-    try (Connection conn = dbConnection.getConnection();
-         PreparedStatement stmt = conn.prepareStatement(query)) {
-
-        stmt.setString(1, newStatus.toString());
-        stmt.setInt(2, orderId);
-
-        int rowsUpdated = stmt.executeUpdate();
+    try {
+        int rowsUpdated = DatabaseConnection.executeWrite(conn -> {
+            List<Integer> ids = Collections.singletonList(orderId);
+            SalesRollup.remove(conn, ids);
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, newStatus.toString());
+                stmt.setInt(2, orderId);
+                int updated = stmt.executeUpdate();
+                SalesRollup.add(conn, ids);
+                if (updated > 0) {
+                    DatabaseConnection.afterCommit(() -> KitchenQueue.get().statusChanged(orderId, newStatus));
+                }
+                return updated;
+            }
+        });
         if (rowsUpdated > 0) {
             System.out.println("Order ID " + orderId + " updated to status: " + newStatus);
             return true;
@@ -282,29 +891,169 @@ public class OrderDAO {
     return false;
 }
 
-    public List<Order> getOrdersByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-    List<Order> orders = new ArrayList<>();
-    String query = "SELECT * FROM orders WHERE order_date BETWEEN ? AND ? ORDER BY order_date DESC";
+    // --- Chuyển trạng thái hàng loạt ---
+    /** Một yêu cầu chuyển order từ expectedStatus sang newStatus. */
+    public static class StatusTransition {
+        private final int orderId;
+        private final Order.OrderStatus expectedStatus;
+        private final Order.OrderStatus newStatus;
+
+        public StatusTransition(int orderId, Order.OrderStatus expectedStatus, Order.OrderStatus newStatus) {
+            this.orderId = orderId;
+            this.expectedStatus = expectedStatus;
+            this.newStatus = newStatus;
+        }
 
-    try (Connection conn = dbConnection.getConnection();
-         PreparedStatement stmt = conn.prepareStatement(query)) {
+        public int getOrderId() { return orderId; }
+        public Order.OrderStatus getExpectedStatus() { return expectedStatus; }
+        public Order.OrderStatus getNewStatus() { return newStatus; }
+    }
 
-        stmt.setTimestamp(1, Timestamp.valueOf(startDate));
-        stmt.setTimestamp(2, Timestamp.valueOf(endDate));
+    public enum TransitionOutcome {
+        /** Đã chuyển sang trạng thái mới. */
+        UPDATED,
+        /** Order không còn ở expectedStatus (đã bị người khác đổi); không cập nhật. */
+        STALE,
+        NOT_FOUND,
+        /** Cả lô bị rollback do lỗi database. */
+        FAILED
+    }
 
-        ResultSet rs = stmt.executeQuery();
+    public static class TransitionResult {
+        private final StatusTransition transition;
+        private final TransitionOutcome outcome;
+        private final Order.OrderStatus currentStatus;
 
-        while (rs.next()) {
-            Order order = createOrderFromResultSet(rs);
-            orders.add(order);
+        TransitionResult(StatusTransition transition, TransitionOutcome outcome, Order.OrderStatus currentStatus) {
+            this.transition = transition;
+            this.outcome = outcome;
+            this.currentStatus = currentStatus;
         }
 
-    } catch (SQLException e) {
-        System.err.println("Error retrieving orders by date range: " + e.getMessage());
+        public StatusTransition getTransition() { return transition; }
+        public TransitionOutcome getOutcome() { return outcome; }
+        /** Trạng thái trong DB sau lô cập nhật (null nếu không biết: NOT_FOUND/FAILED). */
+        public Order.OrderStatus getCurrentStatus() { return currentStatus; }
     }
 
-    return orders;
-}
+    /**
+     * Chuyển trạng thái nhiều order bằng một JDBC batch trong một transaction.
+     * Mỗi UPDATE chỉ áp dụng khi order vẫn ở expectedStatus, nên lệnh cũ (stale) không ghi đè thay đổi mới hơn;
+     * chuyển sang COMPLETED thì ghi completion_time. Kết quả trả về theo đúng thứ tự đầu vào.
+     */
+    public List<TransitionResult> updateOrderStatuses(List<StatusTransition> transitions) {
+        if (transitions.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String query = "UPDATE orders SET status = ?, " +
+                       "completion_time = CASE WHEN ? THEN CURRENT_TIMESTAMP ELSE completion_time END " +
+                       "WHERE order_id = ? AND status = ?";
+
+        try {
+            List<Integer> orderIds = new ArrayList<>(transitions.size());
+            for (StatusTransition t : transitions) {
+                orderIds.add(t.getOrderId());
+            }
+            List<TransitionResult> results = DatabaseConnection.executeWrite(conn -> {
+                // Bớt khỏi nhóm trạng thái cũ rồi cộng lại theo trạng thái sau lô (kể cả order STALE: không đổi)
+                SalesRollup.remove(conn, orderIds);
+                int[] counts;
+                try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                    for (StatusTransition t : transitions) {
+                        stmt.setString(1, t.getNewStatus().name());
+                        stmt.setBoolean(2, t.getNewStatus() == Order.OrderStatus.COMPLETED);
+                        stmt.setInt(3, t.getOrderId());
+                        stmt.setString(4, t.getExpectedStatus().name());
+                        stmt.addBatch();
+                    }
+                    counts = stmt.executeBatch();
+                }
+                SalesRollup.add(conn, orderIds);
+                List<TransitionResult> resolved = resolveTransitions(conn, transitions, counts);
+                DatabaseConnection.afterCommit(() -> {
+                    for (TransitionResult r : resolved) {
+                        if (r.getOutcome() == TransitionOutcome.UPDATED) {
+                            KitchenQueue.get().statusChanged(r.getTransition().getOrderId(), r.getCurrentStatus());
+                        }
+                    }
+                });
+                return resolved;
+            });
+
+            long updated = results.stream().filter(r -> r.getOutcome() == TransitionOutcome.UPDATED).count();
+            System.out.println("Updated status of " + updated + "/" + transitions.size() + " orders");
+            return results;
+
+        } catch (SQLException e) {
+            System.err.println("Error updating order statuses: " + e.getMessage());
+        }
+
+        List<TransitionResult> failed = new ArrayList<>();
+        for (StatusTransition t : transitions) {
+            failed.add(new TransitionResult(t, TransitionOutcome.FAILED, null));
+        }
+        return failed;
+    }
+
+    // Số dòng 0 (hoặc SUCCESS_NO_INFO) được phân loại bằng trạng thái hiện tại, đọc trong cùng transaction
+    private List<TransitionResult> resolveTransitions(Connection conn, List<StatusTransition> transitions,
+                                                      int[] counts) throws SQLException {
+        List<Integer> unknown = new ArrayList<>();
+        for (int i = 0; i < transitions.size(); i++) {
+            if (counts[i] != 1) {
+                unknown.add(transitions.get(i).getOrderId());
+            }
+        }
+
+        Map<Integer, Order.OrderStatus> current = new HashMap<>();
+        if (!unknown.isEmpty()) {
+            String query = "SELECT order_id, status FROM orders WHERE order_id IN (" + placeholders(unknown.size()) + ")";
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                for (int i = 0; i < unknown.size(); i++) {
+                    stmt.setInt(i + 1, unknown.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        current.put(rs.getInt("order_id"), Order.OrderStatus.valueOf(rs.getString("status")));
+                    }
+                }
+            }
+        }
+
+        List<TransitionResult> results = new ArrayList<>(transitions.size());
+        for (int i = 0; i < transitions.size(); i++) {
+            StatusTransition t = transitions.get(i);
+            if (counts[i] == 1) {
+                results.add(new TransitionResult(t, TransitionOutcome.UPDATED, t.getNewStatus()));
+                continue;
+            }
+            Order.OrderStatus status = current.get(t.getOrderId());
+            if (status == null) {
+                results.add(new TransitionResult(t, TransitionOutcome.NOT_FOUND, null));
+            } else if (counts[i] == Statement.SUCCESS_NO_INFO && status == t.getNewStatus()) {
+                results.add(new TransitionResult(t, TransitionOutcome.UPDATED, status));
+            } else {
+                results.add(new TransitionResult(t, TransitionOutcome.STALE, status));
+            }
+        }
+        return results;
+    }
+
+    /** Order đặt trong [startDate, endDate] (kèm món); đọc thêm archive khi startDate lùi quá phần dữ liệu nóng. */
+    public List<Order> getOrdersByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
+        String from = sqlTime(startDate);
+        String to = sqlTime(endDate);
+        try {
+            return fetchOrderGraphs("WHERE o.order_time BETWEEN ? AND ?", (stmt, i) -> {
+                stmt.setString(i++, from);
+                stmt.setString(i++, to);
+                return i;
+            }, OrderArchive.reaches(from));
+        } catch (SQLException e) {
+            System.err.println("Error retrieving orders by date range: " + e.getMessage());
+        }
+        return new ArrayList<>();
+    }
 
     public static class OrderStats {
         private int totalOrders;
@@ -333,18 +1082,19 @@ public class OrderDAO {
     }
 
     public OrderStats getOrderStats() {
+        // Đọc từ sales_daily (số dòng ~ số ngày x loại phục vụ x trạng thái) thay vì quét cả bảng orders
         String sql = """
             SELECT
-                COUNT(*) AS totalOrders,
-                SUM(CASE WHEN status = 'PENDING' THEN 1 ELSE 0 END) AS pendingOrders,
-                SUM(CASE WHEN status = 'COMPLETED' THEN 1 ELSE 0 END) AS completedOrders,
-                SUM(CASE WHEN status = 'CANCELLED' THEN 1 ELSE 0 END) AS cancelledOrders,
-                AVG(total_amount) AS avgOrderValue,
-                SUM(total_amount) AS totalRevenue
-            FROM orders
+                COALESCE(SUM(order_count), 0) AS totalOrders,
+                COALESCE(SUM(CASE WHEN status = 'PENDING' THEN order_count ELSE 0 END), 0) AS pendingOrders,
+                COALESCE(SUM(CASE WHEN status = 'COMPLETED' THEN order_count ELSE 0 END), 0) AS completedOrders,
+                COALESCE(SUM(CASE WHEN status = 'CANCELLED' THEN order_count ELSE 0 END), 0) AS cancelledOrders,
+                COALESCE(SUM(revenue) * 1.0 / NULLIF(SUM(order_count), 0), 0) AS avgOrderValue,
+                COALESCE(SUM(revenue), 0) AS totalRevenue
+            FROM sales_daily
         """;
 
-        try (Connection conn = DatabaseConnection.getInstance().getConnection();
+        try (Connection conn = DatabaseConnection.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
 
@@ -366,6 +1116,212 @@ public class OrderDAO {
         return new OrderStats(0, 0, 0, 0, 0.0, 0.0);
     }
 
+    // --- Doanh số theo ngày/giờ (đọc bảng tổng hợp sales_daily / sales_hourly) ---
+    /** Một nhóm của bảng tổng hợp: ngày (giờ địa phương), giờ (-1 với bảng theo ngày), loại phục vụ, trạng thái. */
+    public static class SalesRow {
+        private final LocalDate date;
+        private final int hour;
+        private final Order.ServiceType serviceType;
+        private final Order.OrderStatus status;
+        private final int orderCount;
+        private final double revenue;
+
+        public SalesRow(LocalDate date, int hour, Order.ServiceType serviceType, Order.OrderStatus status,
+                        int orderCount, double revenue) {
+            this.date = date;
+            this.hour = hour;
+            this.serviceType = serviceType;
+            this.status = status;
+            this.orderCount = orderCount;
+            this.revenue = revenue;
+        }
+
+        public LocalDate getDate() { return date; }
+        public int getHour() { return hour; }
+        public Order.ServiceType getServiceType() { return serviceType; }
+        public Order.OrderStatus getStatus() { return status; }
+        public int getOrderCount() { return orderCount; }
+        public double getRevenue() { return revenue; }
+    }
+
+    /** Doanh số các ngày trong [from, to] (tính cả hai đầu), theo ngày tăng dần. */
+    public List<SalesRow> getDailySales(LocalDate from, LocalDate to) {
+        String query = "SELECT sales_date, service_type, status, order_count, revenue FROM sales_daily " +
+                       "WHERE sales_date BETWEEN ? AND ? AND order_count > 0 " +
+                       "ORDER BY sales_date, service_type, status";
+        return readSales(query, from.toString(), to.toString(), false, "Error retrieving daily sales: ");
+    }
+
+    /** Doanh số theo giờ của một ngày, theo giờ tăng dần. */
+    public List<SalesRow> getHourlySales(LocalDate day) {
+        String query = "SELECT sales_date, sales_hour, service_type, status, order_count, revenue FROM sales_hourly " +
+                       "WHERE sales_date BETWEEN ? AND ? AND order_count > 0 " +
+                       "ORDER BY sales_hour, service_type, status";
+        return readSales(query, day.toString(), day.toString(), true, "Error retrieving hourly sales: ");
+    }
+
+    private List<SalesRow> readSales(String query, String from, String to, boolean hourly, String errorPrefix) {
+        List<SalesRow> rows = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setString(1, from);
+            stmt.setString(2, to);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new SalesRow(
+                        LocalDate.parse(rs.getString("sales_date")),
+                        hourly ? rs.getInt("sales_hour") : -1,
+                        Order.ServiceType.valueOf(rs.getString("service_type")),
+                        Order.OrderStatus.valueOf(rs.getString("status")),
+                        rs.getInt("order_count"),
+                        rs.getDouble("revenue")
+                    ));
+                }
+            }
+
+        } catch (SQLException e) {
+            System.err.println(errorPrefix + e.getMessage());
+        }
+
+        return rows;
+    }
+
+    /** Tính lại sales_daily / sales_hourly từ bảng orders; trả về số order đã tổng hợp, hoặc -1 nếu lỗi. */
+    public int rebuildSalesRollup() {
+        try {
+            return DatabaseConnection.executeWrite(SalesRollup::rebuild);
+        } catch (SQLException e) {
+            System.err.println("Error rebuilding sales rollup: " + e.getMessage());
+        }
+        return -1;
+    }
+
+    // --- Archive: chuyển order đã xong lâu ngày sang bảng *_archive ---
+    /** Chuyển order COMPLETED/CANCELLED cũ hơn db.archive.afterDays ngày; trả về số order đã chuyển, -1 nếu lỗi. */
+    public int archiveOrders() {
+        return archiveOrders(DatabaseConnection.getIntSetting("db.archive.afterDays", 90));
+    }
+
+    public int archiveOrders(int olderThanDays) {
+        return OrderArchive.archive(olderThanDays);
+    }
+
+    /** Bật job archive định kỳ (db.archive.intervalHours, 0 = tắt). */
+    public static void scheduleArchiving() {
+        OrderArchive.schedule();
+    }
+
+    // --- Join fetch: orders + order_items + menu_items trong một câu truy vấn ---
+    // Thay cho 1 truy vấn orders + N truy vấn order_items + N*M truy vấn menu_items (N+1).
+    private static final String ORDER_GRAPH_COLUMNS =
+            "SELECT o.order_id AS order_id, o.customer_id, o.status, o.service_type, o.discount, o.special_instructions, " +
+            "       o.order_time AS order_time, oi.order_item_id AS order_item_id, oi.menu_item_id, oi.quantity, oi.unit_price, oi.customizations, " +
+            "       m.id AS mi_id, m.name AS mi_name, m.description AS mi_description, m.base_price AS mi_base_price, " +
+            "       m.category AS mi_category, m.coffee_type AS mi_coffee_type, m.is_available AS mi_is_available ";
+    private static final String ORDER_GRAPH_QUERY = ORDER_GRAPH_COLUMNS +
+            "FROM orders o " +
+            "LEFT JOIN order_items oi ON oi.order_id = o.order_id " +
+            "LEFT JOIN menu_items m ON m.id = oi.menu_item_id ";
+    private static final String ARCHIVE_GRAPH_QUERY = ORDER_GRAPH_COLUMNS +
+            "FROM orders_archive o " +
+            "LEFT JOIN order_items_archive oi ON oi.order_id = o.order_id " +
+            "LEFT JOIN menu_items m ON m.id = oi.menu_item_id ";
+    private static final String ORDER_GRAPH_ORDER_BY = " ORDER BY o.order_time DESC, o.order_id DESC, oi.order_item_id";
+    // ORDER BY của UNION chỉ dùng alias cột kết quả (MySQL không cho tiền tố bảng, SQLite cần AS khi tên trùng giữa các bảng)
+    private static final String UNION_GRAPH_ORDER_BY = " ORDER BY order_time DESC, order_id DESC, order_item_id";
+
+    /** Bind tham số từ vị trí i, trả về vị trí kế tiếp; nhờ vậy bind lại được cho nửa archive của UNION. */
+    private interface GraphBinder {
+        int bind(PreparedStatement stmt, int i) throws SQLException;
+    }
+
+    /** Truy vấn graph theo whereClause (alias o/oi); withArchive ghép thêm cùng điều kiện trên bảng archive. */
+    private static String graphQuery(String whereClause, boolean withArchive) {
+        if (!withArchive) {
+            return ORDER_GRAPH_QUERY + whereClause + ORDER_GRAPH_ORDER_BY;
+        }
+        return ORDER_GRAPH_QUERY + whereClause + " UNION ALL " + ARCHIVE_GRAPH_QUERY + whereClause + UNION_GRAPH_ORDER_BY;
+    }
+
+    private static ResultStreams.ParameterBinder bindAll(GraphBinder binder, boolean withArchive) {
+        return stmt -> {
+            int next = binder.bind(stmt, 1);
+            if (withArchive) {
+                binder.bind(stmt, next);
+            }
+        };
+    }
+
+    /**
+     * Đọc một lượt qua kết quả JOIN (mỗi dòng là một order item) và ghép thành Order theo order_id.
+     * Các dòng của cùng một order liền nhau nhờ ORDER BY nên chỉ cần giữ danh sách món của order đang ghép.
+     */
+    private List<Order> fetchOrderGraphs(String whereClause, GraphBinder binder, boolean withArchive) throws SQLException {
+        return fetchGraphs(graphQuery(whereClause, withArchive), bindAll(binder, withArchive));
+    }
+
+    private List<Order> fetchGraphs(String query, ResultStreams.ParameterBinder binder) throws SQLException {
+        List<Order> orders = new ArrayList<>();
+
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            binder.bind(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                OrderGraphReader reader = new OrderGraphReader();
+                Order order;
+                while ((order = reader.read(rs)) != null) {
+                    orders.add(order);
+                }
+            }
+        }
+
+        return orders;
+    }
+
+    /** Ghép từng Order từ các dòng liền nhau của kết quả JOIN; trả về null khi hết dữ liệu. */
+    private final class OrderGraphReader implements ResultStreams.RowReader<Order> {
+        private boolean started;
+        private boolean exhausted;
+
+        @Override
+        public Order read(ResultSet rs) throws SQLException {
+            if (!started) {
+                started = true;
+                exhausted = !rs.next();
+            }
+            if (exhausted) {
+                return null;
+            }
+            // rs đang ở dòng đầu tiên của order tiếp theo
+            Order order = createOrderFromResultSet(rs);
+            List<OrderItem> items = new ArrayList<>();
+            do {
+                if (rs.getInt("order_id") != order.getOrderId()) {
+                    finishOrderGraph(order, items);
+                    return order;
+                }
+                // Order chưa có món, hoặc món đã bị xóa khỏi menu
+                rs.getInt("mi_id");
+                if (!rs.wasNull()) {
+                    MenuItem menuItem = MenuItemDAO.createMenuItemFromResultSet(rs, "mi_");
+                    items.add(new OrderItem(menuItem, rs.getInt("quantity"), rs.getString("customizations"),
+                            rs.getDouble("unit_price")));
+                }
+            } while (rs.next());
+            exhausted = true;
+            finishOrderGraph(order, items);
+            return order;
+        }
+    }
+
+    private void finishOrderGraph(Order order, List<OrderItem> items) {
+        // setOrderItems tính lại tạm tính/thuế/tổng theo giá đã lưu của các món vừa gán
+        order.setOrderItems(items);
+    }
+
     // --- Helper tạo Order từ ResultSet ---
     private Order createOrderFromResultSet(ResultSet rs) throws SQLException {
         int orderId = rs.getInt("order_id");
@@ -380,6 +1336,12 @@ public class OrderDAO {
         Order order = new Order(orderId, customerId, serviceType);
         order.setStatus(status);
         order.setSpecialInstructions(notes);
+        order.setDiscount(rs.getDouble("discount"));
+
+        Timestamp ts = rs.getTimestamp("order_time");
+        if (ts != null) {
+            order.setOrderTime(ts.toLocalDateTime());
+        }
 
         return order;
     }
@@ -0,0 +1,518 @@
+package coffeeshop.dao;
+
+import coffeeshop.db.DatabaseConnection;
+import coffeeshop.model.Coffee;
+import coffeeshop.model.Order;
+import coffeeshop.model.OrderItem;
+import coffeeshop.model.Payment;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OrderSubmissionQueue
+ * --------------------
+ * Hàng đợi ghi sau (write-behind) cho order lúc thanh toán: order (và payment) được chụp lại thành
+ * {@link Submission}, ghi thêm một dòng vào file journal rồi đưa vào hàng đợi trong bộ nhớ; một luồng
+ * nền ghi lần lượt xuống DB, mỗi submission một transaction qua {@link DatabaseConnection#executeWrite}.
+ *
+ * - Giới hạn db.orderQueue.capacity submission chưa ghi: khi đầy, submit chờ tối đa
+ *   db.orderQueue.offerTimeoutMs rồi trả về future lỗi (backpressure).
+ * - Journal (db.orderQueue.file) có dòng "E" khi nhận và "D" khi đã commit; khi khởi động các dòng E chưa
+ *   có D được ghi lại. Mỗi submission mang idempotency key nên nếu ứng dụng dừng giữa commit và dòng D,
+ *   lần ghi lại trả về order đã có thay vì ghi hai lần.
+ *   Mặc định (db.orderQueue.fsync=true) dòng E được ép xuống đĩa trước khi submit trả về, vì UI báo thanh toán
+ *   thành công ngay sau đó; dòng D không cần ép (mất D chỉ làm lần khởi động sau ghi lại, trả về order đã có).
+ *   fsync=false nhanh hơn nhưng order đã báo thành công có thể mất khi mất điện.
+ * - Lỗi ghi được thử lại db.orderQueue.maxAttempts lần; sau đó future lỗi nhưng submission vẫn nằm
+ *   trong journal để ghi lại ở lần khởi động sau.
+ */
+final class OrderSubmissionQueue {
+
+    /** Ghi một submission trong transaction hiện tại; trả về order_id. */
+    interface Persister {
+        int persist(Submission submission, Connection conn) throws SQLException;
+    }
+
+    /** Bản chụp giá trị cột của order, các dòng món và payment (nếu có) tại lúc submit. */
+    static final class Submission {
+        long seq;
+        int customerId;
+        String status;
+        String serviceType;
+        double subtotal;
+        double tax;
+        double discount;
+        double totalAmount;
+        String specialInstructions;
+        final List<Line> lines = new ArrayList<>();
+        String paymentMethod;
+        double paymentAmount;
+        String paymentStatus;
+        String paymentReference;
+        String idempotencyKey;
+
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        boolean holdsPermit;
+        int attempts;
+
+        static Submission of(Order order, Payment payment) {
+            Submission s = new Submission();
+            s.customerId = order.getCustomerId();
+            s.status = order.getStatus().toString();
+            s.serviceType = order.getServiceType().toString();
+            s.subtotal = order.getSubtotal();
+            s.tax = order.getTax();
+            s.discount = order.getDiscount();
+            s.totalAmount = order.getTotalAmount();
+            s.specialInstructions = order.getSpecialInstructions();
+            for (OrderItem item : order.getOrderItems()) {
+                Line line = new Line(item.getMenuItem().getId(), item.getQuantity(), item.getUnitPrice(),
+                        item.getItemTotal(), item.getCustomizations());
+                if (item.getMenuItem() instanceof Coffee) {
+                    Coffee coffee = (Coffee) item.getMenuItem();
+                    line.size = coffee.getSize().name();
+                    line.hot = coffee.isHot();
+                }
+                s.lines.add(line);
+            }
+            if (payment != null) {
+                s.paymentMethod = payment.getPaymentMethod().toString();
+                s.paymentAmount = payment.getAmount();
+                s.paymentStatus = payment.getStatus().toString();
+                s.paymentReference = payment.getTransactionReference();
+            }
+            // Order không có khóa vẫn cần khóa riêng cho submission để ghi lại từ journal không bị trùng
+            s.idempotencyKey = order.getIdempotencyKey() != null
+                    ? order.getIdempotencyKey() : UUID.randomUUID().toString();
+            return s;
+        }
+
+        /** Payment để ghi cùng order, hoặc null nếu submit không kèm payment. */
+        Payment toPayment(int orderId) {
+            if (paymentMethod == null) return null;
+            Payment payment = new Payment(0, orderId, Payment.PaymentMethod.valueOf(paymentMethod), paymentAmount);
+            payment.setStatus(Payment.PaymentStatus.valueOf(paymentStatus));
+            payment.setTransactionReference(paymentReference);
+            return payment;
+        }
+
+        String encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(customerId);
+                out.writeUTF(status);
+                out.writeUTF(serviceType);
+                out.writeDouble(subtotal);
+                out.writeDouble(tax);
+                out.writeDouble(discount);
+                out.writeDouble(totalAmount);
+                writeNullable(out, specialInstructions);
+                out.writeInt(lines.size());
+                for (Line line : lines) {
+                    out.writeInt(line.menuItemId);
+                    out.writeInt(line.quantity);
+                    out.writeDouble(line.unitPrice);
+                    out.writeDouble(line.totalPrice);
+                    writeNullable(out, line.customizations);
+                }
+                writeNullable(out, paymentMethod);
+                if (paymentMethod != null) {
+                    out.writeDouble(paymentAmount);
+                    out.writeUTF(paymentStatus);
+                    writeNullable(out, paymentReference);
+                }
+                // Cỡ ly/nóng-đá ghi ở cuối để vẫn đọc được journal cũ không có phần này
+                for (Line line : lines) {
+                    writeNullable(out, line.size);
+                    out.writeByte(line.hot == null ? -1 : line.hot ? 1 : 0);
+                }
+                writeNullable(out, idempotencyKey);
+            }
+            return Base64.getEncoder().encodeToString(bytes.toByteArray());
+        }
+
+        static Submission decode(long seq, String payload) throws IOException {
+            Submission s = new Submission();
+            s.seq = seq;
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(payload)))) {
+                s.customerId = in.readInt();
+                s.status = in.readUTF();
+                s.serviceType = in.readUTF();
+                s.subtotal = in.readDouble();
+                s.tax = in.readDouble();
+                s.discount = in.readDouble();
+                s.totalAmount = in.readDouble();
+                s.specialInstructions = readNullable(in);
+                int lineCount = in.readInt();
+                for (int i = 0; i < lineCount; i++) {
+                    s.lines.add(new Line(in.readInt(), in.readInt(), in.readDouble(), in.readDouble(), readNullable(in)));
+                }
+                s.paymentMethod = readNullable(in);
+                if (s.paymentMethod != null) {
+                    s.paymentAmount = in.readDouble();
+                    s.paymentStatus = in.readUTF();
+                    s.paymentReference = readNullable(in);
+                }
+                if (in.available() > 0) {
+                    for (Line line : s.lines) {
+                        line.size = readNullable(in);
+                        byte hot = in.readByte();
+                        line.hot = hot < 0 ? null : hot == 1;
+                    }
+                }
+                if (in.available() > 0) {
+                    s.idempotencyKey = readNullable(in);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt journal entry " + seq, e);
+            }
+            return s;
+        }
+
+        private static void writeNullable(DataOutputStream out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) out.writeUTF(value);
+        }
+
+        private static String readNullable(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+
+    static final class Line {
+        final int menuItemId;
+        final int quantity;
+        final double unitPrice;
+        final double totalPrice;
+        final String customizations;
+        String size;
+        Boolean hot;
+
+        Line(int menuItemId, int quantity, double unitPrice, double totalPrice, String customizations) {
+            this.menuItemId = menuItemId;
+            this.quantity = quantity;
+            this.unitPrice = unitPrice;
+            this.totalPrice = totalPrice;
+            this.customizations = customizations;
+        }
+    }
+
+    private static OrderSubmissionQueue instance;
+
+    private final Persister persister;
+    private final Path journalPath;
+    private final boolean fsync;
+    private final long offerTimeoutMs;
+    private final int maxAttempts;
+    private final long retryDelayMs;
+    private final Semaphore permits;
+    private final BlockingQueue<Submission> queue = new LinkedBlockingQueue<>();
+    // Submission đã bỏ cuộc trong lần chạy này: giữ lại trong journal để ghi ở lần khởi động sau
+    private final Map<Long, String> parked = new LinkedHashMap<>();
+    private final Thread thread;
+    private FileChannel journal;
+    private long nextSeq = 1;
+    private volatile boolean running = true;
+    private volatile int inFlight;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+
+    private OrderSubmissionQueue(Persister persister) {
+        this.persister = persister;
+        this.journalPath = Paths.get(DatabaseConnection.getSetting("db.orderQueue.file", "order-queue.journal"));
+        this.fsync = DatabaseConnection.getBoolSetting("db.orderQueue.fsync", true);
+        this.offerTimeoutMs = Math.max(0, DatabaseConnection.getLongSetting("db.orderQueue.offerTimeoutMs", 200L));
+        this.maxAttempts = Math.max(1, DatabaseConnection.getIntSetting("db.orderQueue.maxAttempts", 5));
+        this.retryDelayMs = Math.max(0, DatabaseConnection.getLongSetting("db.orderQueue.retryDelayMs", 1000L));
+        this.permits = new Semaphore(Math.max(1, DatabaseConnection.getIntSetting("db.orderQueue.capacity", 1000)));
+
+        recover();
+
+        this.thread = new Thread(this::run, "order-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(2000), "order-writer-shutdown"));
+    }
+
+    /** Hàng đợi dùng chung; lần gọi đầu tiên đọc lại journal và khởi động luồng ghi. */
+    static synchronized OrderSubmissionQueue get(Persister persister) {
+        if (instance == null) {
+            instance = new OrderSubmissionQueue(persister);
+        }
+        return instance;
+    }
+
+    static synchronized OrderSubmissionQueue peek() {
+        return instance;
+    }
+
+    // ==========================
+    // API
+    // ==========================
+    /** Ghi journal rồi xếp hàng; chỉ chờ khi hàng đợi đầy (tối đa offerTimeoutMs). */
+    CompletableFuture<Integer> submit(Submission submission) {
+        if (!running) {
+            return rejected(submission, "Order queue is stopped");
+        }
+        try {
+            if (!permits.tryAcquire(offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return rejected(submission, "Order queue is full (" + inFlight + " orders waiting to be saved)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return rejected(submission, "Interrupted while waiting for the order queue");
+        }
+        submission.holdsPermit = true;
+
+        synchronized (this) {
+            submission.seq = nextSeq++;
+            try {
+                append("E " + submission.seq + " " + submission.encode(), fsync);
+            } catch (IOException e) {
+                permits.release();
+                return rejected(submission, "Could not write order journal: " + e.getMessage());
+            }
+            inFlight++;
+        }
+        submitted.incrementAndGet();
+        queue.add(submission);
+        return submission.future;
+    }
+
+    /** Chờ tới khi mọi submission đang chờ đã được xử lý hoặc hết thời gian; trả về true nếu đã rỗng. */
+    boolean awaitDrained(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (this) {
+            while (inFlight > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    void shutdown(long timeoutMs) {
+        if (!running) return;
+        awaitDrained(timeoutMs);
+        running = false;
+        thread.interrupt();
+        synchronized (this) {
+            try {
+                if (journal != null) journal.close();
+            } catch (IOException ignore) {}
+            journal = null;
+        }
+    }
+
+    private CompletableFuture<Integer> rejected(Submission submission, String reason) {
+        rejected.incrementAndGet();
+        submission.future.completeExceptionally(new SQLException(reason));
+        return submission.future;
+    }
+
+    // ==========================
+    // Luồng ghi
+    // ==========================
+    private void run() {
+        while (running) {
+            Submission s;
+            try {
+                s = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            write(s);
+        }
+    }
+
+    private void write(Submission s) {
+        while (true) {
+            try {
+                int orderId = DatabaseConnection.executeWrite(conn -> persister.persist(s, conn));
+                written.incrementAndGet();
+                finish(s, "D " + s.seq + " " + orderId, false);
+                s.future.complete(orderId);
+                return;
+            } catch (SQLException | RuntimeException e) {
+                s.attempts++;
+                if (s.attempts >= maxAttempts || !running) {
+                    System.err.println("Could not save submitted order " + s.seq + " after " + s.attempts
+                            + " attempts, kept in " + journalPath + " for the next start: " + e.getMessage());
+                    finish(s, null, true);
+                    s.future.completeExceptionally(e instanceof SQLException ? e : new SQLException(e));
+                    return;
+                }
+                retries.incrementAndGet();
+                try {
+                    Thread.sleep(retryDelayMs * s.attempts);
+                } catch (InterruptedException ie) {
+                    if (!running) {
+                        s.attempts = maxAttempts;
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void finish(Submission s, String doneRecord, boolean park) {
+        try {
+            if (park) {
+                parked.put(s.seq, s.encode());
+            } else {
+                append(doneRecord, false);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not update order journal: " + e.getMessage());
+        }
+        if (s.holdsPermit) {
+            permits.release();
+        }
+        inFlight--;
+        if (inFlight == 0) {
+            compact();
+        }
+        notifyAll();
+    }
+
+    // ==========================
+    // Journal
+    // ==========================
+    private void append(String record, boolean force) throws IOException {
+        if (journal == null) {
+            journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+        if (force) {
+            journal.force(false);
+        }
+    }
+
+    /** Khi không còn gì đang chờ: viết lại journal chỉ với các submission bị giữ lại (thường là file rỗng). */
+    private void compact() {
+        List<String> records = new ArrayList<>(parked.size());
+        for (Map.Entry<Long, String> e : parked.entrySet()) {
+            records.add("E " + e.getKey() + " " + e.getValue());
+        }
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+            Path tmp = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+            // Ép file tạm xuống đĩa trước khi thay: mất điện sau move không để lại journal rỗng/thiếu
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                StringBuilder text = new StringBuilder();
+                for (String record : records) {
+                    text.append(record).append('\n');
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII));
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(true);
+            }
+            Files.move(tmp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not compact order journal: " + e.getMessage());
+        }
+    }
+
+    /** Đọc journal của lần chạy trước: các dòng E chưa có D được xếp hàng lại. */
+    private void recover() {
+        if (!Files.exists(journalPath)) return;
+        Map<Long, String> pending = new LinkedHashMap<>();
+        long maxSeq = 0;
+        try {
+            for (String line : Files.readAllLines(journalPath, StandardCharsets.US_ASCII)) {
+                String[] parts = line.split(" ", 3);
+                if (parts.length < 2) continue;
+                long seq;
+                try {
+                    seq = Long.parseLong(parts[1]);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                maxSeq = Math.max(maxSeq, seq);
+                if ("E".equals(parts[0]) && parts.length == 3) {
+                    pending.put(seq, parts[2]);
+                } else if ("D".equals(parts[0])) {
+                    pending.remove(seq);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read order journal " + journalPath + ": " + e.getMessage());
+            return;
+        }
+        nextSeq = maxSeq + 1;
+
+        for (Map.Entry<Long, String> e : pending.entrySet()) {
+            try {
+                Submission s = Submission.decode(e.getKey(), e.getValue());
+                s.holdsPermit = permits.tryAcquire();
+                inFlight++;
+                queue.add(s);
+            } catch (IOException ex) {
+                // Dòng hỏng (vd. ghi dở khi mất điện): giữ lại để kiểm tra thủ công
+                System.err.println(ex.getMessage() + ", kept in journal");
+                parked.put(e.getKey(), e.getValue());
+            }
+        }
+        recovered.set(pending.size());
+        if (!pending.isEmpty()) {
+            System.out.println("Order queue: resubmitting " + pending.size() + " orders from " + journalPath);
+        }
+    }
+
+    // ==========================
+    // Thống kê
+    // ==========================
+    int getQueueDepth() {
+        return inFlight;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Order queue | submitted: %d | written: %d | queued: %d | rejected: %d | retries: %d | kept for restart: %d | recovered: %d",
+                submitted.get(), written.get(), inFlight, rejected.get(), retries.get(), parked.size(), recovered.get());
+    }
+}
@@ -0,0 +1,53 @@
+package coffeeshop.dao;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Một trang kết quả của phân trang theo khóa (keyset pagination).
+ * Trang tiếp theo được lấy bằng nextCursor (khóa sắp xếp + id của dòng cuối trang này),
+ * nên truy vấn chỉ đọc tiếp từ index thay vì OFFSET qua các dòng đã xem.
+ * nextCursor = null nghĩa là đã tới trang cuối.
+ */
+public final class Page<T> {
+
+    /** Vị trí sau dòng cuối cùng đã đọc: giá trị cột sắp xếp (dạng chuỗi như DB trả về) và id. */
+    public static final class Cursor {
+        final String key;
+        final int id;
+
+        Cursor(String key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public String toString() {
+            return key + "#" + id;
+        }
+    }
+
+    private final List<T> items;
+    private final Cursor nextCursor;
+
+    Page(List<T> items, Cursor nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public Cursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+}
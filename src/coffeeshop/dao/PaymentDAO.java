@@ -1,16 +1,20 @@
 package coffeeshop.dao;
 
 import coffeeshop.db.DatabaseConnection;
+import coffeeshop.db.IdAllocator;
 import coffeeshop.model.*;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object for Payment operations
  * Handles all database operations related to payments
  */
 public class PaymentDAO {
+    private static final IdAllocator PAYMENT_IDS = IdAllocator.forTable("payments", "payment_id", "payments_archive");
     private DatabaseConnection dbConnection;
 
     public PaymentDAO() {
@@ -19,27 +23,33 @@ public class PaymentDAO {
 
     // Create a new payment
     public int createPayment(Payment payment) {
-        String query = "INSERT INTO payments (order_id, payment_method, amount, status, transaction_reference) VALUES (?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = dbConnection.getConnection().prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setInt(1, payment.getOrderId());
-            pstmt.setString(2, payment.getPaymentMethod().toString());
-            pstmt.setDouble(3, payment.getAmount());
-            pstmt.setString(4, payment.getStatus().toString());
-            pstmt.setString(5, payment.getTransactionReference());
-
-            int rowsAffected = pstmt.executeUpdate();
-            if (rowsAffected > 0) {
-                ResultSet generatedKeys = pstmt.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    return generatedKeys.getInt(1);
-                }
-            }
+        try {
+            return DatabaseConnection.executeWrite(conn -> insertPayment(payment, conn));
         } catch (SQLException e) {
             System.err.println("Error creating payment: " + e.getMessage());
         }
         return -1;
     }
 
+    int insertPayment(Payment payment, Connection conn) throws SQLException {
+        String query = "INSERT INTO payments (payment_id, order_id, payment_method, amount, status, transaction_reference) VALUES (?, ?, ?, ?, ?, ?)";
+        int paymentId = PAYMENT_IDS.next(conn);
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setInt(1, paymentId);
+            pstmt.setInt(2, payment.getOrderId());
+            pstmt.setString(3, payment.getPaymentMethod().toString());
+            pstmt.setDouble(4, payment.getAmount());
+            pstmt.setString(5, payment.getStatus().toString());
+            pstmt.setString(6, payment.getTransactionReference());
+
+            pstmt.executeUpdate();
+            String status = payment.getStatus().toString();
+            double amount = payment.getAmount();
+            DatabaseConnection.afterCommit(() -> LiveStats.get().recordPayment(status, 1, amount));
+            return paymentId;
+        }
+    }
+
     // ✅ Inner class thống kê thanh toán
     public static class PaymentStats {
         private int totalPayments;
@@ -70,7 +80,7 @@ public class PaymentDAO {
         }
     }
 
-    // --- Lấy thống kê thanh toán từ DB ---
+    // --- Lấy thống kê thanh toán từ DB (gồm cả payment đã chuyển sang archive) ---
     public PaymentStats getPaymentStats() {
         String sql = """
             SELECT 
@@ -79,10 +89,11 @@ public class PaymentDAO {
                 SUM(CASE WHEN status = 'CANCELLED' THEN 1 ELSE 0 END) AS cancelledPayments,
                 SUM(amount) AS totalRevenue,
                 AVG(amount) AS avgPaymentAmount
-            FROM payments
+            FROM (SELECT status, amount FROM payments
+                  UNION ALL SELECT status, amount FROM payments_archive) p
         """;
 
-        try (Connection conn = DatabaseConnection.getInstance().getConnection();
+        try (Connection conn = DatabaseConnection.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
 
@@ -106,7 +117,8 @@ public class PaymentDAO {
     // --- Các phương thức CRUD khác ---
     public Payment getPaymentById(int paymentId) {
         String query = "SELECT * FROM payments WHERE payment_id = ?";
-        try (PreparedStatement pstmt = dbConnection.getConnection().prepareStatement(query)) {
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setInt(1, paymentId);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -119,9 +131,19 @@ public class PaymentDAO {
     }
 
     public List<Payment> getPaymentsByOrderId(int orderId) {
+        List<Payment> payments = readPaymentsByOrderId("payments", orderId);
+        if (payments.isEmpty() && !OrderArchive.isEmpty()) {
+            // Order đã được chuyển sang archive cùng payment của nó
+            payments = readPaymentsByOrderId("payments_archive", orderId);
+        }
+        return payments;
+    }
+
+    private List<Payment> readPaymentsByOrderId(String table, int orderId) {
         List<Payment> payments = new ArrayList<>();
-        String query = "SELECT * FROM payments WHERE order_id = ? ORDER BY created_at DESC";
-        try (PreparedStatement pstmt = dbConnection.getConnection().prepareStatement(query)) {
+        String query = "SELECT * FROM " + table + " WHERE order_id = ? ORDER BY created_at DESC";
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setInt(1, orderId);
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -136,7 +158,8 @@ public class PaymentDAO {
     public List<Payment> getPaymentsByStatus(Payment.PaymentStatus status) {
         List<Payment> payments = new ArrayList<>();
         String query = "SELECT * FROM payments WHERE status = ? ORDER BY created_at DESC";
-        try (PreparedStatement pstmt = dbConnection.getConnection().prepareStatement(query)) {
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, status.toString());
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -152,7 +175,8 @@ public class PaymentDAO {
     public List<Payment> getAllPayments() {
         List<Payment> payments = new ArrayList<>();
         String query = "SELECT * FROM payments ORDER BY created_at DESC";
-        try (PreparedStatement pstmt = dbConnection.getConnection().prepareStatement(query)) {
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 payments.add(createPaymentFromResultSet(rs));
@@ -163,12 +187,80 @@ public class PaymentDAO {
         return payments;
     }
 
+    // --- Phân trang theo (created_at, payment_id), mới nhất trước; after = null lấy trang đầu ---
+    public Page<Payment> getPaymentsPage(Page.Cursor after, int limit) {
+        String query = "SELECT * FROM payments" +
+                (after == null ? "" : " WHERE created_at <= ? AND (created_at < ? OR payment_id < ?)") +
+                " ORDER BY created_at DESC, payment_id DESC LIMIT ?";
+        List<Payment> payments = new ArrayList<>();
+        Page.Cursor next = null;
+        try (Connection conn = DatabaseConnection.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            int i = 1;
+            if (after != null) {
+                pstmt.setString(i++, after.key);
+                pstmt.setString(i++, after.key);
+                pstmt.setInt(i++, after.id);
+            }
+            pstmt.setInt(i, limit + 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                String lastKey = null;
+                while (rs.next()) {
+                    if (payments.size() == limit) {
+                        next = new Page.Cursor(lastKey, payments.get(payments.size() - 1).getPaymentId());
+                        break;
+                    }
+                    payments.add(createPaymentFromResultSet(rs));
+                    lastKey = rs.getString("created_at");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error getting payments page: " + e.getMessage());
+        }
+        return new Page<>(payments, next);
+    }
+
+    // --- Duyệt toàn bộ payments (status = null) hoặc theo status, không nạp cả danh sách vào bộ nhớ ---
+    // Trả về số payment đã duyệt, hoặc -1 nếu lỗi truy vấn; kết nối được trả về pool cả khi consumer ném lỗi
+    public long forEachPayment(Payment.PaymentStatus status, Consumer<Payment> consumer) {
+        return ResultStreams.forEach(streamQuery(status), stmt -> bindStatus(stmt, status),
+                ResultStreams.rows(this::createPaymentFromResultSet), consumer, "Error streaming payments: ");
+    }
+
+    // Stream đọc dần từ result set; phải đóng stream (try-with-resources) để trả kết nối
+    public Stream<Payment> streamPayments(Payment.PaymentStatus status) {
+        try {
+            return ResultStreams.stream(streamQuery(status), stmt -> bindStatus(stmt, status),
+                    ResultStreams.rows(this::createPaymentFromResultSet));
+        } catch (SQLException e) {
+            System.err.println("Error streaming payments: " + e.getMessage());
+            return Stream.empty();
+        }
+    }
+
+    private static String streamQuery(Payment.PaymentStatus status) {
+        return "SELECT * FROM payments" + (status != null ? " WHERE status = ?" : "")
+                + " ORDER BY created_at DESC, payment_id DESC";
+    }
+
+    private static void bindStatus(PreparedStatement stmt, Payment.PaymentStatus status) throws SQLException {
+        if (status != null) {
+            stmt.setString(1, status.toString());
+        }
+    }
+
     public boolean updatePaymentStatus(int paymentId, Payment.PaymentStatus status) {
         String query = "UPDATE payments SET status = ?, updated_at = CURRENT_TIMESTAMP WHERE payment_id = ?";
-        try (PreparedStatement pstmt = dbConnection.getConnection().prepareStatement(query)) {
-            pstmt.setString(1, status.toString());
-            pstmt.setInt(2, paymentId);
-            return pstmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.executeWrite(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    pstmt.setString(1, status.toString());
+                    pstmt.setInt(2, paymentId);
+                    boolean updated = pstmt.executeUpdate() > 0;
+                    DatabaseConnection.afterCommit(() -> LiveStats.get().invalidatePayments());
+                    return updated;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error updating payment status: " + e.getMessage());
             return false;
@@ -177,9 +269,15 @@ public class PaymentDAO {
 
     public boolean refundPayment(int paymentId) {
         String query = "UPDATE payments SET status = 'REFUNDED', updated_at = CURRENT_TIMESTAMP WHERE payment_id = ? AND status = 'COMPLETED'";
-        try (PreparedStatement pstmt = dbConnection.getConnection().prepareStatement(query)) {
-            pstmt.setInt(1, paymentId);
-            return pstmt.executeUpdate() > 0;
+        try {
+            return DatabaseConnection.executeWrite(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    pstmt.setInt(1, paymentId);
+                    boolean updated = pstmt.executeUpdate() > 0;
+                    DatabaseConnection.afterCommit(() -> LiveStats.get().invalidatePayments());
+                    return updated;
+                }
+            });
         } catch (SQLException e) {
             System.err.println("Error refunding payment: " + e.getMessage());
             return false;
@@ -188,9 +286,12 @@ public class PaymentDAO {
 
     public boolean deletePayment(int paymentId) {
         String query = "DELETE FROM payments WHERE payment_id = ?";
-        try (PreparedStatement pstmt = dbConnection.getConnection().prepareStatement(query)) {
+        try (Connection conn = dbConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setInt(1, paymentId);
-            return pstmt.executeUpdate() > 0;
+            boolean deleted = pstmt.executeUpdate() > 0;
+            LiveStats.get().invalidatePayments();
+            return deleted;
         } catch (SQLException e) {
             System.err.println("Error deleting payment: " + e.getMessage());
             return false;
@@ -0,0 +1,147 @@
+package coffeeshop.dao;
+
+import coffeeshop.db.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * ResultStreams
+ * -------------
+ * Đọc kết quả truy vấn dạng con trỏ cho báo cáo/xuất dữ liệu: result set forward-only, read-only với
+ * fetch size của {@link DatabaseConnection#getStreamFetchSize()}, mỗi phần tử chỉ được tạo khi stream cần,
+ * nên bộ nhớ không phụ thuộc số dòng của bảng.
+ *
+ * Stream giữ statement và kết nối tới khi close(): luôn dùng try-with-resources, hoặc dùng
+ * {@link #forEach} (tự đóng khi consumer chạy xong hoặc ném lỗi). Lỗi SQL khi đang đọc được ném
+ * ra dưới dạng {@link CursorException} (IllegalStateException).
+ */
+final class ResultStreams {
+
+    interface ParameterBinder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    /** Đọc phần tử tiếp theo (tự gọi rs.next(), có thể gộp nhiều dòng), hoặc null khi hết dữ liệu. */
+    interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    /** Ánh xạ một dòng thành một phần tử; trả về null để bỏ qua dòng đó. */
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /** Lỗi SQL khi đang đọc stream (Stream không cho ném checked exception). */
+    static final class CursorException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        CursorException(SQLException cause) {
+            super("Error reading result set: " + cause.getMessage(), cause);
+        }
+    }
+
+    private ResultStreams() {}
+
+    /** RowReader cho trường hợp mỗi dòng là một phần tử. */
+    static <T> RowReader<T> rows(RowMapper<T> mapper) {
+        return rs -> {
+            while (rs.next()) {
+                T item = mapper.map(rs);
+                if (item != null) {
+                    return item;
+                }
+            }
+            return null;
+        };
+    }
+
+    static <T> Stream<T> stream(String sql, ParameterBinder binder, RowReader<T> reader) throws SQLException {
+        Connection conn = DatabaseConnection.getReadConnection();
+        if (conn == null) {
+            throw new SQLException("No database connection available");
+        }
+        PreparedStatement stmt = null;
+        ResultSet rs;
+        try {
+            // Fetch size được StatementCache trả về mặc định khi statement vào lại cache
+            stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(DatabaseConnection.getStreamFetchSize());
+            binder.bind(stmt);
+            rs = stmt.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(stmt, conn);
+            throw e;
+        }
+
+        PreparedStatement openStmt = stmt;
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (done) {
+                    return false;
+                }
+                T next;
+                try {
+                    next = reader.read(rs);
+                } catch (SQLException e) {
+                    done = true;
+                    throw new CursorException(e);
+                }
+                if (next == null) {
+                    done = true;
+                    return false;
+                }
+                action.accept(next);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                rs.close();
+            } catch (SQLException ignore) {}
+            closeQuietly(openStmt, conn);
+        });
+    }
+
+    /**
+     * Đọc lần lượt và gọi consumer cho từng phần tử; statement/kết nối luôn được đóng khi kết thúc.
+     * Trả về số phần tử đã xử lý, hoặc -1 nếu lỗi SQL (lỗi của consumer được ném tiếp).
+     */
+    static <T> long forEach(String sql, ParameterBinder binder, RowReader<T> reader,
+                            Consumer<? super T> consumer, String errorPrefix) {
+        long[] count = { 0 };
+        try (Stream<T> stream = stream(sql, binder, reader)) {
+            stream.forEach(item -> {
+                consumer.accept(item);
+                count[0]++;
+            });
+            return count[0];
+        } catch (SQLException e) {
+            System.err.println(errorPrefix + e.getMessage());
+        } catch (CursorException e) {
+            System.err.println(errorPrefix + e.getCause().getMessage());
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(PreparedStatement stmt, Connection conn) {
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (SQLException ignore) {}
+        }
+        try {
+            conn.close();
+        } catch (SQLException ignore) {}
+    }
+}
@@ -0,0 +1,122 @@
+package coffeeshop.dao;
+
+import coffeeshop.db.DatabaseConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * SalesRollup
+ * -----------
+ * Bảng tổng hợp doanh số sales_daily (ngày, service_type, status) và sales_hourly (thêm giờ):
+ * số order và tổng total_amount của mỗi nhóm. Báo cáo đọc các bảng này thay vì quét orders.
+ *
+ * Bảng được cập nhật trên kết nối của transaction ghi order: {@link #add} sau khi thêm order,
+ * {@link #remove} trước và {@link #add} sau khi đổi trạng thái (số liệu được đọc lại từ orders
+ * trong cùng transaction nên luôn khớp với dữ liệu đã commit). {@link #rebuild} tính lại toàn bộ.
+ * Cùng thay đổi đó (theo trạng thái) được cộng vào {@link LiveStats} sau khi transaction commit.
+ * Ngày/giờ lấy theo giờ địa phương của order_time (SQLite lưu CURRENT_TIMESTAMP theo UTC).
+ */
+final class SalesRollup {
+
+    // Số order_id mỗi câu IN (...), dưới giới hạn 999 tham số của SQLite cũ
+    private static final int IDS_PER_STATEMENT = 500;
+
+    private SalesRollup() {}
+
+    static void add(Connection conn, Collection<Integer> orderIds) throws SQLException {
+        apply(conn, orderIds, 1);
+    }
+
+    static void remove(Connection conn, Collection<Integer> orderIds) throws SQLException {
+        apply(conn, orderIds, -1);
+    }
+
+    /** Xóa và tính lại cả hai bảng từ orders và orders_archive; trả về số order đã tổng hợp. */
+    static int rebuild(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM sales_daily");
+            stmt.executeUpdate("DELETE FROM sales_hourly");
+        }
+        for (String table : new String[] {"orders", "orders_archive"}) {
+            for (String sql : upserts(table, "1 = 1")) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, 1);
+                    stmt.setInt(2, 1);
+                    stmt.executeUpdate();
+                }
+            }
+        }
+        DatabaseConnection.afterCommit(() -> LiveStats.get().reconcile());
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(SUM(order_count), 0) FROM sales_daily")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void apply(Connection conn, Collection<Integer> orderIds, int sign) throws SQLException {
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        for (int start = 0; start < ids.size(); start += IDS_PER_STATEMENT) {
+            List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + IDS_PER_STATEMENT));
+            String where = "order_id IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            for (String sql : upserts("orders", where)) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, sign);
+                    stmt.setInt(2, sign);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setInt(i + 3, chunk.get(i));
+                    }
+                    stmt.executeUpdate();
+                }
+            }
+            publish(conn, where, chunk, sign);
+        }
+    }
+
+    /** Đọc thay đổi theo trạng thái của các order và cộng vào LiveStats khi transaction commit. */
+    private static void publish(Connection conn, String where, List<Integer> chunk, int sign) throws SQLException {
+        String sql = "SELECT status, COUNT(*), COALESCE(SUM(total_amount), 0) FROM orders WHERE " + where + " GROUP BY status";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < chunk.size(); i++) {
+                stmt.setInt(i + 1, chunk.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String status = rs.getString(1);
+                    long count = sign * rs.getLong(2);
+                    double amount = sign * rs.getDouble(3);
+                    DatabaseConnection.afterCommit(() -> LiveStats.get().recordOrders(status, count, amount));
+                }
+            }
+        }
+    }
+
+    /** INSERT ... SELECT ... GROUP BY cộng dồn vào nhóm đã có; tham số 1, 2 là dấu (+1/-1), sau đó là tham số của where. */
+    private static List<String> upserts(String table, String where) {
+        boolean sqlite = "sqlite".equals(DatabaseConnection.getDbType());
+        String day = sqlite ? "date(order_time, 'localtime')" : "DATE(order_time)";
+        String hour = sqlite ? "CAST(strftime('%H', order_time, 'localtime') AS INTEGER)" : "HOUR(order_time)";
+        String measures = "? * COUNT(*), ? * COALESCE(SUM(total_amount), 0) FROM " + table + " WHERE " + where;
+        String merge = sqlite
+                ? " DO UPDATE SET order_count = order_count + excluded.order_count, revenue = revenue + excluded.revenue"
+                : " ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), revenue = revenue + VALUES(revenue)";
+
+        List<String> sql = new ArrayList<>(2);
+        sql.add("INSERT INTO sales_daily (sales_date, service_type, status, order_count, revenue) " +
+                "SELECT " + day + ", service_type, status, " + measures +
+                " GROUP BY " + day + ", service_type, status" +
+                (sqlite ? " ON CONFLICT (sales_date, service_type, status)" : "") + merge);
+        sql.add("INSERT INTO sales_hourly (sales_date, sales_hour, service_type, status, order_count, revenue) " +
+                "SELECT " + day + ", " + hour + ", service_type, status, " + measures +
+                " GROUP BY " + day + ", " + hour + ", service_type, status" +
+                (sqlite ? " ON CONFLICT (sales_date, sales_hour, service_type, status)" : "") + merge);
+        return sql;
+    }
+}
@@ -0,0 +1,475 @@
+package coffeeshop.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ConnectionPool
+ * --------------
+ * Pool kết nối JDBC có giới hạn (min/max) dùng chung cho tất cả DAO.
+ * Connection trả ra là proxy: gọi close() sẽ trả kết nối về pool thay vì đóng socket/file.
+ * Kiểm tra kết nối khi mượn, dọn kết nối rảnh quá lâu và cảnh báo kết nối bị giữ quá lâu (leak).
+ * Mỗi kết nối vật lý có một {@link StatementCache} riêng cho prepareStatement();
+ * statement trả ra được đo bởi {@link JdbcMetrics} (có thể tắt bằng db.metrics.enabled=false).
+ */
+public class ConnectionPool {
+
+    /** Tạo một kết nối vật lý mới. */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long maxWaitMs;
+    private final long idleTimeoutMs;
+    private final long leakDetectionMs;
+    private final int validationTimeoutSec;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> borrowed = new HashSet<>();
+    private int totalConnections;
+    private boolean shutdown;
+
+    private final ScheduledExecutorService housekeeper;
+
+    // Metrics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+
+    public ConnectionPool(ConnectionFactory factory, int minSize, int maxSize, long maxWaitMs,
+                          long idleTimeoutMs, long leakDetectionMs, int validationTimeoutSec,
+                          int statementCacheSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.minSize = Math.max(0, Math.min(minSize, maxSize));
+        this.maxWaitMs = maxWaitMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.leakDetectionMs = leakDetectionMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.statementCacheSize = statementCacheSize;
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000L, Math.min(idleTimeoutMs, leakDetectionMs > 0 ? leakDetectionMs : idleTimeoutMs) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+
+        fillToMinimum();
+    }
+
+    // ==========================
+    // Mượn / trả kết nối
+    // ==========================
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        while (true) {
+            PooledConnection pc = null;
+            boolean create = false;
+            lock.lock();
+            try {
+                while (true) {
+                    if (shutdown) {
+                        throw new SQLException("Connection pool is shut down");
+                    }
+                    pc = idle.pollFirst();
+                    if (pc != null) break;
+                    if (totalConnections < maxSize) {
+                        totalConnections++;
+                        create = true;
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        borrowTimeouts.incrementAndGet();
+                        throw new SQLException("Timed out after " + maxWaitMs + "ms waiting for a connection ("
+                                + borrowed.size() + "/" + maxSize + " in use)");
+                    }
+                    try {
+                        available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection", e);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                try {
+                    pc = new PooledConnection(factory.create());
+                    createdCount.incrementAndGet();
+                } catch (SQLException | RuntimeException e) {
+                    lock.lock();
+                    try {
+                        totalConnections--;
+                        available.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
+            } else if (!isValid(pc)) {
+                validationFailures.incrementAndGet();
+                destroy(pc);
+                continue;
+            }
+
+            long waited = System.nanoTime() - start;
+            borrowCount.incrementAndGet();
+            borrowWaitNanos.addAndGet(waited);
+            maxBorrowWaitNanos.accumulateAndGet(waited, Math::max);
+
+            lock.lock();
+            try {
+                borrowed.add(pc);
+            } finally {
+                lock.unlock();
+            }
+            return pc.lease();
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        boolean healthy = resetState(pc);
+        lock.lock();
+        try {
+            borrowed.remove(pc);
+            if (healthy && !shutdown) {
+                pc.lastUsed = System.currentTimeMillis();
+                idle.offerFirst(pc);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        destroy(pc);
+    }
+
+    private boolean resetState(PooledConnection pc) {
+        try {
+            Connection raw = pc.raw;
+            if (raw.isClosed()) return false;
+            if (!raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+            if (raw.isReadOnly() != pc.initialReadOnly) {
+                raw.setReadOnly(pc.initialReadOnly);
+            }
+            raw.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Discarding pooled connection: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isValid(PooledConnection pc) {
+        try {
+            return !pc.raw.isClosed() && pc.raw.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        lock.lock();
+        try {
+            totalConnections--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (pc.statementCache != null) {
+            pc.statementCache.closeAll();
+        }
+        try {
+            pc.raw.close();
+        } catch (SQLException ignore) {}
+        destroyedCount.incrementAndGet();
+    }
+
+    // ==========================
+    // Dọn dẹp định kỳ
+    // ==========================
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> toClose = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && totalConnections - toClose.size() > minSize) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastUsed > idleTimeoutMs) {
+                    it.remove();
+                    toClose.add(pc);
+                }
+            }
+            if (leakDetectionMs > 0) {
+                for (PooledConnection pc : borrowed) {
+                    if (!pc.leakReported && now - pc.borrowedAt > leakDetectionMs) {
+                        pc.leakReported = true;
+                        leakCount.incrementAndGet();
+                        System.err.println("Possible connection leak: connection held for "
+                                + (now - pc.borrowedAt) + "ms by thread " + pc.borrowerThread);
+                        if (pc.borrowSite != null) {
+                            pc.borrowSite.printStackTrace();
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : toClose) {
+            destroy(pc);
+        }
+        fillToMinimum();
+    }
+
+    private void fillToMinimum() {
+        while (true) {
+            lock.lock();
+            try {
+                if (shutdown || totalConnections >= minSize) return;
+                totalConnections++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                PooledConnection pc = new PooledConnection(factory.create());
+                createdCount.incrementAndGet();
+                lock.lock();
+                try {
+                    idle.offerLast(pc);
+                    available.signal();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (SQLException e) {
+                lock.lock();
+                try {
+                    totalConnections--;
+                } finally {
+                    lock.unlock();
+                }
+                System.err.println("Could not pre-fill connection pool: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    public void shutdown() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            shutdown = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        for (PooledConnection pc : toClose) {
+            destroy(pc);
+        }
+    }
+
+    // ==========================
+    // Thống kê
+    // ==========================
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            return new PoolStats(totalConnections, idle.size(), borrowed.size(), maxSize,
+                    borrowCount.get(), borrowWaitNanos.get(), maxBorrowWaitNanos.get(), borrowTimeouts.get(),
+                    createdCount.get(), destroyedCount.get(), validationFailures.get(), leakCount.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static class PoolStats {
+        private final int total;
+        private final int idle;
+        private final int active;
+        private final int maxSize;
+        private final long borrowCount;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+        private final long timeouts;
+        private final long created;
+        private final long destroyed;
+        private final long validationFailures;
+        private final long leaks;
+
+        public PoolStats(int total, int idle, int active, int maxSize, long borrowCount, long totalWaitNanos,
+                         long maxWaitNanos, long timeouts, long created, long destroyed,
+                         long validationFailures, long leaks) {
+            this.total = total;
+            this.idle = idle;
+            this.active = active;
+            this.maxSize = maxSize;
+            this.borrowCount = borrowCount;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.validationFailures = validationFailures;
+            this.leaks = leaks;
+        }
+
+        public int getTotal() { return total; }
+        public int getIdle() { return idle; }
+        public int getActive() { return active; }
+        public int getMaxSize() { return maxSize; }
+        public long getBorrowCount() { return borrowCount; }
+        public long getTimeouts() { return timeouts; }
+        public long getCreated() { return created; }
+        public long getDestroyed() { return destroyed; }
+        public long getValidationFailures() { return validationFailures; }
+        public long getLeaks() { return leaks; }
+
+        public double getAvgWaitMillis() {
+            return borrowCount == 0 ? 0.0 : totalWaitNanos / 1_000_000.0 / borrowCount;
+        }
+
+        public double getMaxWaitMillis() {
+            return maxWaitNanos / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Pool %d/%d (idle %d, active %d) | borrows: %d | wait avg %.2fms max %.2fms | "
+                            + "timeouts: %d | created: %d | destroyed: %d | invalid: %d | leaks: %d",
+                    total, maxSize, idle, active, borrowCount, getAvgWaitMillis(), getMaxWaitMillis(),
+                    timeouts, created, destroyed, validationFailures, leaks);
+        }
+    }
+
+    // ==========================
+    // Kết nối trong pool
+    // ==========================
+    private class PooledConnection {
+        private final Connection raw;
+        private final boolean initialReadOnly;
+        private final StatementCache statementCache;
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile String borrowerThread;
+        private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+
+        PooledConnection(Connection raw) throws SQLException {
+            this.raw = raw;
+            this.initialReadOnly = raw.isReadOnly();
+            this.statementCache = statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null;
+        }
+
+        Connection lease() {
+            borrowedAt = System.currentTimeMillis();
+            borrowerThread = Thread.currentThread().getName();
+            borrowSite = leakDetectionMs > 0 ? new Throwable("Connection borrowed here") : null;
+            leakReported = false;
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new LeaseHandler(this));
+        }
+    }
+
+    /** Một lần mượn kết nối; sau khi close() thì proxy không dùng được nữa. */
+    private class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean closed;
+
+        LeaseHandler(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pc.raw.isClosed();
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(pc.raw)) return pc.raw;
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(pc.raw)) return true;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.raw + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+            Object result;
+            if (pc.statementCache != null && "prepareStatement".equals(method.getName())) {
+                result = pc.statementCache.prepare(pc.raw, (Connection) proxy, method, args);
+            } else {
+                try {
+                    result = method.invoke(pc.raw, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            if (result instanceof Statement && JdbcMetrics.isEnabled()) {
+                String sql = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : null;
+                return JdbcMetrics.instrument((Statement) result, sql, (Connection) proxy);
+            }
+            return result;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package coffeeshop.db;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -11,8 +10,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.function.Supplier;
 
 /**
  * DatabaseConnection
@@ -25,14 +26,24 @@ public class DatabaseConnection {
     private static final String MYSQL_USER = "root";
     private static final String MYSQL_PASSWORD = "123456";
 
-    private static Connection connection;
     private static DatabaseConnection instance;
+    private static ConnectionPool pool;
+    private static ConnectionPool readPool;
+    private static ConnectionPool writePool;
+    private static ConnectionPool idPool;
+    private static SqliteWriter writer;
+    private static SqlitePragmas sqlitePragmas;
     private static String dbType;
     private static String url;
     private static String user;
     private static String password;
+    private static Properties config = new Properties();
+    // Tác vụ afterCommit của executeWrite đang chạy trên luồng hiện tại
+    private static final ThreadLocal<List<Runnable>> WRITE_HOOKS = new ThreadLocal<>();
+    // Luồng hiện tại đang trong inBulkLoad: executeWrite hạ synchronous trên kết nối mượn từ pool
+    private static final ThreadLocal<Boolean> BULK_LOAD = new ThreadLocal<>();
 
-    private static void loadConfig() {
+    private static synchronized void loadConfig() {
         if (dbType != null) return;
         dbType = "mysql";
         url = MYSQL_URL;
@@ -45,6 +56,13 @@ public class DatabaseConnection {
                 props.load(in);
             } catch (IOException ignore) {}
         }
+        // -Ddb.xxx=... ghi đè file cấu hình (vd. chạy benchmark với db.type=mysql)
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("db.")) {
+                props.setProperty(name, System.getProperty(name));
+            }
+        }
+        config = props;
         String typeProp = props.getProperty("db.type");
         if (typeProp != null) {
             dbType = typeProp.trim().toLowerCase();
@@ -64,6 +82,8 @@ public class DatabaseConnection {
             }
             user = null;
             password = null;
+            boolean wal = "wal".equalsIgnoreCase(props.getProperty("db.sqlite.profile", "").trim());
+            sqlitePragmas = new SqlitePragmas(props, wal);
         } else {
             String host = props.getProperty("db.host");
             String name = props.getProperty("db.name");
@@ -76,6 +96,12 @@ public class DatabaseConnection {
                 String sep = base.contains("?") ? "&" : "?";
                 if (params != null && !params.isBlank()) base = base + sep + params;
             }
+            if (base.contains("jdbc:mysql") && intProp("db.stmtCache.size", 64) > 0
+                    && !base.contains("useServerPrepStmts")) {
+                // Prepare phía server để statement được cache không phải parse lại mỗi lần
+                String sep = base.contains("?") ? "&" : "?";
+                base = base + sep + "useServerPrepStmts=true";
+            }
             url = base;
             user = u != null ? u : MYSQL_USER;
             password = p != null ? p : MYSQL_PASSWORD;
@@ -85,27 +111,432 @@ public class DatabaseConnection {
     // ==========================
     // Kết nối tới database
     // ==========================
+    /**
+     * Mượn một kết nối từ pool. Gọi close() trên kết nối này sẽ trả nó về pool.
+     * Bên trong {@link TransactionTemplate#inTransaction} trả về kết nối của transaction đang mở.
+     */
     public static Connection getConnection() {
+        Transaction tx = TransactionTemplate.current();
+        if (tx != null) {
+            return tx.getConnection();
+        }
+        try {
+            return getPool().borrow();
+        } catch (SQLException e) {
+            System.err.println("Wrong connect: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Kết nối cho việc phải commit độc lập với transaction đang mở (IdAllocator lấy khối id).
+     * Lấy từ pool một kết nối riêng, không từ pool chính: người gọi thường đang giữ một kết nối của pool chính,
+     * nên khi pool chính đã hết chỗ vẫn lấy được khối id thay vì chờ chính mình.
+     */
+    static Connection borrowIndependent() throws SQLException {
+        return getIdPool().borrow();
+    }
+
+    private static synchronized ConnectionPool getIdPool() {
+        getPool();
+        if (idPool == null) {
+            idPool = newPool(false, 0, 1);
+        }
+        return idPool;
+    }
+
+    private static synchronized ConnectionPool getPool() {
+        loadConfig();
+        if (pool == null) {
+            JdbcMetrics.configure(
+                boolProp("db.metrics.enabled", true),
+                longProp("db.metrics.dumpIntervalSec", 300L),
+                boolProp("db.metrics.jmx", true)
+            );
+            RetryPolicy.configure(new RetryPolicy(
+                intProp("db.retry.maxAttempts", 5),
+                longProp("db.retry.baseDelayMs", 10L),
+                longProp("db.retry.maxDelayMs", 500L),
+                doubleProp("db.retry.budgetRatio", 0.2),
+                doubleProp("db.retry.budgetMax", 20)
+            ));
+            SlowQueryLog.configure(
+                longProp("db.slowQuery.thresholdMs", 200L),
+                config.getProperty("db.slowQuery.file", "logs/slow-query.log").trim(),
+                longProp("db.slowQuery.maxBytes", 1048576L),
+                intProp("db.slowQuery.maxFiles", 3),
+                boolProp("db.slowQuery.explain", true),
+                "sqlite".equals(dbType)
+            );
+            pool = newPool(false, intProp("db.pool.minSize", 1), intProp("db.pool.maxSize", 8));
+            if ("sqlite".equals(dbType)) {
+                reportSqliteSettings(pool);
+            }
+        }
+        return pool;
+    }
+
+    // In cấu hình SQLite thực tế một lần khi khởi động
+    private static void reportSqliteSettings(ConnectionPool target) {
+        try (Connection conn = target.borrow()) {
+            SqlitePragmas.report(conn, "read-write");
+        } catch (SQLException e) {
+            System.err.println("Could not read SQLite settings: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Nạp dữ liệu hàng loạt (dữ liệu mẫu, import): tạm hạ PRAGMA synchronous theo db.sqlite.bulk.synchronous.
+     * Trả về giá trị cũ để truyền cho {@link #endBulkLoad}. Không làm gì với MySQL.
+     */
+    public static String beginBulkLoad(Connection conn) {
+        if (!"sqlite".equals(dbType) || sqlitePragmas == null) return null;
+        try {
+            return sqlitePragmas.relaxDurability(conn);
+        } catch (SQLException e) {
+            System.err.println("Could not relax durability: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static void endBulkLoad(Connection conn, String previous) {
+        if (sqlitePragmas == null || previous == null) return;
+        try {
+            sqlitePragmas.restoreDurability(conn, previous);
+        } catch (SQLException e) {
+            System.err.println("Could not restore durability: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Chạy work (nhiều lần {@link #executeWrite}, vd. import hàng loạt) với synchronous đã hạ trên kết nối ghi.
+     * Profile WAL: hạ trên kết nối của luồng ghi cho tới khi work xong (các lần ghi khác trong lúc đó cũng
+     * dùng mức này); ngược lại mỗi executeWrite của luồng hiện tại hạ trên kết nối mượn rồi trả lại sau commit.
+     * Trong transaction của TransactionTemplate thì chỉ chạy work. Không làm gì với MySQL.
+     */
+    public static <T> T inBulkLoad(Supplier<T> work) {
+        loadConfig();
+        if (!"sqlite".equals(dbType) || TransactionTemplate.current() != null || BULK_LOAD.get() != null) {
+            return work.get();
+        }
+        SqliteWriter w = getWriter();
+        if (w == null) {
+            BULK_LOAD.set(Boolean.TRUE);
+            try {
+                return work.get();
+            } finally {
+                BULK_LOAD.remove();
+            }
+        }
+        String previous = null;
+        try {
+            previous = w.execute(DatabaseConnection::beginBulkLoad);
+        } catch (SQLException e) {
+            System.err.println("Could not relax durability: " + e.getMessage());
+        }
+        try {
+            return work.get();
+        } finally {
+            String restore = previous;
+            if (restore != null) {
+                try {
+                    w.execute(conn -> {
+                        endBulkLoad(conn, restore);
+                        return null;
+                    });
+                } catch (SQLException e) {
+                    System.err.println("Could not restore durability: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static ConnectionPool newPool(boolean readOnly, int minSize, int maxSize) {
+        return new ConnectionPool(
+            () -> openPhysicalConnection(readOnly),
+            minSize,
+            maxSize,
+            longProp("db.pool.maxWaitMs", 5000L),
+            longProp("db.pool.idleTimeoutMs", 300000L),
+            longProp("db.pool.leakDetectionMs", 60000L),
+            intProp("db.pool.validationTimeoutSec", 2),
+            intProp("db.stmtCache.size", 64)
+        );
+    }
+
+    private static Connection openPhysicalConnection(boolean readOnly) throws SQLException {
         try {
-            loadConfig();
-            if (connection == null || connection.isClosed()) {
-                if ("sqlite".equals(dbType)) {
-                    Class.forName("org.sqlite.JDBC");
-                    connection = DriverManager.getConnection(url);
-                    try (Statement s = connection.createStatement()) {
-                        s.execute("PRAGMA foreign_keys = ON;");
+            if ("sqlite".equals(dbType)) {
+                Class.forName("org.sqlite.JDBC");
+                Connection conn = DriverManager.getConnection(url);
+                try (Statement s = conn.createStatement()) {
+                    s.execute("PRAGMA foreign_keys = ON;");
+                }
+                sqlitePragmas.apply(conn, readOnly);
+                if (readOnly) {
+                    try (Statement s = conn.createStatement()) {
+                        s.execute("PRAGMA query_only = ON;");
                     }
-                    System.out.println("Connected to SQLite successfully!");
-                } else {
-                    Class.forName("com.mysql.cj.jdbc.Driver");
-                    connection = DriverManager.getConnection(url, user, password);
-                    System.out.println("Connected to MySQL successfully!");
                 }
+                System.out.println("Connected to SQLite successfully!" + (readOnly ? " (read-only)" : ""));
+                return conn;
             }
-        } catch (SQLException | ClassNotFoundException e) {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+            Connection conn = DriverManager.getConnection(url, user, password);
+            System.out.println("Connected to MySQL successfully!");
+            return conn;
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("JDBC driver not found: " + e.getMessage(), e);
+        }
+    }
+
+    // ==========================
+    // SQLite WAL: luồng ghi riêng + kết nối chỉ đọc
+    // ==========================
+    /** "sqlite" hoặc "mysql" theo db.type. */
+    public static String getDbType() {
+        loadConfig();
+        return dbType;
+    }
+
+    /** db.sqlite.profile=wal: ghi qua một luồng duy nhất (group commit), đọc trên kết nối chỉ đọc riêng. */
+    public static boolean isWalProfile() {
+        loadConfig();
+        return "sqlite".equals(dbType) && "wal".equalsIgnoreCase(config.getProperty("db.sqlite.profile", "").trim());
+    }
+
+    /**
+     * Kết nối cho truy vấn chỉ đọc (dashboard, báo cáo). Với profile WAL đây là pool chỉ đọc riêng,
+     * nên không bao giờ phải chờ luồng ghi; ngược lại dùng chung pool chính.
+     */
+    public static Connection getReadConnection() {
+        if (!isWalProfile() || TransactionTemplate.current() != null) {
+            return getConnection();
+        }
+        try {
+            return getReadPool().borrow();
+        } catch (SQLException e) {
             System.err.println("Wrong connect: " + e.getMessage());
+            return null;
         }
-        return connection;
+    }
+
+    private static synchronized ConnectionPool getReadPool() {
+        if (readPool == null) {
+            readPool = newPool(true, 1, intProp("db.sqlite.readPool.maxSize", 4));
+            try (Connection conn = readPool.borrow()) {
+                SqlitePragmas.report(conn, "read-only");
+            } catch (SQLException e) {
+                System.err.println("Could not read SQLite settings: " + e.getMessage());
+            }
+        }
+        return readPool;
+    }
+
+    /** Luồng ghi của profile WAL, hoặc null nếu không dùng profile WAL. */
+    public static synchronized SqliteWriter getWriter() {
+        if (!isWalProfile()) return null;
+        if (writer == null) {
+            writePool = newPool(false, 1, 1);
+            writer = new SqliteWriter(
+                writePool,
+                intProp("db.sqlite.writer.maxBatch", 64),
+                longProp("db.sqlite.writer.maxDelayMs", 5L)
+            );
+        }
+        return writer;
+    }
+
+    /**
+     * Chạy một đơn vị ghi trong một transaction.
+     * Với profile WAL tác vụ được gửi cho luồng ghi và commit theo nhóm; ngược lại chạy trên kết nối
+     * mượn từ pool và commit ngay. Tác vụ không tự commit/rollback.
+     * Lỗi tạm thời (SQLITE_BUSY, deadlock) được thử lại theo {@link RetryPolicy}, nên tác vụ phải chạy lại được.
+     */
+    public static <T> T executeWrite(SqliteWriter.WriteTask<T> task) throws SQLException {
+        Transaction tx = TransactionTemplate.current();
+        if (tx != null) {
+            // Đã trong transaction: ghi trên kết nối chung, commit cùng transaction
+            return task.execute(tx.getConnection());
+        }
+        return RetryPolicy.get().execute(() -> {
+            // Mỗi lần thử có danh sách afterCommit riêng; chỉ lần đã commit mới chạy
+            List<Runnable> hooks = new ArrayList<>();
+            SqliteWriter.WriteTask<T> tracked = conn -> runCollectingHooks(conn, task, hooks);
+            T result;
+            SqliteWriter w = getWriter();
+            if (w != null) {
+                result = w.execute(tracked);
+            } else {
+                Connection conn = getConnection();
+                if (conn == null) {
+                    throw new SQLException("No database connection available");
+                }
+                try (conn) {
+                    String previousSync = BULK_LOAD.get() != null ? beginBulkLoad(conn) : null;
+                    try {
+                        conn.setAutoCommit(false);
+                        try {
+                            result = tracked.execute(conn);
+                            conn.commit();
+                        } catch (SQLException | RuntimeException e) {
+                            conn.rollback();
+                            throw e;
+                        }
+                    } finally {
+                        // Trả kết nối về pool với mức synchronous cũ
+                        endBulkLoad(conn, previousSync);
+                    }
+                }
+            }
+            runHooks(hooks);
+            return result;
+        });
+    }
+
+    /**
+     * Chạy action sau khi dữ liệu đang ghi đã commit: trong {@link #executeWrite} hoặc
+     * {@link TransactionTemplate#inTransaction} thì chờ tới commit (bỏ đi nếu rollback), ngoài ra chạy ngay.
+     */
+    public static void afterCommit(Runnable action) {
+        Transaction tx = TransactionTemplate.current();
+        if (tx != null) {
+            tx.afterCommit(action);
+            return;
+        }
+        List<Runnable> hooks = WRITE_HOOKS.get();
+        if (hooks != null) {
+            hooks.add(action);
+        } else {
+            runHooks(Collections.singletonList(action));
+        }
+    }
+
+    private static <T> T runCollectingHooks(Connection conn, SqliteWriter.WriteTask<T> task,
+                                            List<Runnable> hooks) throws SQLException {
+        if (WRITE_HOOKS.get() != null) {
+            // executeWrite lồng trong executeWrite khác (vd. chạy thẳng trên luồng ghi WAL):
+            // tác vụ afterCommit đi theo đơn vị ghi ngoài
+            return task.execute(conn);
+        }
+        WRITE_HOOKS.set(hooks);
+        try {
+            return task.execute(conn);
+        } finally {
+            WRITE_HOOKS.remove();
+        }
+    }
+
+    static void runHooks(List<Runnable> hooks) {
+        for (Runnable hook : hooks) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                System.err.println("After-commit action failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fetch size cho truy vấn dạng stream của DAO (db.stream.fetchSize).
+     * MySQL Connector/J chỉ đọc từng phần khi fetch size = Integer.MIN_VALUE hoặc khi bật useCursorFetch=true;
+     * nếu không, driver tải toàn bộ kết quả vào bộ nhớ, nên khi chưa bật cursor fetch thì dùng chế độ từng dòng.
+     */
+    public static int getStreamFetchSize() {
+        loadConfig();
+        int size = Math.max(1, intProp("db.stream.fetchSize", 500));
+        if (!"sqlite".equals(dbType) && !url.contains("useCursorFetch=true")) {
+            return Integer.MIN_VALUE;
+        }
+        return size;
+    }
+
+    /** Số order mỗi transaction khi nhập hàng loạt (db.bulk.commitEvery). */
+    public static int getBulkCommitSize() {
+        loadConfig();
+        return Math.max(1, intProp("db.bulk.commitEvery", 500));
+    }
+
+    // Cấu hình cho thành phần ngoài package db (vd. hàng đợi ghi order của OrderDAO)
+    public static String getSetting(String key, String def) {
+        loadConfig();
+        String v = config.getProperty(key);
+        return v == null || v.isBlank() ? def : v.trim();
+    }
+
+    public static int getIntSetting(String key, int def) {
+        loadConfig();
+        return intProp(key, def);
+    }
+
+    public static long getLongSetting(String key, long def) {
+        loadConfig();
+        return longProp(key, def);
+    }
+
+    public static boolean getBoolSetting(String key, boolean def) {
+        loadConfig();
+        return boolProp(key, def);
+    }
+
+    static int intProp(String key, int def) {
+        String v = config.getProperty(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + v);
+            return def;
+        }
+    }
+
+    static long longProp(String key, long def) {
+        String v = config.getProperty(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + v);
+            return def;
+        }
+    }
+
+    static double doubleProp(String key, double def) {
+        String v = config.getProperty(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ": " + v);
+            return def;
+        }
+    }
+
+    static boolean boolProp(String key, boolean def) {
+        String v = config.getProperty(key);
+        if (v == null || v.isBlank()) return def;
+        return Boolean.parseBoolean(v.trim());
+    }
+
+    public static ConnectionPool.PoolStats getPoolStats() {
+        return getPool().getStats();
+    }
+
+    public static String getStatementCacheStats() {
+        return StatementCache.describe();
+    }
+
+    public static String getTransactionStats() {
+        return TransactionTemplate.describe();
+    }
+
+    public static String getRetryStats() {
+        return RetryPolicy.describe();
+    }
+
+    /** Tóm tắt số liệu JDBC: các câu SQL và phương thức DAO tốn thời gian nhất. */
+    public static String getJdbcMetricsSummary(int limit) {
+        return JdbcMetrics.summary(limit);
     }
 
 
@@ -120,13 +551,15 @@ public class DatabaseConnection {
     // Kiểm tra kết nối
     // ==========================
     public static boolean testConnection() {
-        try {
-            getConnection();
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT 1");
+        Connection conn = getConnection();
+        if (conn == null) {
+            System.err.println("Wrong connection: no database connection available");
+            return false;
+        }
+        try (conn;
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1")) {
             boolean ok = rs.next();
-            rs.close();
-            stmt.close();
             System.out.println("Connect fine!");
             return ok;
         } catch (SQLException e) {
@@ -138,269 +571,51 @@ public class DatabaseConnection {
     // ==========================
     // Tạo bảng
     // ==========================
+    private static volatile boolean schemaCurrent;
+    private static volatile boolean sampleDataCurrent;
 
-    
+    /**
+     * Đưa schema lên phiên bản mới nhất qua {@link SchemaMigrator}. Khi schema đã mới nhất
+     * chỉ tốn một truy vấn schema_version; trong cùng tiến trình các lần gọi sau không làm gì.
+     */
+    public static synchronized boolean ensureSchema() {
+        if (schemaCurrent) return true;
+        schemaCurrent = runMigrations(false, "Error creating tables: ");
+        return schemaCurrent;
+    }
 
-    public static void createTables() {
-        try {
-            Connection conn = getConnection();
-            if (conn == null || conn.isClosed()) {
-                conn = getConnection();
-            }
-            if ("sqlite".equals(dbType)) {
-                Path schema = Paths.get("Library", "database_schema.sql");
-                if (Files.exists(schema)) {
-                    List<String> statements = new ArrayList<>();
-                    try (BufferedReader br = Files.newBufferedReader(schema)) {
-                        StringBuilder sb = new StringBuilder();
-                        String line;
-                        while ((line = br.readLine()) != null) {
-                            String t = line.trim();
-                            if (t.startsWith("--")) continue;
-                            sb.append(line).append('\n');
-                            if (t.endsWith(";")) {
-                                statements.add(sb.toString());
-                                sb.setLength(0);
-                            }
-                        }
-                        if (sb.length() > 0) statements.add(sb.toString());
-                    } catch (IOException ignore) {}
-                    try (Statement s = conn.createStatement()) {
-                        for (String sql : statements) {
-                            String sqlTrim = sql.trim();
-                            String upper = sqlTrim.toUpperCase();
-                            if (upper.startsWith("CREATE DATABASE") || upper.startsWith("USE ")) continue;
-                            if (!sqlTrim.isEmpty()) s.execute(sqlTrim);
-                        }
-                    }
-                }
-                System.out.println("SQLite schema ensured.");
-            } else {
-                Statement stmt = conn.createStatement();
-                stmt.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS menu_items (" +
-                    "  id INT AUTO_INCREMENT PRIMARY KEY," +
-                    "  name VARCHAR(255) NOT NULL," +
-                    "  description TEXT," +
-                    "  base_price DECIMAL(10,3) NOT NULL," +
-                    "  category VARCHAR(100) NOT NULL," +
-                    "  item_type VARCHAR(50) NOT NULL," +
-                    "  coffee_type VARCHAR(50)," +
-                    "  is_available TINYINT(1) DEFAULT 1," +
-                    "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
-                    ") ENGINE=InnoDB;"
-                );
-                stmt.executeUpdate(
-                    "DELETE mi1 FROM menu_items mi1 " +
-                    "JOIN menu_items mi2 ON mi1.name = mi2.name AND mi1.id > mi2.id"
-                );
-                try {
-                    stmt.executeUpdate(
-                        "ALTER TABLE menu_items ADD CONSTRAINT uk_menu_items_name UNIQUE (name)"
-                    );
-                } catch (SQLException ignore) {}
-                stmt.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS customers (" +
-                    "  customer_id INT AUTO_INCREMENT PRIMARY KEY," +
-                    "  name VARCHAR(100) NOT NULL," +
-                    "  email VARCHAR(150) UNIQUE," +
-                    "  phone_number VARCHAR(20)," +
-                    "  loyalty_points DECIMAL(10,2) DEFAULT 0.00," +
-                    "  registration_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
-                    ") ENGINE=InnoDB;"
-                );
-                stmt.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS orders (" +
-                    "  order_id INT AUTO_INCREMENT PRIMARY KEY," +
-                    "  customer_id INT NOT NULL," +
-                    "  status VARCHAR(20) DEFAULT 'PENDING'," +
-                    "  service_type VARCHAR(20) NOT NULL," +
-                    "  subtotal DECIMAL(10,3) NOT NULL," +
-                    "  tax DECIMAL(10,3) NOT NULL," +
-                    "  discount DECIMAL(10,3) DEFAULT 0.00," +
-                    "  total_amount DECIMAL(10,3) NOT NULL," +
-                    "  special_instructions TEXT," +
-                    "  order_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "  completion_time TIMESTAMP NULL," +
-                    "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
-                    "  CONSTRAINT fk_orders_customer FOREIGN KEY (customer_id) REFERENCES customers(customer_id)" +
-                    ") ENGINE=InnoDB;"
-                );
-                stmt.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS order_items (" +
-                    "  order_item_id INT AUTO_INCREMENT PRIMARY KEY," +
-                    "  order_id INT NOT NULL," +
-                    "  menu_item_id INT NOT NULL," +
-                    "  quantity INT NOT NULL," +
-                    "  unit_price DECIMAL(10,3) NOT NULL," +
-                    "  total_price DECIMAL(10,3) NOT NULL," +
-                    "  customizations TEXT," +
-                    "  size VARCHAR(20)," +
-                    "  is_hot TINYINT(1)," +
-                    "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "  CONSTRAINT fk_orderitems_order FOREIGN KEY (order_id) REFERENCES orders(order_id) ON DELETE CASCADE," +
-                    "  CONSTRAINT fk_orderitems_menu FOREIGN KEY (menu_item_id) REFERENCES menu_items(id)" +
-                    ") ENGINE=InnoDB;"
-                );
-                stmt.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS payments (" +
-                    "  payment_id INT AUTO_INCREMENT PRIMARY KEY," +
-                    "  order_id INT NOT NULL," +
-                    "  payment_method VARCHAR(20) NOT NULL," +
-                    "  status VARCHAR(20) DEFAULT 'PENDING'," +
-                    "  amount DECIMAL(10,3) NOT NULL," +
-                    "  amount_paid DECIMAL(10,3) DEFAULT 0.00," +
-                    "  change_given DECIMAL(10,3) DEFAULT 0.00," +
-                    "  transaction_reference VARCHAR(100)," +
-                    "  card_last_four_digits VARCHAR(4)," +
-                    "  failure_reason TEXT," +
-                    "  payment_time TIMESTAMP NULL," +
-                    "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
-                    "  CONSTRAINT fk_payments_order FOREIGN KEY (order_id) REFERENCES orders(order_id)" +
-                    ") ENGINE=InnoDB;"
-                );
-                stmt.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS ingredients (" +
-                    "  ingredient_id INT AUTO_INCREMENT PRIMARY KEY," +
-                    "  name VARCHAR(100) NOT NULL," +
-                    "  description TEXT," +
-                    "  unit VARCHAR(20) NOT NULL," +
-                    "  current_stock DECIMAL(10,3) DEFAULT 0.000," +
-                    "  minimum_stock DECIMAL(10,3) NOT NULL," +
-                    "  maximum_stock DECIMAL(10,3) NOT NULL," +
-                    "  cost_per_unit DECIMAL(10,3) NOT NULL," +
-                    "  expiration_date DATE," +
-                    "  supplier VARCHAR(100)," +
-                    "  is_active TINYINT(1) DEFAULT 1," +
-                    "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
-                    ") ENGINE=InnoDB;"
-                );
-                stmt.executeUpdate(
-                    "CREATE TABLE IF NOT EXISTS menu_item_ingredients (" +
-                    "  menu_item_id INT NOT NULL," +
-                    "  ingredient_id INT NOT NULL," +
-                    "  quantity_required DECIMAL(10,3) NOT NULL," +
-                    "  PRIMARY KEY (menu_item_id, ingredient_id)," +
-                    "  CONSTRAINT fk_mii_menu FOREIGN KEY (menu_item_id) REFERENCES menu_items(id) ON DELETE CASCADE," +
-                    "  CONSTRAINT fk_mii_ing FOREIGN KEY (ingredient_id) REFERENCES ingredients(ingredient_id) ON DELETE CASCADE" +
-                    ") ENGINE=InnoDB;"
-                );
-                stmt.execute("SET FOREIGN_KEY_CHECKS = 1;");
-                stmt.close();
-                System.out.println("Tables created or verified successfully.");
+    /** Áp dụng các migration dữ liệu mẫu (sau schema). */
+    public static synchronized boolean ensureSampleData() {
+        if (sampleDataCurrent) return true;
+        if (!ensureSchema()) return false;
+        sampleDataCurrent = runMigrations(true, "Wrong when inserting sample data: ");
+        return sampleDataCurrent;
+    }
+
+    private static boolean runMigrations(boolean seedData, String errorPrefix) {
+        loadConfig();
+        try (Connection conn = getConnection()) {
+            if (conn == null) return false;
+            String previousSync = beginBulkLoad(conn);
+            try {
+                new SchemaMigrator("sqlite".equals(dbType)).migrate(conn, seedData);
+            } finally {
+                endBulkLoad(conn, previousSync);
             }
+            return true;
         } catch (SQLException e) {
-            System.err.println("Error creating tables: " + e.getMessage());
+            System.err.println(errorPrefix + e.getMessage());
+            return false;
         }
     }
 
-    public static void insertSampleData() {
-    try {
-        if (connection == null || connection.isClosed()) {
-            connection = getConnection();
-        }
-        Statement stmt = connection.createStatement();
-
-        // Sample menu items - Coffee (upsert by unique name)
-        stmt.executeUpdate(
-            "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
-            "('Espresso','Espresso đậm vị',25000.000,'Coffee','Coffee','ESPRESSO',1)," +
-            "('Americano','Espresso pha nước nóng',30000.000,'Coffee','Coffee','AMERICANO',1)," +
-            "('Latte','Espresso với sữa',45000.000,'Coffee','Coffee','LATTE',1)," +
-            "('Cappuccino','Espresso với sữa và foam',40000.000,'Coffee','Coffee','CAPPUCCINO',1)," +
-            "('Macchiato','Espresso với một lớp sữa',42500.000,'Coffee','Coffee','MACCHIATO',1)," +
-            "('Mocha','Espresso với sô-cô-la và sữa',50000.000,'Coffee','Coffee','MOCHA',1)," +
-            "('Frappuccino','Cà phê xay đá',55000.000,'Coffee','Coffee','FRAPPUCCINO',1) " +
-            "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
-        );
-
-        // Sample menu items - Food (upsert by unique name)
-        stmt.executeUpdate(
-            "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
-            "('Croissant','Bánh sừng bò bơ',35000.000,'Pastry','Food',NULL,1)," +
-            "('Muffin','Bánh muffin mới nướng',27500.000,'Pastry','Food',NULL,1)," +
-            "('Sandwich','Bánh mì kẹp nướng',65000.000,'Food','Food',NULL,1)," +
-            "('Bánh mì pate','Bánh mì pate truyền thống',25000.000,'Food','Food',NULL,1)," +
-            "('Bánh mì thịt nướng','Bánh mì thịt nướng BBQ',45000.000,'Food','Food',NULL,1)," +
-            "('Pizza mini','Pizza mini 4 mùa',80000.000,'Food','Food',NULL,1) " +
-            "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
-        );
-
-        // Sample menu items - Vietnamese Coffee
-        stmt.executeUpdate(
-            "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
-            "('Cà phê sữa đá','Cà phê pha với sữa đặc',25000.000,'Coffee','Coffee','VIETNAMESE',1)," +
-            "('Cà phê đen đá','Cà phê rang xay nguyên chất',20000.000,'Coffee','Coffee','VIETNAMESE',1)," +
-            "('Cà phê sữa nóng','Cà phê sữa ấm nóng',25000.000,'Coffee','Coffee','VIETNAMESE',1) " +
-            "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
-        );
-
-        // Sample menu items - Tea Drinks
-        stmt.executeUpdate(
-            "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
-            "('Trà đào cam sả','Trà đào với cam sả tươi',35000.000,'Tea','Drink',NULL,1)," +
-            "('Trà sữa trân châu','Trà sữa với trân châu đen',40000.000,'Tea','Drink',NULL,1)," +
-            "('Trà xanh matcha','Trà xanh matcha Nhật Bản',45000.000,'Tea','Drink',NULL,1)," +
-            "('Trà hoa cúc','Trà hoa cúc thảo mộc',30000.000,'Tea','Drink',NULL,1) " +
-            "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
-        );
-
-        // Sample menu items - Desserts
-        stmt.executeUpdate(
-            "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
-            "('Tiramisu','Bánh tiramisu Ý',55000.000,'Dessert','Food',NULL,1)," +
-            "('Cheesecake','Bánh cheesecake New York',60000.000,'Dessert','Food',NULL,1)," +
-            "('Brownie','Bánh brownie sô-cô-la',35000.000,'Dessert','Food',NULL,1)," +
-            "('Ice cream','Kem tươi 3 vị',25000.000,'Dessert','Food',NULL,1) " +
-            "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
-        );
-
-        // Sample menu items - Smoothies & Juices
-        stmt.executeUpdate(
-            "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
-            "('Smoothie dâu','Sinh tố dâu tây tươi',40000.000,'Smoothie','Drink',NULL,1)," +
-            "('Smoothie xoài','Sinh tố xoài nhiệt đới',35000.000,'Smoothie','Drink',NULL,1)," +
-            "('Nước cam tươi','Nước cam vắt tươi',30000.000,'Juice','Drink',NULL,1)," +
-            "('Nước chanh dây','Nước chanh dây mát lạnh',25000.000,'Juice','Drink',NULL,1) " +
-            "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
-        );
-
-        // Sample customers
-        stmt.executeUpdate(
-            "INSERT IGNORE INTO customers (name, email, phone_number, loyalty_points) VALUES " +
-            "('Le Quoc Bao', 'lequocbao1352005@gmail.com', '0912345678', 25.5), " +
-            "('Jane Smith','jane.smith@email.com','0905123456',15.75)," +
-            "('Bob Johnson','bob.johnson@email.com','0905234567',42.25)," +
-            "('Alice Brown','alice.brown@email.com','0905345678',8.00)," +
-            "('Charlie Wilson','charlie.wilson@email.com','0905456789',33.50)"
-        );
-
-        
-
-        // Sample ingredients
-        stmt.executeUpdate(
-            "INSERT IGNORE INTO ingredients (name, description, unit, current_stock, minimum_stock, maximum_stock, cost_per_unit, supplier, is_active) VALUES " +
-            "('Coffee Beans - Arabica','Premium Arabica coffee beans','KILOGRAMS',50.0,10.0,100.0,12.50,'Coffee Suppliers Inc',1)," +
-            "('Coffee Beans - Robusta','Strong Robusta coffee beans','KILOGRAMS',30.0,5.0,80.0,10.00,'Coffee Suppliers Inc',1)," +
-            "('Milk','Fresh whole milk','LITERS',25.0,5.0,50.0,1.50,'Local Dairy',1)," +
-            "('Sugar','White granulated sugar','KILOGRAMS',15.0,3.0,30.0,2.00,'Sweet Supplies',1)," +
-            "('Chocolate Syrup','Premium chocolate syrup','LITERS',8.0,2.0,20.0,5.50,'Chocolate Co',1)," +
-            "('Vanilla Extract','Pure vanilla extract','LITERS',3.0,1.0,10.0,15.00,'Flavor House',1)"
-        );
+    public static void createTables() {
+        ensureSchema();
+    }
 
-        stmt.close();
-        System.out.println("✅ Sample data inserted successfully!");
-    } catch (SQLException e) {
-        System.err.println("❌ Error inserting sample data: " + e.getMessage());
-        e.printStackTrace();
+    public static void insertSampleData() {
+        ensureSampleData();
     }
-}
 
 
     // ==========================
@@ -424,14 +639,36 @@ public class DatabaseConnection {
     // ==========================
     // Đóng kết nối
     // ==========================
-    public static void closeConnection() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                System.out.println("MySQL is closed");
+    public static synchronized void closeConnection() {
+        if (writer != null) {
+            System.out.println(writer);
+            writer.shutdown();
+            writer = null;
+        }
+        if (writePool != null) {
+            writePool.shutdown();
+            writePool = null;
+        }
+        if (readPool != null) {
+            readPool.shutdown();
+            readPool = null;
+        }
+        if (idPool != null) {
+            idPool.shutdown();
+            idPool = null;
+        }
+        if (pool != null) {
+            System.out.println(pool.getStats());
+            System.out.println(StatementCache.describe());
+            System.out.println(TransactionTemplate.describe());
+            System.out.println(RetryPolicy.describe());
+            if (JdbcMetrics.isEnabled()) {
+                System.out.println(JdbcMetrics.summary(10));
             }
-        } catch (SQLException e) {
-            System.out.println("Wrong when connecting: " + e.getMessage());
+            JdbcMetrics.shutdown();
+            pool.shutdown();
+            pool = null;
+            System.out.println("Connection pool is closed");
         }
     }
 
@@ -441,10 +678,8 @@ public class DatabaseConnection {
     public static void initializeDatabase() {
         try {
             System.out.println("🔄 Initializing database...");
-            getConnection();
             testConnection();
-            createTables();
-            insertSampleData();
+            ensureSampleData();
             System.out.println("✅ Database initialization completed!");
         } catch (Exception e) {
             System.err.println("❌ Database initialization failed: " + e.getMessage());
@@ -0,0 +1,155 @@
+package coffeeshop.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * IdAllocator
+ * -----------
+ * Cấp khóa chính theo kiểu hi/lo: mỗi lần lấy một khối db.ids.blockSize id từ bảng id_sequences
+ * (name, next_value), sau đó cấp dần trong bộ nhớ. DAO biết id trước khi INSERT nên không cần
+ * RETURN_GENERATED_KEYS và có thể ghi dòng cha/con cùng lô.
+ *
+ * - MySQL: khối được lấy trên một kết nối riêng và commit ngay (SELECT ... FOR UPDATE), nên rollback của
+ *   transaction gọi không trả khối về và hai JVM không bao giờ nhận cùng khối. Kết nối này thuộc một pool
+ *   một kết nối tách khỏi pool chính, nên không tranh chỗ với kết nối người gọi đang giữ.
+ * - SQLite (một tiến trình, một writer): khối được lấy trên kết nối của lần ghi hiện tại. Nếu lần ghi đó
+ *   rollback thì next_value quay lại, nên khối mới luôn bắt đầu sau id lớn nhất đã cấp trong bộ nhớ
+ *   và sau MAX(id) đang có trong bảng.
+ * - Id trong khối chưa dùng bị bỏ khi tắt ứng dụng (dãy id có khoảng trống).
+ */
+public final class IdAllocator {
+
+    private static final Map<String, IdAllocator> ALLOCATORS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final String maxIdQuery;
+
+    // Khối hiện tại [next, limit); highWater = cận trên của mọi khối đã nhận
+    private long next;
+    private long limit;
+    private long highWater;
+
+    private IdAllocator(String table, String idColumn, String... alsoIn) {
+        this.name = table;
+        StringBuilder sql = new StringBuilder("SELECT MAX(id) FROM (SELECT MAX(").append(idColumn)
+                .append(") AS id FROM ").append(table);
+        for (String other : alsoIn) {
+            sql.append(" UNION ALL SELECT MAX(").append(idColumn).append(") FROM ").append(other);
+        }
+        this.maxIdQuery = sql.append(") ids").toString();
+    }
+
+    /**
+     * Bộ cấp id cho bảng (tên dòng trong id_sequences là tên bảng); alsoIn là các bảng khác cũng
+     * chứa id của bảng này (vd. bảng archive) để không cấp trùng.
+     */
+    public static IdAllocator forTable(String table, String idColumn, String... alsoIn) {
+        return ALLOCATORS.computeIfAbsent(table, t -> new IdAllocator(t, idColumn, alsoIn));
+    }
+
+    /** Một id mới; conn là kết nối của lần ghi hiện tại. */
+    public int next(Connection conn) throws SQLException {
+        return next(conn, 1)[0];
+    }
+
+    /** count id mới (không nhất thiết liên tiếp giữa hai khối). */
+    public int[] next(Connection conn, int count) throws SQLException {
+        int[] ids = new int[count];
+        int filled = take(ids, 0);
+        while (filled < count) {
+            // Không giữ khóa khi truy vấn DB: luồng khác đang giữ khóa ghi SQLite vẫn lấy được id
+            long[] block = reserve(conn, Math.max(blockSize(), count - filled));
+            filled = install(block, ids, filled);
+        }
+        return ids;
+    }
+
+    private synchronized int take(int[] ids, int filled) {
+        while (filled < ids.length && next < limit) {
+            ids[filled++] = Math.toIntExact(next++);
+        }
+        return filled;
+    }
+
+    private synchronized int install(long[] block, int[] ids, int filled) {
+        highWater = Math.max(highWater, block[1]);
+        long from = block[0];
+        while (filled < ids.length && from < block[1]) {
+            ids[filled++] = Math.toIntExact(from++);
+        }
+        // Phần còn lại của khối mới thay khối hiện tại nếu nhiều hơn
+        if (block[1] - from > limit - next) {
+            next = from;
+            limit = block[1];
+        }
+        return filled;
+    }
+
+    private synchronized long highWater() {
+        return highWater;
+    }
+
+    private static int blockSize() {
+        return Math.max(1, DatabaseConnection.getIntSetting("db.ids.blockSize", 50));
+    }
+
+    /** Lấy khối size id; trả về [đầu, cuối). */
+    private long[] reserve(Connection conn, int size) throws SQLException {
+        if ("sqlite".equals(DatabaseConnection.getDbType())) {
+            return reserveOn(conn, size, false);
+        }
+        try (Connection own = DatabaseConnection.borrowIndependent()) {
+            own.setAutoCommit(false);
+            try {
+                long[] block = reserveOn(own, size, true);
+                own.commit();
+                return block;
+            } catch (SQLException | RuntimeException e) {
+                own.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private long[] reserveOn(Connection conn, int size, boolean lockRow) throws SQLException {
+        long start = 1;
+        boolean exists = false;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT next_value FROM id_sequences WHERE name = ?" + (lockRow ? " FOR UPDATE" : ""))) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    start = rs.getLong(1);
+                    exists = true;
+                }
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(maxIdQuery);
+             ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                start = Math.max(start, rs.getLong(1) + 1);
+            }
+        }
+        start = Math.max(start, highWater());
+
+        String sql = exists
+                ? "UPDATE id_sequences SET next_value = ? WHERE name = ?"
+                : "INSERT INTO id_sequences (next_value, name) VALUES (?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, start + size);
+            stmt.setString(2, name);
+            stmt.executeUpdate();
+        }
+        return new long[] {start, start + size};
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s ids | next: %d | left in block: %d", name, next, limit - next);
+    }
+}
@@ -0,0 +1,489 @@
+package coffeeshop.db;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * JdbcMetrics
+ * -----------
+ * Đo các lời gọi JDBC của DAO: số lần thực thi, số dòng, lỗi và histogram độ trễ (p50/p95/p99)
+ * theo câu SQL đã chuẩn hóa và theo phương thức DAO gọi nó.
+ * Statement do {@link ConnectionPool} trả ra được bọc proxy; ResultSet được bọc để đếm dòng.
+ * Số liệu xem qua JMX (coffeeshop.db:type=JdbcMetrics), {@link #summary(int)} hoặc bản tóm tắt in định kỳ.
+ * Câu lệnh vượt ngưỡng được chuyển cho {@link SlowQueryLog} cùng giá trị bind.
+ */
+public final class JdbcMetrics implements JdbcMetricsMBean {
+
+    /** Số liệu cho một câu SQL hoặc một phương thức DAO. */
+    static final class Stats {
+        final String key;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        volatile String lastError;
+
+        Stats(String key) {
+            this.key = key;
+        }
+
+        String describe() {
+            return String.format("%-60s calls=%d rows=%d err=%d p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                    abbreviate(key, 60), latency.getCount(), rows.sum(), errors.sum(),
+                    latency.percentile(0.50) / 1000.0, latency.percentile(0.95) / 1000.0,
+                    latency.percentile(0.99) / 1000.0, latency.getMaxMicros() / 1000.0);
+        }
+    }
+
+    private static final int MAX_KEYS = 500;
+    private static final String OTHER = "<other>";
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private static final JdbcMetrics INSTANCE = new JdbcMetrics();
+    private static final Map<String, Stats> BY_SQL = new ConcurrentHashMap<>();
+    private static final Map<String, Stats> BY_METHOD = new ConcurrentHashMap<>();
+    private static final Map<String, String> NORMALIZED = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled = true;
+    private static ScheduledExecutorService dumper;
+    private static boolean registered;
+
+    private JdbcMetrics() {}
+
+    // ==========================
+    // Cấu hình
+    // ==========================
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Bật/tắt đo đạc, đăng ký MBean và lập lịch in tóm tắt mỗi dumpIntervalSec giây (0 = tắt).
+     */
+    static synchronized void configure(boolean enable, long dumpIntervalSec, boolean jmx) {
+        enabled = enable;
+        if (!enable) return;
+        if (jmx && !registered) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(INSTANCE, new ObjectName("coffeeshop.db:type=JdbcMetrics"));
+                registered = true;
+            } catch (Exception e) {
+                System.err.println("Could not register JDBC metrics MBean: " + e.getMessage());
+            }
+        }
+        if (dumpIntervalSec > 0 && dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "jdbc-metrics-dump");
+                t.setDaemon(true);
+                return t;
+            });
+            dumper.scheduleAtFixedRate(() -> {
+                if (totalExecutions() > 0) System.out.println(summary(10));
+            }, dumpIntervalSec, dumpIntervalSec, TimeUnit.SECONDS);
+        }
+    }
+
+    static synchronized void shutdown() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    // ==========================
+    // Bọc đối tượng JDBC
+    // ==========================
+    /** Bọc statement vừa tạo; sql là null với createStatement() (SQL lấy từ lời gọi execute). */
+    static Statement instrument(Statement raw, String sql, Connection owner) {
+        String caller = callerMethod();
+        Class<?> type = raw instanceof CallableStatement ? CallableStatement.class
+                : raw instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(
+                JdbcMetrics.class.getClassLoader(),
+                new Class<?>[] { type },
+                new StatementHandler(raw, sql, caller, owner));
+    }
+
+    /** Phương thức đầu tiên ngoài tầng JDBC/pool trên stack, ví dụ "OrderDAO.getAllOrders". */
+    static String callerMethod() {
+        return WALKER.walk(frames -> frames
+                .filter(f -> isApplicationFrame(f.getClassName()))
+                .findFirst()
+                .map(f -> simpleName(f.getClassName()) + "." + cleanMethodName(f.getMethodName()))
+                .orElse("unknown"));
+    }
+
+    private static boolean isApplicationFrame(String className) {
+        return !className.startsWith("coffeeshop.db.")
+                && !className.startsWith("java.")
+                && !className.startsWith("javax.")
+                && !className.startsWith("jdk.")
+                && !className.startsWith("sun.")
+                && !className.startsWith("com.sun.")
+                && !className.contains("$Proxy");
+    }
+
+    private static String simpleName(String className) {
+        String name = className.substring(className.lastIndexOf('.') + 1);
+        int inner = name.indexOf('$');
+        return inner > 0 ? name.substring(0, inner) : name;
+    }
+
+    private static String cleanMethodName(String method) {
+        // lambda$createOrder$0 -> createOrder
+        if (method.startsWith("lambda$")) {
+            int end = method.indexOf('$', 7);
+            return end > 7 ? method.substring(7, end) : method;
+        }
+        return method;
+    }
+
+    /** Chuẩn hóa SQL: gộp khoảng trắng, thay literal bằng ?, gộp danh sách IN (?, ?, ...) thành (?...). */
+    static String normalize(String sql) {
+        if (sql == null) return "?";
+        String cached = NORMALIZED.get(sql);
+        if (cached != null) return cached;
+        String n = STRING_LITERAL.matcher(sql).replaceAll("?");
+        n = NUMBER_LITERAL.matcher(n).replaceAll("?");
+        n = IN_LIST.matcher(n).replaceAll("(?...)");
+        n = WHITESPACE.matcher(n).replaceAll(" ").trim();
+        if (NORMALIZED.size() < MAX_KEYS * 4) NORMALIZED.put(sql, n);
+        return n;
+    }
+
+    private static Stats statsFor(Map<String, Stats> map, String key) {
+        Stats s = map.get(key);
+        if (s != null) return s;
+        if (map.size() >= MAX_KEYS) key = OTHER;
+        return map.computeIfAbsent(key, Stats::new);
+    }
+
+    static void record(String sql, String caller, long nanos, long rows, Throwable error) {
+        Stats bySql = statsFor(BY_SQL, normalize(sql));
+        Stats byMethod = statsFor(BY_METHOD, caller);
+        bySql.latency.record(nanos);
+        byMethod.latency.record(nanos);
+        if (rows > 0) {
+            bySql.rows.add(rows);
+            byMethod.rows.add(rows);
+        }
+        if (error != null) {
+            bySql.errors.increment();
+            byMethod.errors.increment();
+            bySql.lastError = error.getMessage();
+            byMethod.lastError = error.getMessage();
+        }
+    }
+
+    // ==========================
+    // Báo cáo
+    // ==========================
+    static long totalExecutions() {
+        long n = 0;
+        for (Stats s : BY_SQL.values()) n += s.latency.getCount();
+        return n;
+    }
+
+    private static List<Stats> top(Map<String, Stats> map, int limit) {
+        List<Stats> list = new ArrayList<>(map.values());
+        list.sort(Comparator.comparingLong((Stats s) -> s.latency.getTotalMicros()).reversed());
+        return list.size() > limit ? list.subList(0, limit) : list;
+    }
+
+    private static String[] describeTop(Map<String, Stats> map, int limit) {
+        List<Stats> list = top(map, limit);
+        String[] out = new String[list.size()];
+        for (int i = 0; i < out.length; i++) out[i] = list.get(i).describe();
+        return out;
+    }
+
+    /** Bảng tóm tắt: limit câu SQL và limit phương thức DAO tốn thời gian nhất. */
+    public static String summary(int limit) {
+        StringBuilder sb = new StringBuilder("JDBC metrics | executions: ").append(totalExecutions())
+                .append(" | statements: ").append(BY_SQL.size())
+                .append(" | DAO methods: ").append(BY_METHOD.size());
+        sb.append("\n  Top statements by total time:");
+        for (String line : describeTop(BY_SQL, limit)) sb.append("\n    ").append(line);
+        sb.append("\n  Top DAO methods by total time:");
+        for (String line : describeTop(BY_METHOD, limit)) sb.append("\n    ").append(line);
+        return sb.toString();
+    }
+
+    private static String abbreviate(String s, int max) {
+        return s.length() <= max ? s : s.substring(0, max - 3) + "...";
+    }
+
+    // ==========================
+    // JMX
+    // ==========================
+    @Override
+    public long getExecutions() {
+        return totalExecutions();
+    }
+
+    @Override
+    public long getErrors() {
+        long n = 0;
+        for (Stats s : BY_SQL.values()) n += s.errors.sum();
+        return n;
+    }
+
+    @Override
+    public long getRows() {
+        long n = 0;
+        for (Stats s : BY_SQL.values()) n += s.rows.sum();
+        return n;
+    }
+
+    @Override
+    public String[] getTopStatements() {
+        return describeTop(BY_SQL, 20);
+    }
+
+    @Override
+    public String[] getTopDaoMethods() {
+        return describeTop(BY_METHOD, 20);
+    }
+
+    @Override
+    public String getSummary() {
+        return summary(10);
+    }
+
+    @Override
+    public void reset() {
+        BY_SQL.clear();
+        BY_METHOD.clear();
+    }
+
+    // ==========================
+    // Proxy
+    // ==========================
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement raw;
+        private final String sql;
+        private final String caller;
+        private final Connection owner;
+        /** Giá trị bind (chỉ giữ khi slow query log bật). */
+        private Object[] binds;
+        private String lastSql;
+        private long lastStart;
+        private ResultSetHandler open;
+
+        StatementHandler(Statement raw, String sql, String caller, Connection owner) {
+            this.raw = raw;
+            this.sql = sql;
+            this.caller = caller;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented[" + raw + "]";
+                case "close":
+                    finishOpen();
+                    break;
+                case "clearParameters":
+                    binds = null;
+                    break;
+                default:
+                    break;
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                    && SlowQueryLog.isEnabled()) {
+                captureBind((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+            }
+            if (!name.startsWith("execute")) {
+                Object result = invokeRaw(method, args);
+                if (result instanceof ResultSet && "getResultSet".equals(name)) {
+                    return wrapResultSet((ResultSet) result, proxy, lastSql != null ? lastSql : sql, lastStart);
+                }
+                return result;
+            }
+            finishOpen();
+            String text = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : sql;
+            lastSql = text;
+            long start = System.nanoTime();
+            lastStart = start;
+            Object result;
+            try {
+                result = invokeRaw(method, args);
+            } catch (Throwable t) {
+                record(text, caller, System.nanoTime() - start, 0, t);
+                throw t;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (result instanceof ResultSet) {
+                // Số dòng được cộng dần khi DAO đọc ResultSet; slow log ghi khi ResultSet đóng
+                record(text, caller, elapsed, 0, null);
+                return wrapResultSet((ResultSet) result, proxy, text, start);
+            }
+            long rows = affectedRows(result);
+            record(text, caller, elapsed, rows, null);
+            if (SlowQueryLog.isSlow(elapsed)) {
+                SlowQueryLog.record(owner, text, binds, elapsed, rows, caller);
+            }
+            return result;
+        }
+
+        private void captureBind(int index, Object value) {
+            if (index < 1 || index > 1000) return;
+            if (binds == null || binds.length < index) {
+                Object[] grown = new Object[Math.max(index, binds == null ? 4 : binds.length * 2)];
+                if (binds != null) System.arraycopy(binds, 0, grown, 0, binds.length);
+                binds = grown;
+            }
+            binds[index - 1] = value;
+        }
+
+        private Object[] bindSnapshot() {
+            if (binds == null) return null;
+            int n = binds.length;
+            while (n > 0 && binds[n - 1] == null) n--;
+            Object[] copy = new Object[n];
+            System.arraycopy(binds, 0, copy, 0, n);
+            return copy;
+        }
+
+        /** Statement đóng hoặc chạy lại trước khi DAO đóng ResultSet. */
+        private void finishOpen() {
+            if (open != null) {
+                open.finish();
+                open = null;
+            }
+        }
+
+        private Object invokeRaw(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private ResultSet wrapResultSet(ResultSet rs, Object statement, String text, long start) {
+            Stats bySql = statsFor(BY_SQL, normalize(text));
+            Stats byMethod = statsFor(BY_METHOD, caller);
+            open = new ResultSetHandler(rs, statement, bySql, byMethod, this, text, start);
+            return (ResultSet) Proxy.newProxyInstance(
+                    JdbcMetrics.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class },
+                    open);
+        }
+
+        private static long affectedRows(Object result) {
+            if (result instanceof Integer) return Math.max(0, (Integer) result);
+            if (result instanceof Long) return Math.max(0, (Long) result);
+            if (result instanceof int[]) {
+                long n = 0;
+                for (int c : (int[]) result) n += Math.max(0, c);
+                return n;
+            }
+            if (result instanceof long[]) {
+                long n = 0;
+                for (long c : (long[]) result) n += Math.max(0, c);
+                return n;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Đếm số dòng DAO thực sự đọc qua next(). Khi đóng, tổng thời gian thực thi + đọc
+     * (SQLite làm phần lớn việc trong next()) được so với ngưỡng slow query log.
+     */
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet raw;
+        private final Object statement;
+        private final Stats bySql;
+        private final Stats byMethod;
+        private final StatementHandler owner;
+        private final String sql;
+        private final long start;
+        private long rows;
+        private boolean finished;
+
+        ResultSetHandler(ResultSet raw, Object statement, Stats bySql, Stats byMethod,
+                         StatementHandler owner, String sql, long start) {
+            this.raw = raw;
+            this.statement = statement;
+            this.bySql = bySql;
+            this.byMethod = byMethod;
+            this.owner = owner;
+            this.sql = sql;
+            this.start = start;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getStatement":
+                    return statement;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "close":
+                    finish();
+                    break;
+                default:
+                    break;
+            }
+            Object result;
+            try {
+                result = method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (Boolean.TRUE.equals(result) && "next".equals(method.getName())) {
+                rows++;
+                bySql.rows.increment();
+                byMethod.rows.increment();
+            }
+            return result;
+        }
+
+        void finish() {
+            if (finished) return;
+            finished = true;
+            long elapsed = System.nanoTime() - start;
+            if (SlowQueryLog.isSlow(elapsed)) {
+                SlowQueryLog.record(owner.owner, sql, owner.bindSnapshot(), elapsed, rows, owner.caller);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package coffeeshop.db;
+
+/**
+ * Giao diện JMX của {@link JdbcMetrics} (ObjectName coffeeshop.db:type=JdbcMetrics).
+ */
+public interface JdbcMetricsMBean {
+    long getExecutions();
+
+    long getErrors();
+
+    long getRows();
+
+    /** Các câu SQL (đã chuẩn hóa) tốn nhiều thời gian nhất, kèm số lần gọi và p50/p95/p99. */
+    String[] getTopStatements();
+
+    /** Các phương thức DAO tốn nhiều thời gian nhất. */
+    String[] getTopDaoMethods();
+
+    String getSummary();
+
+    void reset();
+}
@@ -0,0 +1,78 @@
+package coffeeshop.db;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram
+ * ----------------
+ * Histogram độ trễ không khóa, bucket theo micro giây dạng log-tuyến tính:
+ * mỗi lũy thừa của 2 chia thành 8 bucket, sai số tương đối tối đa khoảng 12.5%.
+ * Đủ chính xác cho p50/p95/p99 mà chỉ tốn vài phép tính trên mỗi lần ghi.
+ */
+class LatencyHistogram {
+    private static final int SUB = 8;
+    private static final int BUCKETS = SUB * 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private volatile long maxMicros;
+
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketOf(micros));
+        count.increment();
+        totalMicros.add(micros);
+        if (micros > maxMicros) {
+            synchronized (this) {
+                if (micros > maxMicros) maxMicros = micros;
+            }
+        }
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB) return (int) micros;
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (msb - 3)) & (SUB - 1));
+        return Math.min((msb - 2) * SUB + sub, BUCKETS - 1);
+    }
+
+    /** Giá trị lớn nhất (micro giây) thuộc bucket idx. */
+    static long upperBound(int idx) {
+        if (idx < SUB) return idx;
+        int msb = idx / SUB + 2;
+        int sub = idx % SUB;
+        return ((long) (SUB + sub + 1) << (msb - 3)) - 1;
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getTotalMicros() {
+        return totalMicros.sum();
+    }
+
+    long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /** Phân vị p (0..1) tính bằng micro giây; 0 nếu chưa có mẫu. */
+    long percentile(double p) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) return Math.min(upperBound(i), maxMicros);
+        }
+        return maxMicros;
+    }
+}
@@ -0,0 +1,178 @@
+package coffeeshop.db;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RetryPolicy
+ * -----------
+ * Thử lại các đơn vị ghi khi gặp lỗi tạm thời do tranh chấp khóa:
+ * SQLITE_BUSY / SQLITE_LOCKED, deadlock (1213) và lock wait timeout (1205) của InnoDB, SQLSTATE 40001.
+ * Chờ theo exponential backoff có jitter (full jitter) và bị giới hạn bởi retry budget:
+ * mỗi lần gọi nạp thêm budgetRatio token (tối đa budgetMax), mỗi lần thử lại tiêu 1 token,
+ * nên khi DB quá tải hàng loạt thì không bị dồn thêm tải do thử lại.
+ *
+ * Chỉ dùng cho đơn vị công việc idempotent: toàn bộ transaction đã rollback trước khi chạy lại.
+ */
+public final class RetryPolicy {
+
+    public interface Work<T> {
+        T run() throws SQLException;
+    }
+
+    public enum Kind {
+        SQLITE_BUSY, SQLITE_LOCKED, DEADLOCK, LOCK_WAIT_TIMEOUT, SERIALIZATION
+    }
+
+    private static volatile RetryPolicy instance = new RetryPolicy(5, 10, 500, 0.2, 20);
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final double budgetRatio;
+    private final double budgetMax;
+    private double budgetTokens;
+
+    private static final LongAdder CALLS = new LongAdder();
+    private static final LongAdder RETRIES = new LongAdder();
+    private static final LongAdder RECOVERED = new LongAdder();
+    private static final LongAdder EXHAUSTED = new LongAdder();
+    private static final LongAdder BUDGET_DENIED = new LongAdder();
+    private static final Map<Kind, LongAdder> BY_KIND = new EnumMap<>(Kind.class);
+
+    static {
+        for (Kind k : Kind.values()) {
+            BY_KIND.put(k, new LongAdder());
+        }
+    }
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, double budgetRatio, double budgetMax) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = Math.max(1, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+        this.budgetRatio = Math.max(0, budgetRatio);
+        this.budgetMax = Math.max(0, budgetMax);
+        this.budgetTokens = this.budgetMax;
+    }
+
+    public static RetryPolicy get() {
+        return instance;
+    }
+
+    static void configure(RetryPolicy policy) {
+        instance = policy;
+    }
+
+    // ==========================
+    // Thực thi
+    // ==========================
+    public <T> T execute(Work<T> work) throws SQLException {
+        CALLS.increment();
+        deposit();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = work.run();
+                if (attempt > 1) RECOVERED.increment();
+                return result;
+            } catch (SQLException e) {
+                Kind kind = classify(e);
+                if (kind == null) throw e;
+                BY_KIND.get(kind).increment();
+                if (attempt >= maxAttempts) {
+                    EXHAUSTED.increment();
+                    throw e;
+                }
+                if (!withdraw()) {
+                    BUDGET_DENIED.increment();
+                    throw e;
+                }
+                RETRIES.increment();
+                sleep(backoff(attempt));
+            }
+        }
+    }
+
+    /** Full jitter: ngẫu nhiên trong [0, min(maxDelay, base * 2^(attempt-1))]. */
+    long backoff(int attempt) {
+        long cap = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private synchronized void deposit() {
+        budgetTokens = Math.min(budgetMax, budgetTokens + budgetRatio);
+    }
+
+    private synchronized boolean withdraw() {
+        if (budgetTokens < 1) return false;
+        budgetTokens -= 1;
+        return true;
+    }
+
+    private static void sleep(long ms) throws SQLException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    // ==========================
+    // Phân loại lỗi
+    // ==========================
+    /** Loại lỗi tạm thời (theo mã lỗi của SQLite/MySQL), hoặc null nếu không nên thử lại. */
+    public static Kind classify(Throwable t) {
+        for (Throwable c = t; c != null; c = c.getCause()) {
+            if (c instanceof SQLException) {
+                for (SQLException s = (SQLException) c; s != null; s = s.getNextException()) {
+                    Kind k = classifyOne(s);
+                    if (k != null) return k;
+                }
+            }
+            for (Throwable suppressed : c.getSuppressed()) {
+                if (suppressed instanceof SQLException) {
+                    Kind k = classifyOne((SQLException) suppressed);
+                    if (k != null) return k;
+                }
+            }
+            if (c.getCause() == c) break;
+        }
+        return null;
+    }
+
+    private static Kind classifyOne(SQLException s) {
+        int code = s.getErrorCode();
+        String msg = s.getMessage() == null ? "" : s.getMessage().toLowerCase(Locale.ROOT);
+        boolean sqlite = s.getClass().getName().startsWith("org.sqlite") || msg.contains("[sqlite_");
+        if (sqlite) {
+            // Mã mở rộng (BUSY_SNAPSHOT = 517, ...) có mã chính ở byte thấp
+            if ((code & 0xff) == 5 || msg.contains("sqlite_busy")) return Kind.SQLITE_BUSY;
+            if ((code & 0xff) == 6 || msg.contains("sqlite_locked")) return Kind.SQLITE_LOCKED;
+            return null;
+        }
+        if (msg.contains("database is locked")) return Kind.SQLITE_BUSY;
+        if (code == 1213) return Kind.DEADLOCK;
+        if (code == 1205) return Kind.LOCK_WAIT_TIMEOUT;
+        if ("40001".equals(s.getSQLState()) || s instanceof SQLTransactionRollbackException) return Kind.SERIALIZATION;
+        return null;
+    }
+
+    // ==========================
+    // Thống kê
+    // ==========================
+    public static String describe() {
+        StringBuilder sb = new StringBuilder(String.format(
+                "Write retries | units: %d | retries: %d | recovered: %d | gave up: %d | budget denied: %d",
+                CALLS.sum(), RETRIES.sum(), RECOVERED.sum(), EXHAUSTED.sum(), BUDGET_DENIED.sum()));
+        for (Map.Entry<Kind, LongAdder> e : BY_KIND.entrySet()) {
+            long n = e.getValue().sum();
+            if (n > 0) sb.append(" | ").append(e.getKey().name().toLowerCase(Locale.ROOT)).append(": ").append(n);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,671 @@
+package coffeeshop.db;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * SchemaMigrator
+ * --------------
+ * Quản lý phiên bản schema bằng bảng schema_version và các migration đánh số.
+ * Mỗi migration lưu checksum khi được áp dụng; lần khởi động sau chỉ cần đọc schema_version
+ * và so checksum, nếu schema đã mới nhất thì bỏ qua toàn bộ DDL và dữ liệu mẫu.
+ *
+ * Thêm thay đổi schema mới bằng cách thêm migration với version lớn hơn vào cuối danh sách,
+ * không sửa migration đã phát hành (checksum sẽ lệch và được cảnh báo).
+ */
+public class SchemaMigrator {
+
+    /** Một câu SQL trong migration; optional = bỏ qua lỗi (ví dụ constraint đã tồn tại). */
+    static final class Step {
+        final String sql;
+        final boolean optional;
+
+        Step(String sql, boolean optional) {
+            this.sql = sql;
+            this.optional = optional;
+        }
+    }
+
+    static final class Migration {
+        final int version;
+        final String description;
+        /** Đọc khi migration thật sự phải chạy (V1 của SQLite đọc file schema). */
+        final Supplier<List<Step>> steps;
+        /** Nếu bảng này đã có (DB cũ chưa có schema_version) thì chỉ ghi nhận version, không chạy lại. */
+        final String baselineTable;
+        final String checksum;
+        /** Migration chỉ chứa dữ liệu mẫu; chạy riêng ở pha seed của quá trình khởi động. */
+        final boolean seed;
+
+        Migration(int version, String description, List<Step> steps, String baselineTable) {
+            this(version, description, steps, baselineTable, false);
+        }
+
+        Migration(int version, String description, List<Step> steps, String baselineTable, boolean seed) {
+            this(version, description, () -> steps, checksumOf(steps), baselineTable, seed);
+        }
+
+        /** Các bước nạp muộn; checksum cho trước để mỗi lần khởi động so với schema_version mà không phải đọc các bước. */
+        Migration(int version, String description, Supplier<List<Step>> steps, String checksum, String baselineTable) {
+            this(version, description, steps, checksum, baselineTable, false);
+        }
+
+        private Migration(int version, String description, Supplier<List<Step>> steps, String checksum,
+                          String baselineTable, boolean seed) {
+            this.version = version;
+            this.description = description;
+            this.steps = steps;
+            this.baselineTable = baselineTable;
+            this.checksum = checksum;
+            this.seed = seed;
+        }
+    }
+
+    /** checksumOf(readSchemaFile(Library/database_schema.sql)); cập nhật khi sửa file đó. */
+    static final String SQLITE_V1_CHECKSUM = "7c267fe6";
+
+    private final boolean sqlite;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(boolean sqlite) {
+        this.sqlite = sqlite;
+        this.migrations = sqlite ? sqliteMigrations() : mysqlMigrations();
+    }
+
+    // ==========================
+    // Chạy migration
+    // ==========================
+    /**
+     * Đưa schema lên phiên bản mới nhất. Trả về số migration đã áp dụng (0 nếu schema đã mới nhất).
+     */
+    public int migrate(Connection conn) throws SQLException {
+        return migrate(conn, false) + migrate(conn, true);
+    }
+
+    /**
+     * Chỉ chạy các migration schema (seedData = false) hoặc chỉ các migration dữ liệu mẫu (seedData = true),
+     * để quá trình khởi động đo riêng hai pha.
+     */
+    public int migrate(Connection conn, boolean seedData) throws SQLException {
+        Map<Integer, String> applied = readAppliedVersions(conn);
+        List<Migration> pending = new ArrayList<>();
+        for (Migration m : migrations) {
+            if (m.seed != seedData) continue;
+            String checksum = applied.get(m.version);
+            if (checksum == null) {
+                pending.add(m);
+            } else if (!checksum.equals(m.checksum)) {
+                System.err.println("Schema migration V" + m.version + " (" + m.description
+                        + ") changed after it was applied: checksum " + checksum + " != " + m.checksum);
+            }
+        }
+        if (pending.isEmpty()) {
+            System.out.println((seedData ? "Sample data" : "Schema") + " is current (V" + latestVersion()
+                    + "), skipping migrations.");
+            return 0;
+        }
+        createVersionTable(conn);
+        for (Migration m : pending) {
+            apply(conn, m);
+        }
+        return pending.size();
+    }
+
+    public int latestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version;
+    }
+
+    private Map<Integer, String> readAppliedVersions(Connection conn) {
+        Map<Integer, String> applied = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT version, checksum FROM schema_version");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getString("checksum"));
+            }
+        } catch (SQLException e) {
+            // Chưa có bảng schema_version: DB mới hoặc DB tạo bởi phiên bản cũ
+        }
+        return applied;
+    }
+
+    private void createVersionTable(Connection conn) throws SQLException {
+        try (Statement s = conn.createStatement()) {
+            s.execute(
+                "CREATE TABLE IF NOT EXISTS schema_version (" +
+                "  version INT PRIMARY KEY," +
+                "  description VARCHAR(200) NOT NULL," +
+                "  checksum VARCHAR(16) NOT NULL," +
+                "  applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")"
+            );
+        }
+    }
+
+    private void apply(Connection conn, Migration m) throws SQLException {
+        long start = System.nanoTime();
+        boolean baseline = m.baselineTable != null && tableExists(conn, m.baselineTable);
+        List<Step> steps = baseline ? List.of() : m.steps.get();
+        String checksum = m.checksum;
+        if (!baseline && !checksum.equals(checksumOf(steps))) {
+            // Checksum cho trước đã cũ (file schema bị sửa): ghi checksum thật để lần sau báo lệch
+            checksum = checksumOf(steps);
+            System.err.println("Schema migration V" + m.version + " checksum constant is out of date, applied " + checksum);
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            if (!baseline) {
+                try (Statement s = conn.createStatement()) {
+                    for (Step step : steps) {
+                        if (step.optional) {
+                            try {
+                                s.execute(step.sql);
+                            } catch (SQLException ignore) {}
+                        } else {
+                            s.execute(step.sql);
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO schema_version (version, description, checksum) VALUES (?, ?, ?)")) {
+                ps.setInt(1, m.version);
+                ps.setString(2, m.description);
+                ps.setString(3, checksum);
+                ps.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Migration V" + m.version + " (" + m.description + ") failed: " + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        System.out.printf("%s schema migration V%d - %s (%.1f ms)%n",
+                baseline ? "Baselined" : "Applied", m.version, m.description, (System.nanoTime() - start) / 1e6);
+    }
+
+    private boolean tableExists(Connection conn, String table) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getTables(null, null, table, new String[] { "TABLE" })) {
+            return rs.next();
+        }
+    }
+
+    static String checksumOf(List<Step> steps) {
+        CRC32 crc = new CRC32();
+        for (Step step : steps) {
+            crc.update(step.sql.trim().getBytes(StandardCharsets.UTF_8));
+            crc.update(step.optional ? 1 : 0);
+        }
+        return String.format("%08x", crc.getValue());
+    }
+
+    private static Step sql(String sql) {
+        return new Step(sql, false);
+    }
+
+    private static Step optional(String sql) {
+        return new Step(sql, true);
+    }
+
+    // ==========================
+    // SQLite
+    // ==========================
+    private static List<Migration> sqliteMigrations() {
+        List<Migration> list = new ArrayList<>();
+        // File schema chỉ được đọc khi V1 phải chạy (DB mới); khởi động thường chỉ so checksum
+        list.add(new Migration(1, "Baseline schema and sample data (database_schema.sql)",
+                () -> readSchemaFile(Paths.get("Library", "database_schema.sql")), SQLITE_V1_CHECKSUM, "orders"));
+        // Phân trang theo khóa: orders dùng idx_orders_order_time (rowid = order_id đã nằm trong index)
+        list.add(new Migration(2, "Keyset pagination indexes for payments and customers", List.of(
+            sql("CREATE INDEX IF NOT EXISTS idx_payments_created_at ON payments(created_at, payment_id)"),
+            sql("CREATE INDEX IF NOT EXISTS idx_customers_name ON customers(name, customer_id)")
+        ), null));
+        // Bảng tổng hợp doanh số theo ngày/giờ (giờ địa phương), được OrderDAO cập nhật cùng transaction với orders
+        list.add(new Migration(3, "Daily and hourly sales rollup tables", List.of(
+            sql("CREATE TABLE IF NOT EXISTS sales_daily (" +
+                "  sales_date TEXT NOT NULL," +
+                "  service_type VARCHAR(20) NOT NULL," +
+                "  status VARCHAR(20) NOT NULL," +
+                "  order_count INTEGER NOT NULL DEFAULT 0," +
+                "  revenue DECIMAL(14,3) NOT NULL DEFAULT 0," +
+                "  PRIMARY KEY (sales_date, service_type, status))"),
+            sql("CREATE TABLE IF NOT EXISTS sales_hourly (" +
+                "  sales_date TEXT NOT NULL," +
+                "  sales_hour INTEGER NOT NULL," +
+                "  service_type VARCHAR(20) NOT NULL," +
+                "  status VARCHAR(20) NOT NULL," +
+                "  order_count INTEGER NOT NULL DEFAULT 0," +
+                "  revenue DECIMAL(14,3) NOT NULL DEFAULT 0," +
+                "  PRIMARY KEY (sales_date, sales_hour, service_type, status))"),
+            sql("INSERT INTO sales_daily (sales_date, service_type, status, order_count, revenue) " +
+                "SELECT date(order_time, 'localtime'), service_type, status, COUNT(*), COALESCE(SUM(total_amount), 0) " +
+                "FROM orders GROUP BY date(order_time, 'localtime'), service_type, status"),
+            sql("INSERT INTO sales_hourly (sales_date, sales_hour, service_type, status, order_count, revenue) " +
+                "SELECT date(order_time, 'localtime'), CAST(strftime('%H', order_time, 'localtime') AS INTEGER), " +
+                "       service_type, status, COUNT(*), COALESCE(SUM(total_amount), 0) " +
+                "FROM orders GROUP BY 1, 2, service_type, status")
+        ), null));
+        // Bảng archive cho order đã xong lâu ngày (OrderArchive); giữ nguyên id, không khóa ngoại
+        list.add(new Migration(4, "Archive tables for old orders, order items and payments", List.of(
+            sql("CREATE TABLE IF NOT EXISTS orders_archive (" +
+                "  order_id INTEGER PRIMARY KEY," +
+                "  customer_id INTEGER NOT NULL," +
+                "  status VARCHAR(20)," +
+                "  service_type VARCHAR(20) NOT NULL," +
+                "  subtotal DECIMAL(10,3) NOT NULL," +
+                "  tax DECIMAL(10,3) NOT NULL," +
+                "  discount DECIMAL(10,3)," +
+                "  total_amount DECIMAL(10,3) NOT NULL," +
+                "  special_instructions TEXT," +
+                "  order_time TIMESTAMP," +
+                "  completion_time TIMESTAMP," +
+                "  created_at TIMESTAMP," +
+                "  updated_at TIMESTAMP," +
+                "  archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)"),
+            sql("CREATE INDEX IF NOT EXISTS idx_orders_archive_order_time ON orders_archive(order_time)"),
+            sql("CREATE INDEX IF NOT EXISTS idx_orders_archive_customer_id ON orders_archive(customer_id)"),
+            sql("CREATE TABLE IF NOT EXISTS order_items_archive (" +
+                "  order_item_id INTEGER PRIMARY KEY," +
+                "  order_id INTEGER NOT NULL," +
+                "  menu_item_id INTEGER NOT NULL," +
+                "  quantity INTEGER NOT NULL," +
+                "  unit_price DECIMAL(10,3) NOT NULL," +
+                "  total_price DECIMAL(10,3) NOT NULL," +
+                "  customizations TEXT," +
+                "  size VARCHAR(20)," +
+                "  is_hot BOOLEAN," +
+                "  created_at TIMESTAMP)"),
+            sql("CREATE INDEX IF NOT EXISTS idx_order_items_archive_order_id ON order_items_archive(order_id)"),
+            sql("CREATE TABLE IF NOT EXISTS payments_archive (" +
+                "  payment_id INTEGER PRIMARY KEY," +
+                "  order_id INTEGER NOT NULL," +
+                "  payment_method VARCHAR(20) NOT NULL," +
+                "  status VARCHAR(20)," +
+                "  amount DECIMAL(10,3) NOT NULL," +
+                "  amount_paid DECIMAL(10,3)," +
+                "  change_given DECIMAL(10,3)," +
+                "  transaction_reference VARCHAR(100)," +
+                "  card_last_four_digits VARCHAR(4)," +
+                "  failure_reason TEXT," +
+                "  payment_time TIMESTAMP," +
+                "  created_at TIMESTAMP," +
+                "  updated_at TIMESTAMP)"),
+            sql("CREATE INDEX IF NOT EXISTS idx_payments_archive_order_id ON payments_archive(order_id)")
+        ), null));
+        // Bảng cấp khối id (IdAllocator), bắt đầu sau id lớn nhất hiện có
+        list.add(new Migration(5, "Id block sequences for orders, payments, customers and ingredients", List.of(
+            sql("CREATE TABLE IF NOT EXISTS id_sequences (" +
+                "  name VARCHAR(64) PRIMARY KEY," +
+                "  next_value BIGINT NOT NULL)"),
+            sql("INSERT INTO id_sequences (name, next_value) " +
+                "SELECT 'orders', COALESCE(MAX(id), 0) + 1 FROM (SELECT MAX(order_id) AS id FROM orders UNION ALL SELECT MAX(order_id) FROM orders_archive) ids"),
+            sql("INSERT INTO id_sequences (name, next_value) " +
+                "SELECT 'payments', COALESCE(MAX(id), 0) + 1 FROM (SELECT MAX(payment_id) AS id FROM payments UNION ALL SELECT MAX(payment_id) FROM payments_archive) ids"),
+            sql("INSERT INTO id_sequences (name, next_value) " +
+                "SELECT 'customers', COALESCE(MAX(id), 0) + 1 FROM (SELECT MAX(customer_id) AS id FROM customers) ids"),
+            sql("INSERT INTO id_sequences (name, next_value) " +
+                "SELECT 'ingredients', COALESCE(MAX(id), 0) + 1 FROM (SELECT MAX(ingredient_id) AS id FROM ingredients) ids")
+        ), null));
+        // Khóa idempotency do client sinh cho mỗi order: gửi lại cùng khóa trả về order đã có (NULL được lặp)
+        list.add(new Migration(6, "Idempotency key on orders", List.of(
+            sql("ALTER TABLE orders ADD COLUMN idempotency_key VARCHAR(64)"),
+            sql("CREATE UNIQUE INDEX IF NOT EXISTS idx_orders_idempotency_key ON orders(idempotency_key)")
+        ), null));
+        return list;
+    }
+
+    /** Tách file schema thành từng câu lệnh; CREATE TRIGGER ... BEGIN ... END; được giữ nguyên một khối. */
+    static List<Step> readSchemaFile(Path schema) {
+        List<Step> steps = new ArrayList<>();
+        if (!Files.exists(schema)) {
+            System.err.println("Schema file not found: " + schema.toAbsolutePath());
+            return steps;
+        }
+        try (BufferedReader br = Files.newBufferedReader(schema, StandardCharsets.UTF_8)) {
+            StringBuilder sb = new StringBuilder();
+            boolean inTrigger = false;
+            String line;
+            while ((line = br.readLine()) != null) {
+                String t = line.trim();
+                if (t.startsWith("--") || (sb.length() == 0 && t.isEmpty())) continue;
+                if (sb.length() == 0 && t.toUpperCase().startsWith("CREATE TRIGGER")) inTrigger = true;
+                sb.append(line).append('\n');
+                int comment = t.indexOf("--");
+                String code = comment >= 0 ? t.substring(0, comment).trim() : t;
+                boolean end = inTrigger ? code.equalsIgnoreCase("END;") : code.endsWith(";");
+                if (end) {
+                    addStatement(steps, sb.toString());
+                    sb.setLength(0);
+                    inTrigger = false;
+                }
+            }
+            if (sb.length() > 0) addStatement(steps, sb.toString());
+        } catch (IOException e) {
+            System.err.println("Error reading schema file: " + e.getMessage());
+        }
+        return steps;
+    }
+
+    private static void addStatement(List<Step> steps, String sql) {
+        String trimmed = sql.trim();
+        String upper = trimmed.toUpperCase();
+        if (trimmed.isEmpty() || upper.startsWith("CREATE DATABASE") || upper.startsWith("USE ")) return;
+        steps.add(sql(trimmed));
+    }
+
+    // ==========================
+    // MySQL
+    // ==========================
+    private static List<Migration> mysqlMigrations() {
+        List<Migration> list = new ArrayList<>();
+        list.add(new Migration(1, "Baseline schema", List.of(
+            sql(
+                "CREATE TABLE IF NOT EXISTS menu_items (" +
+                "  id INT AUTO_INCREMENT PRIMARY KEY," +
+                "  name VARCHAR(255) NOT NULL," +
+                "  description TEXT," +
+                "  base_price DECIMAL(10,3) NOT NULL," +
+                "  category VARCHAR(100) NOT NULL," +
+                "  item_type VARCHAR(50) NOT NULL," +
+                "  coffee_type VARCHAR(50)," +
+                "  is_available TINYINT(1) DEFAULT 1," +
+                "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+                ") ENGINE=InnoDB;"
+            ),
+            sql(
+                "DELETE mi1 FROM menu_items mi1 " +
+                "JOIN menu_items mi2 ON mi1.name = mi2.name AND mi1.id > mi2.id"
+            ),
+            optional(
+                "ALTER TABLE menu_items ADD CONSTRAINT uk_menu_items_name UNIQUE (name)"
+            ),
+            sql(
+                "CREATE TABLE IF NOT EXISTS customers (" +
+                "  customer_id INT AUTO_INCREMENT PRIMARY KEY," +
+                "  name VARCHAR(100) NOT NULL," +
+                "  email VARCHAR(150) UNIQUE," +
+                "  phone_number VARCHAR(20)," +
+                "  loyalty_points DECIMAL(10,2) DEFAULT 0.00," +
+                "  registration_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+                ") ENGINE=InnoDB;"
+            ),
+            sql(
+                "CREATE TABLE IF NOT EXISTS orders (" +
+                "  order_id INT AUTO_INCREMENT PRIMARY KEY," +
+                "  customer_id INT NOT NULL," +
+                "  status VARCHAR(20) DEFAULT 'PENDING'," +
+                "  service_type VARCHAR(20) NOT NULL," +
+                "  subtotal DECIMAL(10,3) NOT NULL," +
+                "  tax DECIMAL(10,3) NOT NULL," +
+                "  discount DECIMAL(10,3) DEFAULT 0.00," +
+                "  total_amount DECIMAL(10,3) NOT NULL," +
+                "  special_instructions TEXT," +
+                "  order_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "  completion_time TIMESTAMP NULL," +
+                "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
+                "  CONSTRAINT fk_orders_customer FOREIGN KEY (customer_id) REFERENCES customers(customer_id)" +
+                ") ENGINE=InnoDB;"
+            ),
+            sql(
+                "CREATE TABLE IF NOT EXISTS order_items (" +
+                "  order_item_id INT AUTO_INCREMENT PRIMARY KEY," +
+                "  order_id INT NOT NULL," +
+                "  menu_item_id INT NOT NULL," +
+                "  quantity INT NOT NULL," +
+                "  unit_price DECIMAL(10,3) NOT NULL," +
+                "  total_price DECIMAL(10,3) NOT NULL," +
+                "  customizations TEXT," +
+                "  size VARCHAR(20)," +
+                "  is_hot TINYINT(1)," +
+                "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "  CONSTRAINT fk_orderitems_order FOREIGN KEY (order_id) REFERENCES orders(order_id) ON DELETE CASCADE," +
+                "  CONSTRAINT fk_orderitems_menu FOREIGN KEY (menu_item_id) REFERENCES menu_items(id)" +
+                ") ENGINE=InnoDB;"
+            ),
+            sql(
+                "CREATE TABLE IF NOT EXISTS payments (" +
+                "  payment_id INT AUTO_INCREMENT PRIMARY KEY," +
+                "  order_id INT NOT NULL," +
+                "  payment_method VARCHAR(20) NOT NULL," +
+                "  status VARCHAR(20) DEFAULT 'PENDING'," +
+                "  amount DECIMAL(10,3) NOT NULL," +
+                "  amount_paid DECIMAL(10,3) DEFAULT 0.00," +
+                "  change_given DECIMAL(10,3) DEFAULT 0.00," +
+                "  transaction_reference VARCHAR(100)," +
+                "  card_last_four_digits VARCHAR(4)," +
+                "  failure_reason TEXT," +
+                "  payment_time TIMESTAMP NULL," +
+                "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
+                "  CONSTRAINT fk_payments_order FOREIGN KEY (order_id) REFERENCES orders(order_id)" +
+                ") ENGINE=InnoDB;"
+            ),
+            sql(
+                "CREATE TABLE IF NOT EXISTS ingredients (" +
+                "  ingredient_id INT AUTO_INCREMENT PRIMARY KEY," +
+                "  name VARCHAR(100) NOT NULL," +
+                "  description TEXT," +
+                "  unit VARCHAR(20) NOT NULL," +
+                "  current_stock DECIMAL(10,3) DEFAULT 0.000," +
+                "  minimum_stock DECIMAL(10,3) NOT NULL," +
+                "  maximum_stock DECIMAL(10,3) NOT NULL," +
+                "  cost_per_unit DECIMAL(10,3) NOT NULL," +
+                "  expiration_date DATE," +
+                "  supplier VARCHAR(100)," +
+                "  is_active TINYINT(1) DEFAULT 1," +
+                "  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "  updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP" +
+                ") ENGINE=InnoDB;"
+            ),
+            sql(
+                "CREATE TABLE IF NOT EXISTS menu_item_ingredients (" +
+                "  menu_item_id INT NOT NULL," +
+                "  ingredient_id INT NOT NULL," +
+                "  quantity_required DECIMAL(10,3) NOT NULL," +
+                "  PRIMARY KEY (menu_item_id, ingredient_id)," +
+                "  CONSTRAINT fk_mii_menu FOREIGN KEY (menu_item_id) REFERENCES menu_items(id) ON DELETE CASCADE," +
+                "  CONSTRAINT fk_mii_ing FOREIGN KEY (ingredient_id) REFERENCES ingredients(ingredient_id) ON DELETE CASCADE" +
+                ") ENGINE=InnoDB;"
+            )
+        ), null));
+        list.add(new Migration(2, "Sample menu, customers and ingredients", List.of(
+            sql(
+                "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
+                "('Espresso','Espresso đậm vị',25000.000,'Coffee','Coffee','ESPRESSO',1)," +
+                "('Americano','Espresso pha nước nóng',30000.000,'Coffee','Coffee','AMERICANO',1)," +
+                "('Latte','Espresso với sữa',45000.000,'Coffee','Coffee','LATTE',1)," +
+                "('Cappuccino','Espresso với sữa và foam',40000.000,'Coffee','Coffee','CAPPUCCINO',1)," +
+                "('Macchiato','Espresso với một lớp sữa',42500.000,'Coffee','Coffee','MACCHIATO',1)," +
+                "('Mocha','Espresso với sô-cô-la và sữa',50000.000,'Coffee','Coffee','MOCHA',1)," +
+                "('Frappuccino','Cà phê xay đá',55000.000,'Coffee','Coffee','FRAPPUCCINO',1) " +
+                "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
+            ),
+            sql(
+                "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
+                "('Croissant','Bánh sừng bò bơ',35000.000,'Pastry','Food',NULL,1)," +
+                "('Muffin','Bánh muffin mới nướng',27500.000,'Pastry','Food',NULL,1)," +
+                "('Sandwich','Bánh mì kẹp nướng',65000.000,'Food','Food',NULL,1)," +
+                "('Bánh mì pate','Bánh mì pate truyền thống',25000.000,'Food','Food',NULL,1)," +
+                "('Bánh mì thịt nướng','Bánh mì thịt nướng BBQ',45000.000,'Food','Food',NULL,1)," +
+                "('Pizza mini','Pizza mini 4 mùa',80000.000,'Food','Food',NULL,1) " +
+                "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
+            ),
+            sql(
+                "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
+                "('Cà phê sữa đá','Cà phê pha với sữa đặc',25000.000,'Coffee','Coffee','VIETNAMESE',1)," +
+                "('Cà phê đen đá','Cà phê rang xay nguyên chất',20000.000,'Coffee','Coffee','VIETNAMESE',1)," +
+                "('Cà phê sữa nóng','Cà phê sữa ấm nóng',25000.000,'Coffee','Coffee','VIETNAMESE',1) " +
+                "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
+            ),
+            sql(
+                "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
+                "('Trà đào cam sả','Trà đào với cam sả tươi',35000.000,'Tea','Drink',NULL,1)," +
+                "('Trà sữa trân châu','Trà sữa với trân châu đen',40000.000,'Tea','Drink',NULL,1)," +
+                "('Trà xanh matcha','Trà xanh matcha Nhật Bản',45000.000,'Tea','Drink',NULL,1)," +
+                "('Trà hoa cúc','Trà hoa cúc thảo mộc',30000.000,'Tea','Drink',NULL,1) " +
+                "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
+            ),
+            sql(
+                "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
+                "('Tiramisu','Bánh tiramisu Ý',55000.000,'Dessert','Food',NULL,1)," +
+                "('Cheesecake','Bánh cheesecake New York',60000.000,'Dessert','Food',NULL,1)," +
+                "('Brownie','Bánh brownie sô-cô-la',35000.000,'Dessert','Food',NULL,1)," +
+                "('Ice cream','Kem tươi 3 vị',25000.000,'Dessert','Food',NULL,1) " +
+                "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
+            ),
+            sql(
+                "INSERT INTO menu_items (name, description, base_price, category, item_type, coffee_type, is_available) VALUES " +
+                "('Smoothie dâu','Sinh tố dâu tây tươi',40000.000,'Smoothie','Drink',NULL,1)," +
+                "('Smoothie xoài','Sinh tố xoài nhiệt đới',35000.000,'Smoothie','Drink',NULL,1)," +
+                "('Nước cam tươi','Nước cam vắt tươi',30000.000,'Juice','Drink',NULL,1)," +
+                "('Nước chanh dây','Nước chanh dây mát lạnh',25000.000,'Juice','Drink',NULL,1) " +
+                "ON DUPLICATE KEY UPDATE description=VALUES(description), base_price=VALUES(base_price), category=VALUES(category), item_type=VALUES(item_type), coffee_type=VALUES(coffee_type), is_available=VALUES(is_available)"
+            ),
+            sql(
+                "INSERT IGNORE INTO customers (name, email, phone_number, loyalty_points) VALUES " +
+                "('Le Quoc Bao', 'lequocbao1352005@gmail.com', '0912345678', 25.5), " +
+                "('Jane Smith','jane.smith@email.com','0905123456',15.75)," +
+                "('Bob Johnson','bob.johnson@email.com','0905234567',42.25)," +
+                "('Alice Brown','alice.brown@email.com','0905345678',8.00)," +
+                "('Charlie Wilson','charlie.wilson@email.com','0905456789',33.50)"
+            ),
+            sql(
+                "INSERT IGNORE INTO ingredients (name, description, unit, current_stock, minimum_stock, maximum_stock, cost_per_unit, supplier, is_active) VALUES " +
+                "('Coffee Beans - Arabica','Premium Arabica coffee beans','KILOGRAMS',50.0,10.0,100.0,12.50,'Coffee Suppliers Inc',1)," +
+                "('Coffee Beans - Robusta','Strong Robusta coffee beans','KILOGRAMS',30.0,5.0,80.0,10.00,'Coffee Suppliers Inc',1)," +
+                "('Milk','Fresh whole milk','LITERS',25.0,5.0,50.0,1.50,'Local Dairy',1)," +
+                "('Sugar','White granulated sugar','KILOGRAMS',15.0,3.0,30.0,2.00,'Sweet Supplies',1)," +
+                "('Chocolate Syrup','Premium chocolate syrup','LITERS',8.0,2.0,20.0,5.50,'Chocolate Co',1)," +
+                "('Vanilla Extract','Pure vanilla extract','LITERS',3.0,1.0,10.0,15.00,'Flavor House',1)"
+            )
+        ), null, true));
+        // MySQL không có CREATE INDEX IF NOT EXISTS: optional để bỏ qua index đã tồn tại
+        list.add(new Migration(3, "Keyset pagination indexes for orders, payments and customers", List.of(
+            optional("CREATE INDEX idx_orders_order_time ON orders(order_time, order_id)"),
+            optional("CREATE INDEX idx_payments_created_at ON payments(created_at, payment_id)"),
+            optional("CREATE INDEX idx_customers_name ON customers(name, customer_id)")
+        ), null));
+        list.add(new Migration(4, "Daily and hourly sales rollup tables", List.of(
+            sql("CREATE TABLE IF NOT EXISTS sales_daily (" +
+                "  sales_date DATE NOT NULL," +
+                "  service_type VARCHAR(20) NOT NULL," +
+                "  status VARCHAR(20) NOT NULL," +
+                "  order_count INT NOT NULL DEFAULT 0," +
+                "  revenue DECIMAL(14,3) NOT NULL DEFAULT 0," +
+                "  PRIMARY KEY (sales_date, service_type, status)" +
+                ") ENGINE=InnoDB"),
+            sql("CREATE TABLE IF NOT EXISTS sales_hourly (" +
+                "  sales_date DATE NOT NULL," +
+                "  sales_hour TINYINT NOT NULL," +
+                "  service_type VARCHAR(20) NOT NULL," +
+                "  status VARCHAR(20) NOT NULL," +
+                "  order_count INT NOT NULL DEFAULT 0," +
+                "  revenue DECIMAL(14,3) NOT NULL DEFAULT 0," +
+                "  PRIMARY KEY (sales_date, sales_hour, service_type, status)" +
+                ") ENGINE=InnoDB"),
+            sql("INSERT INTO sales_daily (sales_date, service_type, status, order_count, revenue) " +
+                "SELECT DATE(order_time), service_type, status, COUNT(*), COALESCE(SUM(total_amount), 0) " +
+                "FROM orders GROUP BY DATE(order_time), service_type, status"),
+            sql("INSERT INTO sales_hourly (sales_date, sales_hour, service_type, status, order_count, revenue) " +
+                "SELECT DATE(order_time), HOUR(order_time), service_type, status, COUNT(*), COALESCE(SUM(total_amount), 0) " +
+                "FROM orders GROUP BY DATE(order_time), HOUR(order_time), service_type, status")
+        ), null));
+        list.add(new Migration(5, "Archive tables for old orders, order items and payments", List.of(
+            sql("CREATE TABLE IF NOT EXISTS orders_archive (" +
+                "  order_id INT PRIMARY KEY," +
+                "  customer_id INT NOT NULL," +
+                "  status VARCHAR(20)," +
+                "  service_type VARCHAR(20) NOT NULL," +
+                "  subtotal DECIMAL(10,3) NOT NULL," +
+                "  tax DECIMAL(10,3) NOT NULL," +
+                "  discount DECIMAL(10,3)," +
+                "  total_amount DECIMAL(10,3) NOT NULL," +
+                "  special_instructions TEXT," +
+                "  order_time TIMESTAMP NULL," +
+                "  completion_time TIMESTAMP NULL," +
+                "  created_at TIMESTAMP NULL," +
+                "  updated_at TIMESTAMP NULL," +
+                "  archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "  INDEX idx_orders_archive_order_time (order_time)," +
+                "  INDEX idx_orders_archive_customer_id (customer_id)" +
+                ") ENGINE=InnoDB"),
+            sql("CREATE TABLE IF NOT EXISTS order_items_archive (" +
+                "  order_item_id INT PRIMARY KEY," +
+                "  order_id INT NOT NULL," +
+                "  menu_item_id INT NOT NULL," +
+                "  quantity INT NOT NULL," +
+                "  unit_price DECIMAL(10,3) NOT NULL," +
+                "  total_price DECIMAL(10,3) NOT NULL," +
+                "  customizations TEXT," +
+                "  size VARCHAR(20)," +
+                "  is_hot TINYINT(1)," +
+                "  created_at TIMESTAMP NULL," +
+                "  INDEX idx_order_items_archive_order_id (order_id)" +
+                ") ENGINE=InnoDB"),
+            sql("CREATE TABLE IF NOT EXISTS payments_archive (" +
+                "  payment_id INT PRIMARY KEY," +
+                "  order_id INT NOT NULL," +
+                "  payment_method VARCHAR(20) NOT NULL," +
+                "  status VARCHAR(20)," +
+                "  amount DECIMAL(10,3) NOT NULL," +
+                "  amount_paid DECIMAL(10,3)," +
+                "  change_given DECIMAL(10,3)," +
+                "  transaction_reference VARCHAR(100)," +
+                "  card_last_four_digits VARCHAR(4)," +
+                "  failure_reason TEXT," +
+                "  payment_time TIMESTAMP NULL," +
+                "  created_at TIMESTAMP NULL," +
+                "  updated_at TIMESTAMP NULL," +
+                "  INDEX idx_payments_archive_order_id (order_id)" +
+                ") ENGINE=InnoDB")
+        ), null));
+        list.add(new Migration(6, "Id block sequences for orders, payments, customers and ingredients", List.of(
+            sql("CREATE TABLE IF NOT EXISTS id_sequences (" +
+                "  name VARCHAR(64) PRIMARY KEY," +
+                "  next_value BIGINT NOT NULL" +
+                ") ENGINE=InnoDB"),
+            sql("INSERT INTO id_sequences (name, next_value) " +
+                "SELECT 'orders', COALESCE(MAX(id), 0) + 1 FROM (SELECT MAX(order_id) AS id FROM orders UNION ALL SELECT MAX(order_id) FROM orders_archive) ids"),
+            sql("INSERT INTO id_sequences (name, next_value) " +
+                "SELECT 'payments', COALESCE(MAX(id), 0) + 1 FROM (SELECT MAX(payment_id) AS id FROM payments UNION ALL SELECT MAX(payment_id) FROM payments_archive) ids"),
+            sql("INSERT INTO id_sequences (name, next_value) " +
+                "SELECT 'customers', COALESCE(MAX(id), 0) + 1 FROM (SELECT MAX(customer_id) AS id FROM customers) ids"),
+            sql("INSERT INTO id_sequences (name, next_value) " +
+                "SELECT 'ingredients', COALESCE(MAX(id), 0) + 1 FROM (SELECT MAX(ingredient_id) AS id FROM ingredients) ids")
+        ), null));
+        // DDL của MySQL tự commit: nếu lần chạy trước dừng sau ALTER thì cột đã có, nên chỉ thêm khi
+        // information_schema chưa thấy cột; index optional như V3 (không có IF NOT EXISTS)
+        list.add(new Migration(7, "Idempotency key on orders", List.of(
+            sql("SET @coffee_shop_ddl = IF((SELECT COUNT(*) FROM information_schema.columns " +
+                "WHERE table_schema = DATABASE() AND table_name = 'orders' AND column_name = 'idempotency_key') = 0, " +
+                "'ALTER TABLE orders ADD COLUMN idempotency_key VARCHAR(64) NULL', 'DO 0')"),
+            sql("PREPARE coffee_shop_ddl FROM @coffee_shop_ddl"),
+            sql("EXECUTE coffee_shop_ddl"),
+            sql("DEALLOCATE PREPARE coffee_shop_ddl"),
+            optional("CREATE UNIQUE INDEX idx_orders_idempotency_key ON orders(idempotency_key)")
+        ), null));
+        return list;
+    }
+}
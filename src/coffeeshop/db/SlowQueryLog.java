@@ -0,0 +1,209 @@
+package coffeeshop.db;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SlowQueryLog
+ * ------------
+ * Ghi các câu lệnh chạy lâu hơn db.slowQuery.thresholdMs vào file log xoay vòng
+ * (db.slowQuery.file, db.slowQuery.maxBytes, db.slowQuery.maxFiles).
+ * Mỗi dòng log gồm SQL, giá trị bind (email/số điện thoại được che), thời gian và số dòng.
+ * Lần đầu một câu SQL (đã chuẩn hóa) bị ghi, kế hoạch thực thi được lấy bằng
+ * EXPLAIN QUERY PLAN (SQLite) hoặc EXPLAIN (MySQL) và ghi kèm.
+ */
+final class SlowQueryLog {
+    private static final Pattern EMAIL = Pattern.compile("([A-Za-z0-9._%+-])[A-Za-z0-9._%+-]*(@[A-Za-z0-9.-]+\\.[A-Za-z]{2,})");
+    private static final Pattern PHONE = Pattern.compile("\\+?\\d[\\d .-]{6,}(\\d{3})");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'((?:[^']|'')*)'");
+    private static final int MAX_BIND_LENGTH = 100;
+
+    private static volatile long thresholdNanos = -1;
+    private static Path file;
+    private static long maxBytes;
+    private static int maxFiles;
+    private static boolean explain;
+    private static boolean sqlite;
+    private static final Map<String, Boolean> EXPLAINED = new ConcurrentHashMap<>();
+
+    private SlowQueryLog() {}
+
+    /** thresholdMs &lt; 0 tắt log. */
+    static synchronized void configure(long thresholdMs, String path, long maxBytesPerFile, int files,
+                                       boolean explainPlans, boolean isSqlite) {
+        thresholdNanos = thresholdMs < 0 ? -1 : thresholdMs * 1_000_000L;
+        file = Paths.get(path);
+        maxBytes = Math.max(4096, maxBytesPerFile);
+        maxFiles = Math.max(1, files);
+        explain = explainPlans;
+        sqlite = isSqlite;
+    }
+
+    static boolean isEnabled() {
+        return thresholdNanos >= 0;
+    }
+
+    static boolean isSlow(long nanos) {
+        long t = thresholdNanos;
+        return t >= 0 && nanos >= t;
+    }
+
+    /**
+     * Ghi một câu lệnh chậm. conn là kết nối đang giữ (để chạy EXPLAIN), binds có thể null.
+     */
+    static void record(Connection conn, String sql, Object[] binds, long nanos, long rows, String caller) {
+        if (!isSlow(nanos) || sql == null) return;
+        StringBuilder sb = new StringBuilder();
+        sb.append(LocalDateTime.now()).append(" | ")
+          .append(String.format(Locale.ROOT, "%.1f ms", nanos / 1e6)).append(" | rows=").append(rows)
+          .append(" | ").append(caller).append(System.lineSeparator());
+        sb.append("  SQL: ").append(redactLiterals(sql.replaceAll("\\s+", " ").trim())).append(System.lineSeparator());
+        if (binds != null && binds.length > 0) {
+            sb.append("  Binds: ").append(describeBinds(binds)).append(System.lineSeparator());
+        }
+        if (explain && EXPLAINED.putIfAbsent(JdbcMetrics.normalize(sql), Boolean.TRUE) == null) {
+            for (String line : explainPlan(conn, sql, binds)) {
+                sb.append("  ").append(line).append(System.lineSeparator());
+            }
+        }
+        write(sb.toString());
+    }
+
+    // ==========================
+    // Che dữ liệu cá nhân
+    // ==========================
+    /** Chỉ che bên trong chuỗi '...' của SQL; số (giá tiền, id) giữ nguyên. */
+    static String redactLiterals(String sql) {
+        Matcher m = STRING_LITERAL.matcher(sql);
+        StringBuffer out = new StringBuffer();
+        while (m.find()) {
+            m.appendReplacement(out, Matcher.quoteReplacement("'" + redact(m.group(1)) + "'"));
+        }
+        m.appendTail(out);
+        return out.toString();
+    }
+
+    static String redact(String value) {
+        if (value == null) return null;
+        String v = EMAIL.matcher(value).replaceAll("$1***$2");
+        Matcher m = PHONE.matcher(v);
+        StringBuffer out = new StringBuffer();
+        while (m.find()) {
+            m.appendReplacement(out, "***" + m.group(1));
+        }
+        m.appendTail(out);
+        return out.toString();
+    }
+
+    private static String describeBinds(Object[] binds) {
+        List<String> parts = new ArrayList<>(binds.length);
+        for (Object b : binds) {
+            if (b == null) {
+                parts.add("NULL");
+            } else if (b instanceof CharSequence) {
+                String s = redact(b.toString());
+                if (s.length() > MAX_BIND_LENGTH) s = s.substring(0, MAX_BIND_LENGTH) + "...";
+                parts.add("'" + s + "'");
+            } else if (b instanceof Number || b instanceof Boolean || b instanceof java.util.Date
+                    || b instanceof java.time.temporal.Temporal) {
+                parts.add(b.toString());
+            } else {
+                parts.add("<" + b.getClass().getSimpleName() + ">");
+            }
+        }
+        return parts.toString();
+    }
+
+    // ==========================
+    // EXPLAIN
+    // ==========================
+    private static List<String> explainPlan(Connection conn, String sql, Object[] binds) {
+        List<String> lines = new ArrayList<>();
+        String upper = sql.trim().toUpperCase(Locale.ROOT);
+        if (!(upper.startsWith("SELECT") || upper.startsWith("WITH") || upper.startsWith("UPDATE")
+                || upper.startsWith("DELETE") || upper.startsWith("INSERT"))) {
+            return lines;
+        }
+        lines.add("Plan:");
+        try {
+            // Chạy trên kết nối vật lý để EXPLAIN không bị đo/ghi log lại
+            Connection physical = conn.unwrap(Connection.class);
+            try (PreparedStatement ps = physical.prepareStatement((sqlite ? "EXPLAIN QUERY PLAN " : "EXPLAIN ") + sql)) {
+                if (binds != null) {
+                    for (int i = 0; i < binds.length; i++) {
+                        ps.setObject(i + 1, binds[i]);
+                    }
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    ResultSetMetaData md = rs.getMetaData();
+                    int cols = md.getColumnCount();
+                    while (rs.next()) {
+                        StringBuilder row = new StringBuilder("  ");
+                        for (int c = 1; c <= cols; c++) {
+                            if (sqlite && c < cols) continue; // SQLite: cột cuối là mô tả (SCAN/SEARCH ...)
+                            if (c > 1 && !sqlite) row.append(" | ");
+                            if (!sqlite) row.append(md.getColumnLabel(c)).append('=');
+                            row.append(rs.getString(c));
+                        }
+                        lines.add(row.toString());
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            lines.add("  (EXPLAIN failed: " + e.getMessage() + ")");
+        }
+        return lines;
+    }
+
+    // ==========================
+    // File xoay vòng
+    // ==========================
+    private static synchronized void write(String entry) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            if (Files.exists(file) && Files.size(file) + entry.length() > maxBytes) {
+                rotate();
+            }
+            try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                w.write(entry);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write slow query log: " + e.getMessage());
+        }
+    }
+
+    /** slow-query.log -> slow-query.log.1 -> ... -> slow-query.log.(maxFiles-1); bản cũ nhất bị xóa. */
+    private static void rotate() throws IOException {
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            Path src = i == 1 ? file : Paths.get(file + "." + (i - 1));
+            Path dst = Paths.get(file + "." + i);
+            if (Files.exists(src)) {
+                Files.move(src, dst, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles == 1) {
+            Files.deleteIfExists(file);
+        }
+    }
+}
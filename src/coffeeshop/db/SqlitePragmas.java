@@ -0,0 +1,117 @@
+package coffeeshop.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * SqlitePragmas
+ * -------------
+ * Đọc các thiết lập db.sqlite.* (journal_mode, synchronous, cache_size, mmap_size, page_size,
+ * temp_store, busy_timeout) và áp dụng khi mở kết nối SQLite.
+ * Kết nối chỉ đọc có thể ghi đè bằng db.sqlite.read.* (ví dụ mmap lớn cho dashboard),
+ * còn các đường nạp dữ liệu hàng loạt dùng db.sqlite.bulk.synchronous.
+ */
+class SqlitePragmas {
+    /** Thứ tự áp dụng: page_size phải đặt trước journal_mode để có hiệu lực trên DB mới. */
+    static final String[] NAMES = {
+        "page_size", "journal_mode", "synchronous", "cache_size", "mmap_size", "temp_store", "busy_timeout"
+    };
+
+    private static final Set<String> JOURNAL_MODES = Set.of("DELETE", "TRUNCATE", "PERSIST", "MEMORY", "WAL", "OFF");
+    private static final Set<String> SYNC_MODES = Set.of("OFF", "NORMAL", "FULL", "EXTRA", "0", "1", "2", "3");
+    private static final Set<String> TEMP_STORES = Set.of("DEFAULT", "FILE", "MEMORY", "0", "1", "2");
+
+    private final Map<String, String> write = new LinkedHashMap<>();
+    private final Map<String, String> read = new LinkedHashMap<>();
+    private final String bulkSynchronous;
+
+    SqlitePragmas(Properties props, boolean walProfile) {
+        if (walProfile) {
+            write.put("journal_mode", "WAL");
+            write.put("synchronous", "NORMAL");
+            write.put("busy_timeout", "5000");
+        }
+        for (String name : NAMES) {
+            String v = validate(name, props.getProperty("db.sqlite." + name));
+            if (v != null) write.put(name, v);
+        }
+        read.putAll(write);
+        for (String name : NAMES) {
+            String v = validate(name, props.getProperty("db.sqlite.read." + name));
+            if (v != null) read.put(name, v);
+        }
+        this.bulkSynchronous = validate("synchronous", props.getProperty("db.sqlite.bulk.synchronous", "OFF"));
+    }
+
+    private static String validate(String name, String raw) {
+        if (raw == null || raw.isBlank()) return null;
+        String v = raw.trim().toUpperCase(Locale.ROOT);
+        boolean ok;
+        switch (name) {
+            case "journal_mode": ok = JOURNAL_MODES.contains(v); break;
+            case "synchronous": ok = SYNC_MODES.contains(v); break;
+            case "temp_store": ok = TEMP_STORES.contains(v); break;
+            default: ok = v.matches("-?\\d+"); break;
+        }
+        if (!ok) {
+            System.err.println("Ignoring invalid db.sqlite." + name + ": " + raw);
+            return null;
+        }
+        return v;
+    }
+
+    void apply(Connection conn, boolean readOnly) throws SQLException {
+        Map<String, String> settings = readOnly ? read : write;
+        try (Statement s = conn.createStatement()) {
+            for (Map.Entry<String, String> e : settings.entrySet()) {
+                s.execute("PRAGMA " + e.getKey() + " = " + e.getValue() + ";");
+            }
+        }
+    }
+
+    /** Giảm độ bền khi nạp dữ liệu mẫu/import; trả về giá trị cũ để khôi phục. */
+    String relaxDurability(Connection conn) throws SQLException {
+        if (bulkSynchronous == null) return null;
+        String previous = query(conn, "synchronous");
+        try (Statement s = conn.createStatement()) {
+            s.execute("PRAGMA synchronous = " + bulkSynchronous + ";");
+        }
+        return previous;
+    }
+
+    void restoreDurability(Connection conn, String previous) throws SQLException {
+        if (previous == null) return;
+        try (Statement s = conn.createStatement()) {
+            s.execute("PRAGMA synchronous = " + previous + ";");
+        }
+    }
+
+    static String query(Connection conn, String name) throws SQLException {
+        try (Statement s = conn.createStatement();
+             ResultSet rs = s.executeQuery("PRAGMA " + name + ";")) {
+            return rs.next() ? rs.getString(1) : "?";
+        }
+    }
+
+    /** In giá trị thực tế của các PRAGMA trên kết nối (sau khi đã áp dụng cấu hình). */
+    static void report(Connection conn, String label) {
+        StringBuilder sb = new StringBuilder("SQLite settings (" + label + "):");
+        for (String name : NAMES) {
+            String value;
+            try {
+                value = query(conn, name);
+            } catch (SQLException e) {
+                value = "n/a";
+            }
+            sb.append("\n  ").append(String.format("%-13s= %s", name, value));
+        }
+        System.out.println(sb);
+    }
+}
@@ -0,0 +1,196 @@
+package coffeeshop.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SqliteWriter
+ * ------------
+ * Luồng ghi duy nhất cho SQLite ở chế độ WAL.
+ * Các tác vụ ghi được xếp hàng và gom thành nhóm (group commit): tối đa maxBatch tác vụ
+ * hoặc chờ tối đa maxDelayMs, sau đó commit một lần. Mỗi tác vụ chạy trong savepoint riêng
+ * nên một tác vụ lỗi chỉ rollback phần của nó.
+ *
+ * Tác vụ không được tự commit/rollback hay đổi autocommit trên kết nối được truyền vào.
+ */
+public class SqliteWriter {
+
+    /** Một đơn vị ghi chạy trên kết nối của luồng ghi. */
+    public interface WriteTask<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    private static final class Pending<T> {
+        final WriteTask<T> task;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+
+        Pending(WriteTask<T> task) {
+            this.task = task;
+        }
+    }
+
+    private final ConnectionPool writePool;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private Connection current;
+
+    private final AtomicLong taskCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong failedTasks = new AtomicLong();
+
+    public SqliteWriter(ConnectionPool writePool, int maxBatch, long maxDelayMs) {
+        this.writePool = writePool;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMs));
+        this.thread = new Thread(this::run, "sqlite-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // ==========================
+    // API
+    // ==========================
+    public <T> CompletableFuture<T> submit(WriteTask<T> task) {
+        Pending<T> p = new Pending<>(task);
+        if (!running) {
+            p.future.completeExceptionally(new SQLException("SQLite writer is stopped"));
+            return p.future;
+        }
+        queue.add(p);
+        return p.future;
+    }
+
+    /** Gửi tác vụ và chờ kết quả sau khi nhóm chứa nó đã commit. */
+    public <T> T execute(WriteTask<T> task) throws SQLException {
+        if (Thread.currentThread() == thread && current != null) {
+            // Đang ở trong luồng ghi: chạy trực tiếp trong nhóm hiện tại
+            return task.execute(current);
+        }
+        try {
+            return submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for write", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            throw new SQLException(cause);
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending<?> p;
+        while ((p = queue.poll()) != null) {
+            p.future.completeExceptionally(new SQLException("SQLite writer is stopped"));
+        }
+    }
+
+    // ==========================
+    // Luồng ghi
+    // ==========================
+    private void run() {
+        List<Pending<?>> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                Pending<?> first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending<?> next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (!running) break;
+                continue;
+            }
+            commitBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void commitBatch(List<Pending<?>> batch) {
+        List<Pending<?>> succeeded = new ArrayList<>(batch.size());
+        try (Connection conn = writePool.borrow()) {
+            conn.setAutoCommit(false);
+            current = conn;
+            for (Pending<?> p : batch) {
+                if (runInSavepoint(conn, p)) {
+                    succeeded.add(p);
+                }
+            }
+            current = null;
+            conn.commit();
+            batchCount.incrementAndGet();
+            taskCount.addAndGet(batch.size());
+            for (Pending<?> p : succeeded) {
+                complete(p);
+            }
+        } catch (SQLException e) {
+            current = null;
+            System.err.println("Group commit failed: " + e.getMessage());
+            for (Pending<?> p : batch) {
+                if (!p.future.isDone()) {
+                    failedTasks.incrementAndGet();
+                    p.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private <T> boolean runInSavepoint(Connection conn, Pending<T> p) throws SQLException {
+        Savepoint sp = conn.setSavepoint();
+        try {
+            p.result = p.task.execute(conn);
+            conn.releaseSavepoint(sp);
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback(sp);
+            failedTasks.incrementAndGet();
+            p.future.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    private static <T> void complete(Pending<T> p) {
+        p.future.complete(p.result);
+    }
+
+    // ==========================
+    // Thống kê
+    // ==========================
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public String toString() {
+        long batches = batchCount.get();
+        double avg = batches == 0 ? 0.0 : (double) taskCount.get() / batches;
+        return String.format("SQLite writer | tasks: %d | commits: %d | avg group: %.1f | failed: %d | queued: %d",
+                taskCount.get(), batches, avg, failedTasks.get(), queue.size());
+    }
+}
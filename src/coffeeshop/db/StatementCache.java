@@ -0,0 +1,229 @@
+package coffeeshop.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StatementCache
+ * --------------
+ * Cache LRU các PreparedStatement của một kết nối vật lý, theo khóa (SQL + tuỳ chọn result set/generated keys).
+ * DAO vẫn gọi conn.prepareStatement(sql) và close() như bình thường: close() chỉ trả statement về cache.
+ * Statement đang được dùng thì không nằm trong cache, nên hai lần prepare lồng nhau cùng SQL vẫn an toàn.
+ * Tuỳ chỉnh của người mượn (fetch size, max rows, query timeout, fetch direction...) được trả về mặc định
+ * trước khi vào lại cache; tuỳ chỉnh không đọc lại được thì statement bị đóng thay vì cache.
+ */
+class StatementCache {
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    private final int maxSize;
+    private final Map<String, PreparedStatement> idle;
+
+    StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.idle = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Trả về statement (proxy) cho lời gọi prepareStatement; dùng lại statement trong cache nếu có.
+     */
+    PreparedStatement prepare(Connection physical, Connection owner, Method method, Object[] args) throws SQLException {
+        String key = keyOf(args);
+        PreparedStatement raw;
+        synchronized (this) {
+            raw = idle.remove(key);
+        }
+        if (raw != null) {
+            HITS.increment();
+        } else {
+            MISSES.increment();
+            try {
+                raw = (PreparedStatement) method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+                throw new SQLException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new SQLException(e);
+            }
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new CachedStatementHandler(key, raw, owner));
+    }
+
+    private void checkin(String key, PreparedStatement raw) {
+        PreparedStatement toClose = null;
+        synchronized (this) {
+            if (idle.containsKey(key)) {
+                toClose = raw;
+            } else {
+                idle.put(key, raw);
+                if (idle.size() > maxSize) {
+                    Iterator<PreparedStatement> it = idle.values().iterator();
+                    toClose = it.next();
+                    it.remove();
+                    EVICTIONS.increment();
+                }
+            }
+        }
+        closeQuietly(toClose);
+    }
+
+    synchronized void closeAll() {
+        for (PreparedStatement ps : idle.values()) {
+            closeQuietly(ps);
+        }
+        idle.clear();
+    }
+
+    private static String keyOf(Object[] args) {
+        String sql = (String) args[0];
+        if (args.length == 1) return sql;
+        return sql + '\u0000' + Arrays.deepToString(Arrays.copyOfRange(args, 1, args.length));
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        if (ps == null) return;
+        try {
+            ps.close();
+        } catch (SQLException ignore) {}
+    }
+
+    // ==========================
+    // Thống kê
+    // ==========================
+    static long getHits() { return HITS.sum(); }
+    static long getMisses() { return MISSES.sum(); }
+    static long getEvictions() { return EVICTIONS.sum(); }
+
+    static String describe() {
+        long hits = HITS.sum();
+        long total = hits + MISSES.sum();
+        double ratio = total == 0 ? 0.0 : hits * 100.0 / total;
+        return String.format("Statement cache | hits: %d | misses: %d | evictions: %d | hit ratio: %.1f%%",
+                hits, MISSES.sum(), EVICTIONS.sum(), ratio);
+    }
+
+    /** Statement mượn từ cache; close() trả nó về thay vì đóng thật. */
+    private class CachedStatementHandler implements InvocationHandler {
+        private final String key;
+        private final PreparedStatement raw;
+        private final Connection owner;
+        private final List<ResultSet> openResults = new ArrayList<>();
+        private boolean closed;
+        // Giá trị trước lần tuỳ chỉnh đầu: fetch size, max rows, query timeout, fetch direction, max field size
+        private int[] defaults;
+        // Đã đổi tuỳ chọn không có getter (escape processing, cursor name, poolable): không cache lại
+        private boolean discard;
+
+        CachedStatementHandler(String key, PreparedStatement raw, Connection owner) {
+            this.key = key;
+            this.raw = raw;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        recycle();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || raw.isClosed();
+                case "getConnection":
+                    return owner;
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(raw)) return raw;
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(raw)) return true;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + raw + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            switch (method.getName()) {
+                case "setFetchSize":
+                case "setMaxRows":
+                case "setLargeMaxRows":
+                case "setQueryTimeout":
+                case "setFetchDirection":
+                case "setMaxFieldSize":
+                    if (defaults == null) {
+                        defaults = new int[] { raw.getFetchSize(), raw.getMaxRows(), raw.getQueryTimeout(),
+                                raw.getFetchDirection(), raw.getMaxFieldSize() };
+                    }
+                    break;
+                case "setEscapeProcessing":
+                case "setCursorName":
+                case "setPoolable":
+                    discard = true;
+                    break;
+                default:
+                    break;
+            }
+            Object result;
+            try {
+                result = method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof ResultSet) {
+                openResults.add((ResultSet) result);
+            }
+            return result;
+        }
+
+        private void recycle() {
+            try {
+                for (ResultSet rs : openResults) {
+                    rs.close();
+                }
+                openResults.clear();
+                if (discard) {
+                    closeQuietly(raw);
+                    return;
+                }
+                if (defaults != null) {
+                    raw.setFetchSize(defaults[0]);
+                    raw.setMaxRows(defaults[1]);
+                    raw.setQueryTimeout(defaults[2]);
+                    raw.setFetchDirection(defaults[3]);
+                    raw.setMaxFieldSize(defaults[4]);
+                }
+                raw.clearParameters();
+                raw.clearBatch();
+                raw.clearWarnings();
+                checkin(key, raw);
+            } catch (SQLException e) {
+                closeQuietly(raw);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package coffeeshop.db;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transaction
+ * -----------
+ * Transaction đang mở của {@link TransactionTemplate} trên luồng hiện tại.
+ * Trong phạm vi transaction, DatabaseConnection.getConnection()/getReadConnection()/executeWrite()
+ * của mọi DAO đều dùng chung kết nối này; close() của DAO không trả kết nối về pool,
+ * còn commit/rollback/setAutoCommit bị từ chối vì do TransactionTemplate quản lý.
+ * Lỗi tạm thời của kết nối này và của statement tạo từ nó được ghi nhận ngay tại đây (không phụ thuộc
+ * JdbcMetrics có bật hay không), để TransactionTemplate chạy lại cả khối kể cả khi DAO đã nuốt lỗi.
+ */
+public final class Transaction {
+    private final Connection connection;
+    private final Connection participant;
+    /** Lỗi tạm thời (BUSY/deadlock) mà DAO đã bắt và nuốt; dùng để quyết định thử lại cả transaction. */
+    private volatile SQLException transientFailure;
+    /** Tác vụ chạy sau khi transaction commit; bỏ đi nếu rollback. */
+    private final List<Runnable> afterCommit = new ArrayList<>();
+
+    Transaction(Connection connection) {
+        this.connection = connection;
+        this.participant = (Connection) Proxy.newProxyInstance(
+                Transaction.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            return null;
+                        case "commit":
+                        case "setAutoCommit":
+                            throw new SQLException("Transaction is managed by TransactionTemplate");
+                        case "rollback":
+                            if (args == null || args.length == 0) {
+                                throw new SQLException("Transaction is managed by TransactionTemplate");
+                            }
+                            break;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Transaction[" + connection + "]";
+                        default:
+                            break;
+                    }
+                    Object result = invokeNoting(connection, method, args);
+                    return result instanceof Statement ? watch((Statement) result) : result;
+                });
+    }
+
+    /** Statement của transaction: getConnection() trả về kết nối tham gia, lỗi được ghi nhận trước khi ném tiếp. */
+    private Statement watch(Statement stmt) {
+        Class<?> type = stmt instanceof CallableStatement ? CallableStatement.class
+                : stmt instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(
+                Transaction.class.getClassLoader(),
+                new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConnection":
+                            return participant;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Transaction[" + stmt + "]";
+                        default:
+                            return invokeNoting(stmt, method, args);
+                    }
+                });
+    }
+
+    private Object invokeNoting(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                noteFailure((SQLException) cause);
+            }
+            throw cause;
+        }
+    }
+
+    void noteFailure(SQLException e) {
+        if (transientFailure == null && RetryPolicy.classify(e) != null) {
+            transientFailure = e;
+        }
+    }
+
+    SQLException getTransientFailure() {
+        return transientFailure;
+    }
+
+    /** Đăng ký tác vụ chạy sau khi transaction commit (vd. cập nhật bộ đếm trong bộ nhớ). */
+    public void afterCommit(Runnable action) {
+        afterCommit.add(action);
+    }
+
+    void runAfterCommit() {
+        DatabaseConnection.runHooks(afterCommit);
+        afterCommit.clear();
+    }
+
+    /** Kết nối dùng chung trong transaction; close() trên kết nối này không có tác dụng. */
+    public Connection getConnection() {
+        return participant;
+    }
+
+    public Savepoint savepoint() throws SQLException {
+        return connection.setSavepoint();
+    }
+
+    public Savepoint savepoint(String name) throws SQLException {
+        return connection.setSavepoint(name);
+    }
+
+    public void rollbackTo(Savepoint savepoint) throws SQLException {
+        connection.rollback(savepoint);
+        TransactionTemplate.SAVEPOINT_ROLLBACKS.increment();
+    }
+
+    public void release(Savepoint savepoint) throws SQLException {
+        connection.releaseSavepoint(savepoint);
+    }
+
+    /**
+     * Chạy một phần công việc trong savepoint: lỗi chỉ rollback phần này rồi ném tiếp,
+     * phần còn lại của transaction vẫn có thể commit nếu nơi gọi bắt lỗi.
+     */
+    public <T> T inSavepoint(TransactionTemplate.TransactionCallback<T> callback) throws SQLException {
+        Savepoint sp = connection.setSavepoint();
+        int hooks = afterCommit.size();
+        try {
+            T result = callback.doInTransaction(this);
+            connection.releaseSavepoint(sp);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            rollbackTo(sp);
+            // Phần bị rollback không được chạy tác vụ sau commit của nó
+            afterCommit.subList(hooks, afterCommit.size()).clear();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package coffeeshop.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TransactionTemplate
+ * -------------------
+ * Gom nhiều lời gọi DAO thành một transaction (một lần commit):
+ * <pre>
+ * int orderId = TransactionTemplate.inTransaction(tx -&gt; {
+ *     int id = orderDAO.createOrder(order);
+ *     paymentDAO.createPayment(payment);
+ *     return id;
+ * });
+ * </pre>
+ * Kết nối được gắn với luồng hiện tại nên DAO không cần đổi chữ ký. Lỗi (SQLException hoặc
+ * RuntimeException) làm rollback toàn bộ; gọi lồng nhau chạy trong savepoint của transaction ngoài.
+ * Với profile WAL của SQLite cả khối chạy như một tác vụ của luồng ghi.
+ *
+ * Khi rollback vì lỗi tạm thời (SQLITE_BUSY, deadlock...) cả khối được chạy lại theo {@link RetryPolicy},
+ * kể cả khi DAO đã bắt lỗi và chỉ trả về -1/false (callback trả về bình thường cũng không commit);
+ * vì vậy callback có thể chạy nhiều lần.
+ */
+public final class TransactionTemplate {
+
+    public interface TransactionCallback<T> {
+        T doInTransaction(Transaction tx) throws SQLException;
+    }
+
+    private static final ThreadLocal<Transaction> CURRENT = new ThreadLocal<>();
+
+    private static final LongAdder COMMITS = new LongAdder();
+    private static final LongAdder ROLLBACKS = new LongAdder();
+    private static final LongAdder NESTED = new LongAdder();
+    static final LongAdder SAVEPOINT_ROLLBACKS = new LongAdder();
+    private static final LatencyHistogram DURATION = new LatencyHistogram();
+
+    private TransactionTemplate() {}
+
+    public static <T> T inTransaction(TransactionCallback<T> callback) throws SQLException {
+        Transaction outer = CURRENT.get();
+        if (outer != null) {
+            NESTED.increment();
+            return outer.inSavepoint(callback);
+        }
+        long start = System.nanoTime();
+        // Transaction của lần chạy cuối (lần đã commit) để chạy các tác vụ afterCommit
+        Transaction[] last = new Transaction[1];
+        try {
+            T result = RetryPolicy.get().execute(() -> {
+                SqliteWriter writer = DatabaseConnection.getWriter();
+                if (writer != null) {
+                    return writer.execute(conn -> runBound(conn, callback, last));
+                }
+                return runOnPooledConnection(callback, last);
+            });
+            COMMITS.increment();
+            last[0].runAfterCommit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            ROLLBACKS.increment();
+            throw e;
+        } finally {
+            DURATION.record(System.nanoTime() - start);
+        }
+    }
+
+    private static <T> T runOnPooledConnection(TransactionCallback<T> callback, Transaction[] last) throws SQLException {
+        Connection conn = DatabaseConnection.getConnection();
+        if (conn == null) {
+            throw new SQLException("No database connection available");
+        }
+        try (conn) {
+            conn.setAutoCommit(false);
+            try {
+                T result = runBound(conn, callback, last);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static <T> T runBound(Connection conn, TransactionCallback<T> callback, Transaction[] last) throws SQLException {
+        Transaction tx = new Transaction(conn);
+        last[0] = tx;
+        CURRENT.set(tx);
+        try {
+            T result = callback.doInTransaction(tx);
+            SQLException swallowed = tx.getTransientFailure();
+            if (swallowed != null) {
+                // DAO đã nuốt lỗi BUSY/deadlock mà callback vẫn trả về bình thường: không commit phần còn lại
+                // (InnoDB đã rollback các câu trước đó khi deadlock), ném lỗi gốc để RetryPolicy chạy lại cả khối
+                throw swallowed;
+            }
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            SQLException hidden = tx.getTransientFailure();
+            if (hidden != null && hidden != e && RetryPolicy.classify(e) == null) {
+                // DAO đã nuốt lỗi BUSY/deadlock: ném lỗi gốc để RetryPolicy nhận ra và chạy lại
+                hidden.addSuppressed(e);
+                throw hidden;
+            }
+            throw e;
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /** Transaction đang mở trên luồng hiện tại, hoặc null. */
+    public static Transaction current() {
+        return CURRENT.get();
+    }
+
+    // ==========================
+    // Thống kê
+    // ==========================
+    public static String describe() {
+        return String.format("Transactions | commits: %d | rollbacks: %d | nested: %d | savepoint rollbacks: %d"
+                        + " | p50: %.2fms | p95: %.2fms | p99: %.2fms | max: %.2fms",
+                COMMITS.sum(), ROLLBACKS.sum(), NESTED.sum(), SAVEPOINT_ROLLBACKS.sum(),
+                DURATION.percentile(0.50) / 1000.0, DURATION.percentile(0.95) / 1000.0,
+                DURATION.percentile(0.99) / 1000.0, DURATION.getMaxMicros() / 1000.0);
+    }
+}
@@ -2,7 +2,12 @@ package coffeeshop.model;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 
 public class Order {
@@ -16,7 +21,12 @@ public class Order {
     
     private int orderId;
     private int customerId;
-    private List<OrderItem> orderItems;
+    // Dòng món theo thứ tự thêm + chỉ mục theo menu item id (dòng đầu tiên của món đó)
+    private final List<OrderItem> orderItems = new ArrayList<>();
+    private final Map<Integer, OrderItem> itemsByMenuId = new HashMap<>();
+    private final List<OrderItem> orderItemsView = Collections.unmodifiableList(orderItems);
+    private int totalItems;
+    private boolean duplicateLines;
     private OrderStatus status;
     private ServiceType serviceType;
     private LocalDateTime orderTime;
@@ -26,24 +36,26 @@ public class Order {
     private double discount;
     private double totalAmount;
     private String specialInstructions;
+    // Client sinh khi tạo giỏ: gửi lại cùng order (retry) không tạo order trùng
+    private String idempotencyKey;
     
     public Order(int orderId, int customerId, ServiceType serviceType) {
         this.orderId = orderId;
         this.customerId = customerId;
         this.serviceType = serviceType;
-        this.orderItems = new ArrayList<>();
         this.status = OrderStatus.PENDING;
         this.orderTime = LocalDateTime.now();
         this.specialInstructions = "";
+        this.idempotencyKey = UUID.randomUUID().toString();
         this.tax = 0.0;
         this.discount = 0.0;
     }
 
     public Order() {
-    this.orderItems = new ArrayList<>();
     this.status = OrderStatus.PENDING;
     this.orderTime = LocalDateTime.now();
     this.specialInstructions = "";
+    this.idempotencyKey = UUID.randomUUID().toString();
     this.tax = 0.0;
     this.discount = 0.0;
 }
@@ -56,8 +68,12 @@ public class Order {
         return customerId;
     }
     
+    /**
+     * Danh sách chỉ đọc, phản ánh thay đổi của order (không sao chép). Đổi số lượng qua
+     * addItem/updateItemQuantity/removeItem để tạm tính và số món được cập nhật.
+     */
     public List<OrderItem> getOrderItems() {
-        return new ArrayList<>(orderItems);
+        return orderItemsView;
     }
     
     public OrderStatus getStatus() {
@@ -97,6 +113,10 @@ public class Order {
         return specialInstructions;
     }
     
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+    
     public void setStatus(OrderStatus status) {
         this.status = status;
         if (status == OrderStatus.COMPLETED) {
@@ -112,7 +132,7 @@ public class Order {
     public void setDiscount(double discount) {
         if (discount >= 0) {
             this.discount = discount;
-            calculateTotal();
+            updateTotals();
         }
     }
     public void setOrderId(int orderId) {
@@ -130,25 +150,75 @@ public class Order {
     public void setOrderTime(LocalDateTime orderTime) {
         this.orderTime = orderTime;
     }
-    public void setOrderItems(List<OrderItem> items) { this.orderItems = items; }
+
+    /** Dùng khi nhập order đã hoàn thành từ trước (setStatus(COMPLETED) lấy thời điểm hiện tại). */
+    public void setCompletionTime(LocalDateTime completionTime) {
+        this.completionTime = completionTime;
+    }
+
+    /** null = không chống trùng (mỗi lần ghi là một order mới). */
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+    public void setOrderItems(List<OrderItem> items) {
+        if (items == orderItemsView) {
+            items = new ArrayList<>(items); // danh sách của chính order này: chụp trước khi xóa
+        }
+        orderItems.clear();
+        itemsByMenuId.clear();
+        subtotal = 0;
+        totalItems = 0;
+        duplicateLines = false;
+        // Đơn đã lưu có thể có nhiều dòng cùng món: giữ đủ các dòng, chỉ mục trỏ tới dòng đầu
+        for (OrderItem item : items) {
+            orderItems.add(item);
+            if (itemsByMenuId.putIfAbsent(item.getMenuItem().getId(), item) != null) {
+                duplicateLines = true;
+            }
+            subtotal += item.getItemTotal();
+            totalItems += item.getQuantity();
+        }
+        updateTotals();
+    }
     
     public void addItem(MenuItem menuItem, int quantity) {
         if (menuItem != null && quantity > 0) {
-            for (OrderItem item : orderItems) {
-                if (item.getMenuItem().getId() == menuItem.getId()) {
-                    item.setQuantity(item.getQuantity() + quantity);
-                    calculateTotal();
-                    return;
-                }
+            OrderItem item = itemsByMenuId.get(menuItem.getId());
+            if (item != null) {
+                item.setQuantity(item.getQuantity() + quantity);
+                subtotal += item.getUnitPrice() * quantity;
+            } else {
+                item = new OrderItem(menuItem, quantity);
+                orderItems.add(item);
+                itemsByMenuId.put(menuItem.getId(), item);
+                subtotal += item.getItemTotal();
             }
-            orderItems.add(new OrderItem(menuItem, quantity));
-            calculateTotal();
+            totalItems += quantity;
+            updateTotals();
         }
     }
     
     public void removeItem(int menuItemId) {
-        orderItems.removeIf(item -> item.getMenuItem().getId() == menuItemId);
-        calculateTotal();
+        OrderItem indexed = itemsByMenuId.remove(menuItemId);
+        if (indexed == null) {
+            return;
+        }
+        if (!duplicateLines) {
+            orderItems.remove(indexed);
+            subtotal -= indexed.getItemTotal();
+            totalItems -= indexed.getQuantity();
+            updateTotals();
+            return;
+        }
+        for (Iterator<OrderItem> it = orderItems.iterator(); it.hasNext(); ) {
+            OrderItem item = it.next();
+            if (item.getMenuItem().getId() == menuItemId) {
+                subtotal -= item.getItemTotal();
+                totalItems -= item.getQuantity();
+                it.remove();
+            }
+        }
+        updateTotals();
     }
     
     public void updateItemQuantity(int menuItemId, int newQuantity) {
@@ -157,25 +227,32 @@ public class Order {
             return;
         }
         
-        for (OrderItem item : orderItems) {
-            if (item.getMenuItem().getId() == menuItemId) {
-                item.setQuantity(newQuantity);
-                calculateTotal();
-                return;
-            }
+        OrderItem item = itemsByMenuId.get(menuItemId);
+        if (item != null) {
+            int delta = newQuantity - item.getQuantity();
+            item.setQuantity(newQuantity);
+            subtotal += item.getUnitPrice() * delta;
+            totalItems += delta;
+            updateTotals();
         }
     }
     
     public void clearOrder() {
         orderItems.clear();
-        calculateTotal();
+        itemsByMenuId.clear();
+        subtotal = 0;
+        totalItems = 0;
+        duplicateLines = false;
+        // Giỏ trống là order mới: không được trùng khóa với order vừa gửi
+        idempotencyKey = UUID.randomUUID().toString();
+        updateTotals();
     }
     
-    private void calculateTotal() {
-        subtotal = orderItems.stream()
-                .mapToDouble(item -> item.getMenuItem().calculatePrice() * item.getQuantity())
-                .sum();
-        
+    // Tạm tính được cộng/trừ theo từng dòng thay đổi; ở đây chỉ tính thuế và tổng
+    private void updateTotals() {
+        if (orderItems.isEmpty()) {
+            subtotal = 0; // bỏ sai số cộng dồn khi giỏ trống
+        }
         tax = subtotal * 0.10;        
         totalAmount = subtotal + tax - discount;        
         if (totalAmount < 0) {
@@ -188,9 +265,7 @@ public class Order {
     }
     
     public int getTotalItems() {
-        return orderItems.stream()
-                .mapToInt(OrderItem::getQuantity)
-                .sum();
+        return totalItems;
     }
     
     @Override
@@ -204,8 +279,7 @@ public class Order {
         
         sb.append("\nItems:\n");
         for (OrderItem item : orderItems) {
-            double line = item.getMenuItem().calculatePrice() * item.getQuantity();
-            long vnd = Math.round(line);
+            long vnd = Math.round(item.getItemTotal());
             sb.append(String.format("- %s x%d = %dđ\n", 
                     item.getMenuItem().getName(), 
                     item.getQuantity(), 
@@ -4,6 +4,8 @@ public class OrderItem {
     private MenuItem menuItem;
     private int quantity;
     private String customizations;
+    // Giá đã lưu trong order_items (đơn cũ); null = tính theo giá menu hiện tại
+    private Double unitPriceSnapshot;
     
     public OrderItem(MenuItem menuItem, int quantity) {
         if (menuItem == null) {
@@ -22,6 +24,12 @@ public class OrderItem {
         this(menuItem, quantity);
         this.customizations = customizations != null ? customizations : "";
     }
+
+    /** Dòng của đơn đã lưu: giá cố định theo unit_price lúc bán. */
+    public OrderItem(MenuItem menuItem, int quantity, String customizations, double unitPrice) {
+        this(menuItem, quantity, customizations);
+        this.unitPriceSnapshot = unitPrice;
+    }
     
     public MenuItem getMenuItem() {
         return menuItem;
@@ -46,11 +54,11 @@ public class OrderItem {
     }
     
     public double getItemTotal() {
-        return menuItem.calculatePrice() * quantity;
+        return getUnitPrice() * quantity;
     }
     
     public double getUnitPrice() {
-        return menuItem.calculatePrice();
+        return unitPriceSnapshot != null ? unitPriceSnapshot : menuItem.calculatePrice();
     }
     
     @Override
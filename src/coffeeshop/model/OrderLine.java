@@ -0,0 +1,91 @@
+package coffeeshop.model;
+
+/**
+ * Một dòng order đã lưu, dựng trực tiếp từ các cột của order_items.
+ * Giá là giá tại thời điểm bán (unit_price/total_price), không phụ thuộc giá menu hiện tại,
+ * nên tổng tiền của đơn cũ không thay đổi khi menu đổi giá hoặc món bị xóa.
+ */
+public class OrderLine {
+    private final int orderItemId;
+    private final int orderId;
+    private final int menuItemId;
+    private final String itemName;
+    private final int quantity;
+    private final double unitPrice;
+    private final double totalPrice;
+    private final String customizations;
+    private final String size;
+    private final Boolean hot;
+
+    public OrderLine(int orderItemId, int orderId, int menuItemId, String itemName, int quantity,
+                     double unitPrice, double totalPrice, String customizations, String size, Boolean hot) {
+        this.orderItemId = orderItemId;
+        this.orderId = orderId;
+        this.menuItemId = menuItemId;
+        this.itemName = itemName;
+        this.quantity = quantity;
+        this.unitPrice = unitPrice;
+        this.totalPrice = totalPrice;
+        this.customizations = customizations != null ? customizations : "";
+        this.size = size;
+        this.hot = hot;
+    }
+
+    public int getOrderItemId() {
+        return orderItemId;
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+
+    public int getMenuItemId() {
+        return menuItemId;
+    }
+
+    /** Tên món hiện tại trong menu, hoặc "Item #id" nếu món đã bị xóa. */
+    public String getItemName() {
+        return itemName != null ? itemName : "Item #" + menuItemId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public double getUnitPrice() {
+        return unitPrice;
+    }
+
+    public double getTotalPrice() {
+        return totalPrice;
+    }
+
+    public String getCustomizations() {
+        return customizations;
+    }
+
+    /** Cỡ ly (SMALL/MEDIUM/LARGE) nếu là cà phê, ngược lại null. */
+    public String getSize() {
+        return size;
+    }
+
+    /** Nóng/đá nếu là cà phê, ngược lại null. */
+    public Boolean isHot() {
+        return hot;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s x%3d = %dđ", getItemName(), quantity, Math.round(totalPrice)));
+        if (size != null) {
+            sb.append(" [").append(size);
+            if (hot != null) sb.append(hot ? ", hot" : ", iced");
+            sb.append("]");
+        }
+        if (!customizations.isEmpty()) {
+            sb.append(String.format(" (Customizations: %s)", customizations));
+        }
+        return sb.toString();
+    }
+}
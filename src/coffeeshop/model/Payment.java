@@ -90,6 +90,10 @@ public class Payment {
         this.status = status;
 }
     
+    public void setOrderId(int orderId) {
+        this.orderId = orderId;
+    }
+    
     public void setTransactionReference(String transactionReference) {
         this.transactionReference = transactionReference != null ? transactionReference : "";
     }
@@ -1,10 +1,9 @@
 package coffeeshop.ui;
 
+import coffeeshop.app.StartupOrchestrator;
 import coffeeshop.dao.CustomerDAO;
 import coffeeshop.dao.MenuItemDAO;
 import coffeeshop.dao.OrderDAO;
-import coffeeshop.dao.PaymentDAO;
-import coffeeshop.db.DatabaseConnection;
 import coffeeshop.model.Coffee;
 import coffeeshop.model.Customer;
 import coffeeshop.model.MenuItem;
@@ -20,6 +19,7 @@ import java.awt.Font;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.ButtonGroup;
@@ -72,7 +72,7 @@ public class CoffeeShopSwingApp extends JFrame {
 
     public CoffeeShopSwingApp() {
         super("Coffee Shop - Nhóm 8 OOP");
-        DatabaseConnection.getInstance().createTables();
+        StartupOrchestrator.getInstance().start();
         this.currentOrder = new Order(0, 1, Order.ServiceType.TAKEAWAY);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(850, 580);
@@ -106,8 +106,6 @@ public class CoffeeShopSwingApp extends JFrame {
         JPanel catPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         catPanel.add(new JLabel("Danh mục:"));
         categoryCombo.addItem("Tất cả");
-		for (String c : menuItemDAO.getAllCategories())
-			categoryCombo.addItem(c);
 
         categoryCombo.addActionListener(e -> loadMenu());
         catPanel.add(categoryCombo);
@@ -182,13 +180,13 @@ public class CoffeeShopSwingApp extends JFrame {
 		bottomBar.add(bottomCheckout);
 		root.add(bottomBar, BorderLayout.SOUTH);
 
-        loadMenu();
+        loadInitialMenu();
         updateOrderArea();
     }
 
     public CoffeeShopSwingApp(Customer customer) {
         super("Coffee Shop - Nhóm 8 OOP");
-        DatabaseConnection.getInstance().createTables();
+        StartupOrchestrator.getInstance().start();
         this.currentCustomer = customer;
         int cid = (customer != null) ? customer.getCustomerId() : 1;
         this.currentOrder = new Order(0, cid, Order.ServiceType.TAKEAWAY);
@@ -224,8 +222,6 @@ public class CoffeeShopSwingApp extends JFrame {
         JPanel catPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         catPanel.add(new JLabel("Danh mục:"));
         categoryCombo.addItem("Tất cả");
-        for (String c : menuItemDAO.getAllCategories())
-            categoryCombo.addItem(c);
 
         categoryCombo.addActionListener(e -> loadMenu());
         catPanel.add(categoryCombo);
@@ -300,7 +296,7 @@ public class CoffeeShopSwingApp extends JFrame {
         bottomBar.add(bottomCheckout);
         root.add(bottomBar, BorderLayout.SOUTH);
 
-        loadMenu();
+        loadInitialMenu();
         updateOrderArea();
     }
 
@@ -315,6 +311,38 @@ public class CoffeeShopSwingApp extends JFrame {
         return btn;
     }
 
+    /**
+     * Cửa sổ đầu tiên dùng danh mục và menu nạp sẵn trên luồng nền lúc khởi động (khung hiển thị trước
+     * khi có dữ liệu); các cửa sổ mở sau, hoặc khi menu đã bị sửa từ lúc nạp, đọc lại từ DB.
+     */
+    private void loadInitialMenu() {
+        StartupOrchestrator startup = StartupOrchestrator.getInstance();
+        if (!startup.claimPreloadedMenu()) {
+            loadCategories();
+            return;
+        }
+        startup.categories().thenCombine(startup.menuItems(), (cats, items) -> {
+            SwingUtilities.invokeLater(() -> {
+                if (!startup.isPreloadedMenuCurrent()) {
+                    loadCategories();
+                    return;
+                }
+                for (String c : cats) categoryCombo.addItem(c);
+                menuModel.clear();
+                for (MenuItem mi : items) menuModel.addElement(mi);
+            });
+            return null;
+        }).exceptionally(ex -> {
+            SwingUtilities.invokeLater(this::loadCategories);
+            return null;
+        });
+    }
+
+    private void loadCategories() {
+        for (String c : menuItemDAO.getAllCategories()) categoryCombo.addItem(c);
+        loadMenu();
+    }
+
     private void loadMenu() {
         menuModel.clear();
         String sel = (String) categoryCombo.getSelectedItem();
@@ -442,34 +470,44 @@ public class CoffeeShopSwingApp extends JFrame {
             JOptionPane.showMessageDialog(this, "Giỏ hàng trống");
             return;
         }
-        OrderDAO orderDAO = new OrderDAO();
-        int orderId = orderDAO.createOrder(currentOrder);
-        if (orderId > 0) {
-			double total = currentOrder.getTotalAmount();
-			if (showPaymentDialog(orderId, total)) {
-				JOptionPane.showMessageDialog(this,
-					"Thanh toán thành công cho đơn #" + orderId +
-					"\nSố tiền: " + toVND(total));
-				// Cập nhật trạng thái đơn
-				//orderDAO.createOrder(currentOrder) /*(orderId, Order.OrderStatus.COMPLETED)*/;
-                // Trừ kho và cập nhật trạng thái món
-                // boolean deducted = menuItemDAO.deductStockForOrder(currentOrder.getOrderItems());
-                // if (!deducted) {
-                //     System.err.println("Cảnh báo: Không thể trừ kho sau thanh toán");
-                // }
-                // Refresh menu nếu có món trở thành hết hàng
-                loadMenu();
-				currentOrder.clearOrder();
-				updateOrderArea();
-			} else {
-				JOptionPane.showMessageDialog(this, "Thanh toán thất bại hoặc đã hủy.");
-			}
-        } else {
-            JOptionPane.showMessageDialog(this, "Lưu đơn thất bại");
+        double total = currentOrder.getTotalAmount();
+        Payment payment = showPaymentDialog(total);
+        if (payment == null) {
+            JOptionPane.showMessageDialog(this, "Thanh toán thất bại hoặc đã hủy.");
+            return;
+        }
+        // Đơn và thanh toán được xếp hàng để ghi nền trong cùng một transaction; EDT không chờ DB
+        CompletableFuture<Integer> saved = new OrderDAO().submitOrder(currentOrder, payment);
+        if (saved.isCompletedExceptionally()) {
+            // Hàng đợi đầy hoặc không ghi được journal: giữ nguyên giỏ để thu ngân thử lại
+            String reason = saved.handle((id, ex) -> ex.getMessage()).join();
+            JOptionPane.showMessageDialog(this, "Chưa nhận được đơn: " + reason + "\nVui lòng thử lại sau giây lát.");
+            return;
         }
+        saved.whenComplete((id, ex) -> {
+            if (ex != null) {
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                    "Lưu đơn thất bại: " + ex.getMessage() + "\nĐơn sẽ được ghi lại khi khởi động lại ứng dụng."));
+            } else {
+                System.out.println("Order #" + id + " saved");
+            }
+        });
+        JOptionPane.showMessageDialog(this,
+            "Thanh toán thành công, đơn đang được lưu" +
+            "\nSố tiền: " + toVND(total));
+        // Trừ kho và cập nhật trạng thái món
+        // boolean deducted = menuItemDAO.deductStockForOrder(currentOrder.getOrderItems());
+        // if (!deducted) {
+        //     System.err.println("Cảnh báo: Không thể trừ kho sau thanh toán");
+        // }
+        // Refresh menu nếu có món trở thành hết hàng
+        loadMenu();
+        currentOrder.clearOrder();
+        updateOrderArea();
     }
 
-	private boolean showPaymentDialog(int orderId, double total) {
+	/** Thu tiền; trả về Payment đã xử lý (chưa lưu, chưa có mã đơn) hoặc null nếu hủy/thất bại. */
+	private Payment showPaymentDialog(double total) {
 		JDialog dialog = new JDialog(this, "Thanh toán", true);
 		dialog.setLayout(new BorderLayout(10, 10));
 		((JComponent) dialog.getContentPane()).setBorder(new EmptyBorder(12, 12, 12, 12));
@@ -496,14 +534,14 @@ public class CoffeeShopSwingApp extends JFrame {
 		actions.add(pay);
 		dialog.add(actions, BorderLayout.SOUTH);
 
-		final boolean[] success = new boolean[] { false };
+		final Payment[] result = new Payment[1];
 		pay.addActionListener((ActionEvent e) -> {
 			Payment.PaymentMethod pm = Payment.PaymentMethod.CASH;
 			String sel = (String) method.getSelectedItem();
 			if ("Thẻ".equals(sel)) pm = Payment.PaymentMethod.CREDIT_CARD;
 			else if ("Ví điện tử".equals(sel)) pm = Payment.PaymentMethod.MOBILE_PAYMENT;
 
-			Payment payment = new Payment(0, orderId, pm, total);
+			Payment payment = new Payment(0, 0, pm, total);
 			boolean processed = false;
 			if (pm == Payment.PaymentMethod.CASH) {
 				try {
@@ -523,9 +561,7 @@ public class CoffeeShopSwingApp extends JFrame {
 			}
 
 			if (processed) {
-				PaymentDAO pdao = new PaymentDAO();
-				pdao.createPayment(payment);
-				success[0] = true;
+				result[0] = payment;
 				dialog.dispose();
 			} else {
 				JOptionPane.showMessageDialog(dialog, "Xử lý thanh toán thất bại");
@@ -537,7 +573,7 @@ public class CoffeeShopSwingApp extends JFrame {
 		dialog.pack();
 		dialog.setLocationRelativeTo(this);
 		dialog.setVisible(true);
-		return success[0];
+		return result[0];
 	}
 
     private void showOrderHistory() {
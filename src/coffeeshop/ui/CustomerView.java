@@ -1,5 +1,6 @@
 package coffeeshop.ui;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -8,6 +9,7 @@ import coffeeshop.dao.CustomerDAO;
 import coffeeshop.dao.MenuItemDAO;
 import coffeeshop.dao.OrderDAO;
 import coffeeshop.dao.PaymentDAO;
+import coffeeshop.db.TransactionTemplate;
 import coffeeshop.model.Coffee;
 import coffeeshop.model.Customer;
 import coffeeshop.model.MenuItem;
@@ -360,10 +362,17 @@ public class CustomerView {
         System.out.print("\nEnter item name to remove: ");
         String itemName = scanner.nextLine().trim();
         
-        boolean removed = currentOrder.getOrderItems().removeIf(item -> 
-            item.getMenuItem().getName().equalsIgnoreCase(itemName));
+        // getOrderItems() chỉ đọc: tìm món theo tên rồi xóa qua Order để tổng tiền được cập nhật
+        Integer menuItemId = null;
+        for (OrderItem item : currentOrder.getOrderItems()) {
+            if (item.getMenuItem().getName().equalsIgnoreCase(itemName)) {
+                menuItemId = item.getMenuItem().getId();
+                break;
+            }
+        }
         
-        if (removed) {
+        if (menuItemId != null) {
+            currentOrder.removeItem(menuItemId);
             System.out.println("Item removed from order.");
         } else {
             System.out.println("Item not found in order.");
@@ -425,20 +434,42 @@ public class CustomerView {
                     paymentMethod = Payment.PaymentMethod.CASH;
             }
             
-            int orderId = orderDAO.createOrder(currentOrder);
-            Payment payment = new Payment(0, orderId, paymentMethod, totalAmount);
-            int paymentId = paymentDAO.createPayment(payment);
+            // Đơn hàng, thanh toán và điểm thưởng được lưu trong cùng một transaction
+            final Payment.PaymentMethod method = paymentMethod;
+            final int earned = (currentCustomer.getCustomerId() > 0 && method != Payment.PaymentMethod.LOYALTY_POINTS)
+                    ? (int)(totalAmount * 10) : 0;
+            final boolean[] pointsAdded = { false };
+            int[] ids;
+            try {
+                ids = TransactionTemplate.inTransaction(tx -> {
+                    int newOrderId = orderDAO.createOrder(currentOrder);
+                    if (newOrderId <= 0) throw new SQLException("Could not save order");
+                    Payment payment = new Payment(0, newOrderId, method, totalAmount);
+                    int newPaymentId = paymentDAO.createPayment(payment);
+                    if (newPaymentId <= 0) throw new SQLException("Could not save payment");
+                    if (currentCustomer.getCustomerId() > 0) {
+                        if (!pointsAdded[0]) {
+                            // Callback có thể chạy lại khi gặp lỗi tạm thời: chỉ cộng điểm một lần
+                            currentCustomer.addLoyaltyPoints(earned);
+                            pointsAdded[0] = true;
+                        }
+                        if (!customerDAO.updateCustomer(currentCustomer)) {
+                            throw new SQLException("Could not update loyalty points");
+                        }
+                    }
+                    return new int[] { newOrderId, newPaymentId };
+                });
+            } catch (SQLException e) {
+                // Transaction đã rollback: trả lại điểm đã cộng trong bộ nhớ
+                if (pointsAdded[0]) currentCustomer.redeemLoyaltyPoints(earned);
+                System.out.println("Payment failed, nothing was saved: " + e.getMessage());
+                return;
+            }
+            int orderId = ids[0];
+            int paymentId = ids[1];
             
             currentOrder.setStatus(Order.OrderStatus.CONFIRMED);
             
-            if (currentCustomer.getCustomerId() > 0) {
-                if (paymentMethod == Payment.PaymentMethod.LOYALTY_POINTS) {
-                } else {
-                    currentCustomer.addLoyaltyPoints((int)(totalAmount * 10)); 
-                }
-                customerDAO.updateCustomer(currentCustomer);
-            }
-            
             
             
             System.out.println("\n=== Order Confirmed ===");
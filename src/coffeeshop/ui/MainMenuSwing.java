@@ -1,7 +1,7 @@
 package coffeeshop.ui;
 
+import coffeeshop.app.StartupOrchestrator;
 import coffeeshop.dao.CustomerDAO;
-import coffeeshop.db.DatabaseConnection;
 import coffeeshop.model.Customer;
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -18,6 +18,7 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.RenderingHints;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowFocusListener;
 import javax.swing.ButtonGroup;
@@ -37,24 +38,36 @@ import javax.swing.border.EmptyBorder;
 
 
 public class MainMenuSwing extends JFrame {
+    private JButton actionButton;
+    private JLabel statusLabel;
     
     public MainMenuSwing() {
         super("Coffee Shop Management System");
-        initializeDatabase();
         setupUI();
+        initializeDatabase();
     }
     
+    /** DB được khởi tạo trên luồng nền; nút đăng nhập chỉ bật khi DB sẵn sàng. */
     private void initializeDatabase() {
-        try {
-            DatabaseConnection.getInstance();
-            DatabaseConnection.createTables();
-            DatabaseConnection.insertSampleData();
-            System.out.println("Database initialized successfully!");
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, 
-                "Database initialization failed: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        StartupOrchestrator startup = StartupOrchestrator.getInstance().start();
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                startup.markFirstPaint();
+            }
+        });
+        startup.databaseReady().whenComplete((ok, ex) -> SwingUtilities.invokeLater(() -> {
+            if (ex == null && Boolean.TRUE.equals(ok)) {
+                System.out.println("Database initialized successfully!");
+                statusLabel.setText(" ");
+                actionButton.setEnabled(true);
+            } else {
+                statusLabel.setText("Không thể kết nối cơ sở dữ liệu");
+                JOptionPane.showMessageDialog(this, 
+                    "Database initialization failed" + (ex != null ? ": " + ex.getMessage() : ""), 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
     }
     
     private void setupUI() {
@@ -204,6 +217,14 @@ public class MainMenuSwing extends JFrame {
         c.gridy = 6; c.gridx = 0; c.gridwidth = 2;
         card.add(actions, c);
 
+        statusLabel = new JLabel("Đang khởi động cơ sở dữ liệu...");
+        statusLabel.setFont(new Font("Segoe UI", Font.ITALIC, 12));
+        statusLabel.setForeground(new Color(140, 110, 90));
+        c.gridy = 7;
+        card.add(statusLabel, c);
+        actionButton = actionBtn;
+        actionBtn.setEnabled(false);
+
         final boolean[] registerMode = {false};
         Runnable updateMode = () -> {
             boolean isAdmin = rbAdmin.isSelected();
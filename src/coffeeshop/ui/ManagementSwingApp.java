@@ -1,5 +1,6 @@
 package coffeeshop.ui;
 
+import coffeeshop.app.StartupOrchestrator;
 import coffeeshop.dao.*;
 import coffeeshop.model.*;
 import java.awt.BorderLayout;
@@ -14,6 +15,7 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.RenderingHints;
 import java.util.List;
+import java.util.function.Function;
 import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
@@ -21,6 +23,7 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPasswordField;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
@@ -28,6 +31,7 @@ import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
 import javax.swing.table.DefaultTableModel;
@@ -47,6 +51,10 @@ public class ManagementSwingApp extends JFrame {
     private final Color panelBg = new Color(255, 253, 250);
     
     private boolean authenticated = false;
+    private boolean databaseFailureShown = false;
+    
+    /** Số dòng mỗi lần nạp cho các bảng Orders/Payments/Customers. */
+    private static final int PAGE_SIZE = 50;
 
     public ManagementSwingApp() {
         super("Coffee Shop Management System - Admin Panel");
@@ -61,6 +69,23 @@ public class ManagementSwingApp extends JFrame {
         setupUI();
     }
     
+    /**
+     * Các bảng được nạp lần đầu khi DB đã khởi động xong (trên luồng nền), để khung hiển thị ngay.
+     * DB không khởi động được thì không nạp tab nào, chỉ báo lỗi một lần cho cả cửa sổ.
+     */
+    private void whenDatabaseReady(Runnable load) {
+        StartupOrchestrator.getInstance().databaseReady().whenComplete((ok, ex) -> SwingUtilities.invokeLater(() -> {
+            if (ex == null && Boolean.TRUE.equals(ok)) {
+                load.run();
+            } else if (!databaseFailureShown) {
+                databaseFailureShown = true;
+                JOptionPane.showMessageDialog(this,
+                    "Database initialization failed" + (ex != null ? ": " + ex.getMessage() : ""),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+    
     private void initializeDAOs() {
         this.menuItemDAO = new MenuItemDAO();
         this.customerDAO = new CustomerDAO();
@@ -303,7 +328,7 @@ public class ManagementSwingApp extends JFrame {
         menuTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         
         // Load menu items
-        loadMenuItems(model);
+        whenDatabaseReady(() -> loadMenuItems(model));
         
         JScrollPane scrollPane = new JScrollPane(menuTable);
         scrollPane.setBorder(new TitledBorder("Menu Items"));
@@ -344,10 +369,12 @@ public class ManagementSwingApp extends JFrame {
         JTable ordersTable = new JTable(model);
         ordersTable.setRowHeight(25);
         
-        loadOrders(model);
+        PagedTable<Order> pager = new PagedTable<>(model, orderDAO::getOrdersPage, this::orderRow, "orders");
+        whenDatabaseReady(pager::reload);
         
         JScrollPane scrollPane = new JScrollPane(ordersTable);
         scrollPane.setBorder(new TitledBorder("All Orders"));
+        pager.attach(scrollPane);
         scrollPane.getViewport().setBackground(panelBg);
         
         panel.add(scrollPane, BorderLayout.CENTER);
@@ -356,9 +383,10 @@ public class ManagementSwingApp extends JFrame {
         JPanel buttonPanel = new JPanel(new FlowLayout());
         buttonPanel.setOpaque(false);
         JButton refreshBtn = createStaticCoffeeButton("Refresh", new Color(121, 85, 72));
-        refreshBtn.addActionListener(e -> loadOrders(model));
+        refreshBtn.addActionListener(e -> pager.reload());
         
         buttonPanel.add(refreshBtn);
+        buttonPanel.add(pager.getMoreButton());
         panel.add(buttonPanel, BorderLayout.SOUTH);
         
         return panel;
@@ -411,14 +439,14 @@ public class ManagementSwingApp extends JFrame {
     private void loadOrderItems(int orderId, DefaultTableModel model) {
         model.setRowCount(0);
         try {
-            List<OrderItem> items = orderDAO.getOrderItems(orderId);
-            for (OrderItem oi : items) {
+            List<OrderLine> items = orderDAO.getOrderLines(orderId);
+            for (OrderLine line : items) {
                 model.addRow(new Object[]{
-                    oi.getMenuItem().getName(),
-                    oi.getQuantity(),
-                    String.format("%.0fđ", oi.getUnitPrice()),
-                    String.format("%.0fđ", oi.getItemTotal()),
-                    oi.getCustomizations()
+                    line.getItemName(),
+                    line.getQuantity(),
+                    String.format("%.0fđ", line.getUnitPrice()),
+                    String.format("%.0fđ", line.getTotalPrice()),
+                    line.getCustomizations()
                 });
             }
             if (items.isEmpty()) {
@@ -445,10 +473,12 @@ public class ManagementSwingApp extends JFrame {
         JTable paymentsTable = new JTable(model);
         paymentsTable.setRowHeight(25);
         
-        loadPayments(model);
+        PagedTable<Payment> pager = new PagedTable<>(model, paymentDAO::getPaymentsPage, this::paymentRow, "payments");
+        whenDatabaseReady(pager::reload);
         
         JScrollPane scrollPane = new JScrollPane(paymentsTable);
         scrollPane.setBorder(new TitledBorder("All Payments (Invoices)"));
+        pager.attach(scrollPane);
         scrollPane.getViewport().setBackground(panelBg);
         
         panel.add(scrollPane, BorderLayout.CENTER);
@@ -457,9 +487,10 @@ public class ManagementSwingApp extends JFrame {
         JPanel buttonPanel = new JPanel(new FlowLayout());
         buttonPanel.setOpaque(false);
         JButton refreshBtn = createStaticCoffeeButton("Refresh", new Color(121, 85, 72));
-        refreshBtn.addActionListener(e -> loadPayments(model));
+        refreshBtn.addActionListener(e -> pager.reload());
         
         buttonPanel.add(refreshBtn);
+        buttonPanel.add(pager.getMoreButton());
         panel.add(buttonPanel, BorderLayout.SOUTH);
         
         return panel;
@@ -481,10 +512,12 @@ public class ManagementSwingApp extends JFrame {
         JTable customersTable = new JTable(model);
         customersTable.setRowHeight(25);
         
-        loadCustomers(model);
+        PagedTable<Customer> pager = new PagedTable<>(model, customerDAO::getCustomersPage, this::customerRow, "customers");
+        whenDatabaseReady(pager::reload);
         
         JScrollPane scrollPane = new JScrollPane(customersTable);
         scrollPane.setBorder(new TitledBorder("Customers"));
+        pager.attach(scrollPane);
         scrollPane.getViewport().setBackground(panelBg);
         
         panel.add(scrollPane, BorderLayout.CENTER);
@@ -493,9 +526,10 @@ public class ManagementSwingApp extends JFrame {
         JPanel buttonPanel = new JPanel(new FlowLayout());
         buttonPanel.setOpaque(false);
         JButton refreshBtn = createStaticCoffeeButton("Refresh", new Color(121, 85, 72));
-        refreshBtn.addActionListener(e -> loadCustomers(model));
+        refreshBtn.addActionListener(e -> pager.reload());
         
         buttonPanel.add(refreshBtn);
+        buttonPanel.add(pager.getMoreButton());
         panel.add(buttonPanel, BorderLayout.SOUTH);
         
         return panel;
@@ -512,7 +546,7 @@ public class ManagementSwingApp extends JFrame {
         reportsArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
         reportsArea.setBackground(new Color(248, 248, 248));
         
-        loadReports(reportsArea);
+        whenDatabaseReady(() -> loadReports(reportsArea));
         
         JScrollPane scrollPane = new JScrollPane(reportsArea);
         scrollPane.setBorder(new TitledBorder("Reports & Analytics"));
@@ -630,81 +664,129 @@ public class ManagementSwingApp extends JFrame {
         }
     }
     
-    private void loadOrders(DefaultTableModel model) {
-        model.setRowCount(0);
-        try {
-            List<Order> orders = orderDAO.getAllOrders();
-            for (Order order : orders) {
-                Customer customer = customerDAO.getCustomerById(order.getCustomerId());
-                String customerName = (customer != null) ? customer.getName() : "Unknown";
-                model.addRow(new Object[]{
-                    order.getOrderId(),
-                    customerName,
-                    order.getServiceType(),
-                    String.format("%.0fđ", order.getTotalAmount()),
-                    order.getStatus(),
-                    order.getOrderTime().toString().substring(0, 16)
-                });
-            }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error loading orders: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
-        }
+    private Object[] orderRow(Order order) {
+        Customer customer = customerDAO.getCustomerById(order.getCustomerId());
+        String customerName = (customer != null) ? customer.getName() : "Unknown";
+        return new Object[]{
+            order.getOrderId(),
+            customerName,
+            order.getServiceType(),
+            String.format("%.0fđ", order.getTotalAmount()),
+            order.getStatus(),
+            order.getOrderTime().toString().substring(0, 16)
+        };
     }
     
-    private void loadPayments(DefaultTableModel model) {
-        model.setRowCount(0);
-        try {
-            List<Payment> payments = paymentDAO.getAllPayments();
-            
-            for (Payment payment : payments) {
-                Order order = orderDAO.getOrderById(payment.getOrderId());
-                String customerName = "Unknown";
-                if (order != null) {
-                    Customer customer = customerDAO.getCustomerById(order.getCustomerId());
-                    if (customer != null) {
-                        customerName = customer.getName();
-                    }
-                }
-                
-                String paymentDate = "N/A";
-                if (payment.getPaymentTime() != null) {
-                    paymentDate = payment.getPaymentTime().toString().substring(0, 16);
-                }
-                
-                model.addRow(new Object[]{
-                    payment.getPaymentId(),
-                    payment.getOrderId(),
-                    payment.getPaymentMethod(),
-                    String.format("%.0fđ", payment.getAmount()),
-                    payment.getStatus(),
-                    paymentDate,
-                    customerName
-                });
+    private Object[] paymentRow(Payment payment) {
+        Order order = orderDAO.getOrderById(payment.getOrderId());
+        String customerName = "Unknown";
+        if (order != null) {
+            Customer customer = customerDAO.getCustomerById(order.getCustomerId());
+            if (customer != null) {
+                customerName = customer.getName();
             }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error loading payments: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
         }
+        
+        String paymentDate = "N/A";
+        if (payment.getPaymentTime() != null) {
+            paymentDate = payment.getPaymentTime().toString().substring(0, 16);
+        }
+        
+        return new Object[]{
+            payment.getPaymentId(),
+            payment.getOrderId(),
+            payment.getPaymentMethod(),
+            String.format("%.0fđ", payment.getAmount()),
+            payment.getStatus(),
+            paymentDate,
+            customerName
+        };
     }
     
-    private void loadCustomers(DefaultTableModel model) {
-        model.setRowCount(0);
-        try {
-            List<Customer> customers = customerDAO.getAllCustomers();
-            for (Customer customer : customers) {
-                model.addRow(new Object[]{
-                    customer.getCustomerId(),
-                    customer.getName(),
-                    customer.getEmail(),
-                    customer.getPhoneNumber(),
-                    customer.getLoyaltyPoints(),
-                    customer.getRegistrationDate().toString().substring(0, 10)
-                });
+    private Object[] customerRow(Customer customer) {
+        return new Object[]{
+            customer.getCustomerId(),
+            customer.getName(),
+            customer.getEmail(),
+            customer.getPhoneNumber(),
+            customer.getLoyaltyPoints(),
+            customer.getRegistrationDate().toString().substring(0, 10)
+        };
+    }
+    
+    /** Lấy một trang sau con trỏ (null = trang đầu). */
+    private interface PageLoader<T> {
+        Page<T> load(Page.Cursor after, int limit);
+    }
+    
+    /**
+     * Bảng phân trang theo khóa: Refresh nạp lại trang đầu, "Load More" hoặc cuộn tới cuối bảng
+     * nạp trang tiếp theo, nên chỉ những dòng đã xem mới được đọc vào bộ nhớ.
+     */
+    private final class PagedTable<T> {
+        private final DefaultTableModel model;
+        private final PageLoader<T> loader;
+        private final Function<T, Object[]> toRow;
+        private final String what;
+        private final JButton moreButton;
+        private Page.Cursor next;
+        private boolean loading;
+        
+        PagedTable(DefaultTableModel model, PageLoader<T> loader, Function<T, Object[]> toRow, String what) {
+            this.model = model;
+            this.loader = loader;
+            this.toRow = toRow;
+            this.what = what;
+            this.moreButton = createStaticCoffeeButton("Load More", new Color(121, 85, 72));
+            this.moreButton.setEnabled(false);
+            this.moreButton.addActionListener(e -> loadMore());
+        }
+        
+        JButton getMoreButton() {
+            return moreButton;
+        }
+        
+        void reload() {
+            model.setRowCount(0);
+            next = null;
+            loadPage(null);
+        }
+        
+        void loadMore() {
+            if (next != null) {
+                loadPage(next);
             }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error loading customers: " + e.getMessage(), 
-                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        
+        /** Tự nạp trang tiếp khi cuộn tới cuối (chỉ khi bảng đã dài hơn khung nhìn). */
+        void attach(JScrollPane scrollPane) {
+            scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+                JScrollBar bar = (JScrollBar) e.getAdjustable();
+                if (!e.getValueIsAdjusting() && bar.getMaximum() > bar.getVisibleAmount()
+                        && bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum()) {
+                    loadMore();
+                }
+            });
+        }
+        
+        private void loadPage(Page.Cursor after) {
+            if (loading) {
+                return;
+            }
+            loading = true;
+            try {
+                Page<T> page = loader.load(after, PAGE_SIZE);
+                for (T item : page.getItems()) {
+                    model.addRow(toRow.apply(item));
+                }
+                next = page.getNextCursor();
+            } catch (Exception e) {
+                JOptionPane.showMessageDialog(ManagementSwingApp.this, "Error loading " + what + ": " + e.getMessage(), 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            } finally {
+                loading = false;
+            }
+            moreButton.setEnabled(next != null);
         }
     }
     
@@ -712,10 +794,12 @@ public class ManagementSwingApp extends JFrame {
     
     private void loadReports(JTextArea reportsArea) {
         StringBuilder report = new StringBuilder();
+        // Số liệu giữ trong bộ nhớ, cập nhật theo từng lần ghi: không truy vấn DB mỗi lần bấm
+        LiveStats liveStats = LiveStats.get();
         
         try {
             // Order Statistics
-            OrderDAO.OrderStats orderStats = orderDAO.getOrderStats();
+            OrderDAO.OrderStats orderStats = liveStats.getOrderStats();
             report.append("=== ORDER STATISTICS ===\n");
             report.append("Total Orders: ").append(orderStats.getTotalOrders()).append("\n");
             report.append("Pending Orders: ").append(orderStats.getPendingOrders()).append("\n");
@@ -725,7 +809,7 @@ public class ManagementSwingApp extends JFrame {
             report.append(String.format("Total Revenue: %.0fđ\n\n", orderStats.getTotalRevenue()));
             
             // Payment Statistics
-            PaymentDAO.PaymentStats paymentStats = paymentDAO.getPaymentStats();
+            PaymentDAO.PaymentStats paymentStats = liveStats.getPaymentStats();
             report.append("=== PAYMENT STATISTICS ===\n");
             report.append("Total Payments: ").append(paymentStats.getTotalPayments()).append("\n");
             report.append("Completed Payments: ").append(paymentStats.getCompletedPayments()).append("\n");
@@ -737,8 +821,8 @@ public class ManagementSwingApp extends JFrame {
             
             // Menu Statistics
             report.append("=== MENU STATISTICS ===\n");
-            report.append("Total Menu Items: ").append(menuItemDAO.getMenuItemCount()).append("\n");
-            report.append("Available Items: ").append(menuItemDAO.getAvailableMenuItemCount()).append("\n");
+            report.append("Total Menu Items: ").append(liveStats.getMenuItemCount()).append("\n");
+            report.append("Available Items: ").append(liveStats.getAvailableMenuItemCount()).append("\n");
             
         } catch (Exception e) {
             report.append("Error generating reports: ").append(e.getMessage());
@@ -3,6 +3,8 @@ package coffeeshop.ui;
 import coffeeshop.dao.*;
 import coffeeshop.db.DatabaseConnection;
 import coffeeshop.model.*;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -15,6 +17,9 @@ public class ManagementView {
     private PaymentDAO paymentDAO;
     private IngredientDAO ingredientDAO;
     
+    /** Số dòng mỗi trang khi xem danh sách orders/payments/customers. */
+    private static final int PAGE_SIZE = 20;
+    
     public ManagementView() {
         this.scanner = new Scanner(System.in);
         this.menuItemDAO = new MenuItemDAO();
@@ -56,14 +61,14 @@ public class ManagementView {
                 return;
             }
 
-            List<OrderItem> items = orderDAO.getOrderItems(orderId);
+            List<OrderLine> items = orderDAO.getOrderLines(orderId);
             displayOrderItems(items, orderId);
         } catch (Exception e) {
             System.out.println("Error retrieving order items: " + e.getMessage());
         }
     }
 
-    private void displayOrderItems(List<OrderItem> items, int orderId) {
+    private void displayOrderItems(List<OrderLine> items, int orderId) {
         System.out.println("\n=== Order Items for Order #" + orderId + " ===");
         if (items == null || items.isEmpty()) {
             System.out.println("No items found.");
@@ -73,13 +78,13 @@ public class ManagementView {
             "Item", "Qty", "Unit Price", "Line Total", "Customizations");
         System.out.println("-".repeat(95));
 
-        for (OrderItem oi : items) {
+        for (OrderLine line : items) {
             System.out.printf("%-25s %-6d %-12.2f %-12.2f %-30s%n",
-                oi.getMenuItem().getName(),
-                oi.getQuantity(),
-                oi.getUnitPrice(),
-                oi.getItemTotal(),
-                oi.getCustomizations());
+                line.getItemName(),
+                line.getQuantity(),
+                line.getUnitPrice(),
+                line.getTotalPrice(),
+                line.getCustomizations());
         }
     }
 
@@ -155,10 +160,11 @@ public class ManagementView {
             System.out.println("1. View All Orders");
             System.out.println("2. View Pending Orders");
             System.out.println("3. Update Order Status");
-            System.out.println("4. Search Orders");
-            System.out.println("5. Cancel Order");
-            System.out.println("6. Back to Main Menu");
-            System.out.print("Choose option (1-6): ");
+            System.out.println("4. Bulk Update Order Status");
+            System.out.println("5. Search Orders");
+            System.out.println("6. Cancel Order");
+            System.out.println("7. Back to Main Menu");
+            System.out.print("Choose option (1-7): ");
             
             int choice = getIntInput();
             
@@ -173,12 +179,15 @@ public class ManagementView {
                     updateOrderStatus();
                     break;
                 case 4:
-                    searchOrders();
+                    bulkUpdateOrderStatus();
                     break;
                 case 5:
-                    cancelOrder();
+                    searchOrders();
                     break;
                 case 6:
+                    cancelOrder();
+                    break;
+                case 7:
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -188,8 +197,12 @@ public class ManagementView {
     
     private void viewAllOrders() {
         try {
-            List<Order> orders = orderDAO.getAllOrders();
-            displayOrders(orders, "All Orders");
+            Page<Order> page = orderDAO.getOrdersPage(null, PAGE_SIZE);
+            displayOrders(page.getItems(), "All Orders");
+            while (askForNextPage(page)) {
+                page = orderDAO.getOrdersPage(page.getNextCursor(), PAGE_SIZE);
+                displayOrders(page.getItems(), "All Orders (continued)");
+            }
         } catch (Exception e) {
             System.out.println("Error retrieving orders: " + e.getMessage());
         }
@@ -197,11 +210,28 @@ public class ManagementView {
     
     private void viewPendingOrders() {
     try {
-        List<Order> orders = orderDAO.getOrdersByStatus(Order.OrderStatus.PENDING);
-        orders.addAll(orderDAO.getOrdersByStatus(Order.OrderStatus.CONFIRMED));
-        orders.addAll(orderDAO.getOrdersByStatus(Order.OrderStatus.PREPARING));
+        // Theo hàng đợi bếp trong bộ nhớ (thứ tự pha chế + ETA), không đọc lại order và món từ DB
+        KitchenQueue kitchen = KitchenQueue.get();
+        List<KitchenQueue.Ticket> tickets = kitchen.getActiveOrders();
+        if (tickets.isEmpty()) {
+            System.out.println("\nNo orders found.");
+            return;
+        }
 
-        displayOrders(orders, "Pending Orders");
+        System.out.println("\n=== Pending Orders (kitchen order) ===");
+        System.out.printf("%-8s %-12s %-12s %-8s %-10s %-8s%n",
+            "Order ID", "Service Type", "Status", "Placed", "Prep", "ETA");
+        System.out.println("-".repeat(64));
+        for (KitchenQueue.Ticket ticket : tickets) {
+            Duration eta = kitchen.eta(ticket.getOrderId());
+            System.out.printf("%-8d %-12s %-12s %-8s %-10s %-8s%n",
+                ticket.getOrderId(),
+                ticket.getServiceType(),
+                ticket.getStatus(),
+                ticket.getPlacedAt().format(DateTimeFormatter.ofPattern("HH:mm")),
+                ticket.getPrepSeconds() / 60 + " min",
+                eta == null ? "-" : eta.toMinutes() + " min");
+        }
     } catch (Exception e) {
         System.out.println("Error retrieving pending orders: " + e.getMessage());
     }
@@ -284,6 +314,64 @@ public class ManagementView {
         }
     }
     
+    private void bulkUpdateOrderStatus() {
+        System.out.println("\n=== Bulk Update Order Status ===");
+        System.out.println("1. PREPARING -> READY");
+        System.out.println("2. READY -> COMPLETED");
+        System.out.println("3. PENDING -> CONFIRMED");
+        System.out.println("4. CONFIRMED -> PREPARING");
+        System.out.print("Choose transition (1-4): ");
+        
+        Order.OrderStatus from;
+        Order.OrderStatus to;
+        switch (getIntInput()) {
+            case 1: from = Order.OrderStatus.PREPARING; to = Order.OrderStatus.READY; break;
+            case 2: from = Order.OrderStatus.READY; to = Order.OrderStatus.COMPLETED; break;
+            case 3: from = Order.OrderStatus.PENDING; to = Order.OrderStatus.CONFIRMED; break;
+            case 4: from = Order.OrderStatus.CONFIRMED; to = Order.OrderStatus.PREPARING; break;
+            default:
+                System.out.println("Invalid choice.");
+                return;
+        }
+        
+        System.out.print("Enter Order IDs (comma separated): ");
+        List<OrderDAO.StatusTransition> transitions = new ArrayList<>();
+        for (String part : scanner.nextLine().split("[,\\s]+")) {
+            if (part.isEmpty()) continue;
+            try {
+                transitions.add(new OrderDAO.StatusTransition(Integer.parseInt(part), from, to));
+            } catch (NumberFormatException e) {
+                System.out.println("Skipping invalid Order ID: " + part);
+            }
+        }
+        if (transitions.isEmpty()) {
+            System.out.println("No orders to update.");
+            return;
+        }
+        
+        try {
+            for (OrderDAO.TransitionResult result : orderDAO.updateOrderStatuses(transitions)) {
+                int orderId = result.getTransition().getOrderId();
+                switch (result.getOutcome()) {
+                    case UPDATED:
+                        System.out.println("Order #" + orderId + ": " + from + " -> " + to);
+                        break;
+                    case STALE:
+                        System.out.println("Order #" + orderId + ": skipped, status is " + result.getCurrentStatus());
+                        break;
+                    case NOT_FOUND:
+                        System.out.println("Order #" + orderId + ": not found");
+                        break;
+                    default:
+                        System.out.println("Order #" + orderId + ": failed, nothing was updated");
+                        break;
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("Error updating order statuses: " + e.getMessage());
+        }
+    }
+    
     private void searchOrders() {
         System.out.println("\n=== Search Orders ===");
         System.out.println("1. Search by Customer Name");
@@ -907,8 +995,12 @@ public class ManagementView {
     
     private void viewAllCustomers() {
         try {
-            List<Customer> customers = customerDAO.getAllCustomers();
-            displayCustomers(customers, "All Customers");
+            Page<Customer> page = customerDAO.getCustomersPage(null, PAGE_SIZE);
+            displayCustomers(page.getItems(), "All Customers");
+            while (askForNextPage(page)) {
+                page = customerDAO.getCustomersPage(page.getNextCursor(), PAGE_SIZE);
+                displayCustomers(page.getItems(), "All Customers (continued)");
+            }
         } catch (Exception e) {
             System.out.println("Error retrieving customers: " + e.getMessage());
         }
@@ -1067,8 +1159,11 @@ public class ManagementView {
             System.out.println("4. View All Payments (Invoices)");
             System.out.println("5. Popular Menu Items");
             System.out.println("6. Revenue Summary");
-            System.out.println("7. Back to Main Menu");
-            System.out.print("Choose option (1-7): ");
+            System.out.println("7. Hourly Sales (Today)");
+            System.out.println("8. Rebuild Sales Rollup");
+            System.out.println("9. Archive Old Orders");
+            System.out.println("10. Back to Main Menu");
+            System.out.print("Choose option (1-10): ");
             
             int choice = getIntInput();
             
@@ -1092,6 +1187,15 @@ public class ManagementView {
                     revenueSummary();
                     break;
                 case 7:
+                    hourlySalesReport();
+                    break;
+                case 8:
+                    rebuildSalesRollup();
+                    break;
+                case 9:
+                    archiveOldOrders();
+                    break;
+                case 10:
                     return;
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -1101,22 +1205,21 @@ public class ManagementView {
     
     private void dailySalesReport() {
         try {
-            LocalDateTime startOfDay = LocalDateTime.now().toLocalDate().atStartOfDay();
-            LocalDateTime endOfDay = LocalDateTime.now();
-            
-            List<Order> todayOrders = orderDAO.getOrdersByDateRange(startOfDay, endOfDay);
+            LocalDate today = LocalDate.now();
+            List<OrderDAO.SalesRow> rows = orderDAO.getDailySales(today, today);
             
             System.out.println("\n=== Daily Sales Report ===");
-            System.out.println("Date: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("MM/dd/yyyy")));
+            System.out.println("Date: " + today.format(DateTimeFormatter.ofPattern("MM/dd/yyyy")));
             
             double totalRevenue = 0;
-            int totalOrders = todayOrders.size();
+            int totalOrders = 0;
             int completedOrders = 0;
             
-            for (Order order : todayOrders) {
-                if (order.getStatus() == Order.OrderStatus.COMPLETED) {
-                    totalRevenue += order.getTotalAmount();
-                    completedOrders++;
+            for (OrderDAO.SalesRow row : rows) {
+                totalOrders += row.getOrderCount();
+                if (row.getStatus() == Order.OrderStatus.COMPLETED) {
+                    totalRevenue += row.getRevenue();
+                    completedOrders += row.getOrderCount();
                 }
             }
             
@@ -1132,7 +1235,69 @@ public class ManagementView {
             System.out.println("Error generating daily sales report: " + e.getMessage());
         }
     }
+
+    private void hourlySalesReport() {
+        try {
+            LocalDate today = LocalDate.now();
+            List<OrderDAO.SalesRow> rows = orderDAO.getHourlySales(today);
+
+            System.out.println("\n=== Hourly Sales (" + today.format(DateTimeFormatter.ofPattern("MM/dd/yyyy")) + ") ===");
+            if (rows.isEmpty()) {
+                System.out.println("No orders today.");
+                return;
+            }
+            System.out.printf("%-6s %-8s %-10s %-12s%n", "Hour", "Orders", "Completed", "Revenue");
+            System.out.println("-".repeat(40));
+
+            // Gộp các nhóm loại phục vụ/trạng thái của cùng một giờ
+            Map<Integer, int[]> counts = new TreeMap<>();
+            Map<Integer, Double> revenue = new TreeMap<>();
+            for (OrderDAO.SalesRow row : rows) {
+                int[] c = counts.computeIfAbsent(row.getHour(), h -> new int[2]);
+                c[0] += row.getOrderCount();
+                if (row.getStatus() == Order.OrderStatus.COMPLETED) {
+                    c[1] += row.getOrderCount();
+                    revenue.merge(row.getHour(), row.getRevenue(), Double::sum);
+                }
+            }
+            for (Map.Entry<Integer, int[]> e : counts.entrySet()) {
+                System.out.printf("%02d:00  %-8d %-10d $%-11.2f%n", e.getKey(), e.getValue()[0], e.getValue()[1],
+                        revenue.getOrDefault(e.getKey(), 0.0));
+            }
+        } catch (Exception e) {
+            System.out.println("Error generating hourly sales report: " + e.getMessage());
+        }
+    }
+
+    private void rebuildSalesRollup() {
+        System.out.println("Recomputing sales rollup from all orders...");
+        int orders = orderDAO.rebuildSalesRollup();
+        if (orders >= 0) {
+            System.out.println("Sales rollup rebuilt from " + orders + " orders.");
+        } else {
+            System.out.println("Failed to rebuild sales rollup.");
+        }
+    }
     
+    private void archiveOldOrders() {
+        int defaultDays = DatabaseConnection.getIntSetting("db.archive.afterDays", 90);
+        System.out.print("Archive completed/cancelled orders older than how many days? [" + defaultDays + "]: ");
+        String input = scanner.nextLine().trim();
+        int days;
+        try {
+            days = input.isEmpty() ? defaultDays : Integer.parseInt(input);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number of days.");
+            return;
+        }
+        int moved = orderDAO.archiveOrders(days);
+        if (moved >= 0) {
+            System.out.println("Moved " + moved + " orders to the archive.");
+        } else {
+            System.out.println("Failed to archive orders.");
+        }
+    }
+
     private void orderStatistics() {
         try {
             OrderDAO.OrderStats stats = orderDAO.getOrderStats();
@@ -1168,9 +1333,9 @@ public class ManagementView {
 
     private void viewAllPayments() {
         try {
-            List<Payment> payments = paymentDAO.getAllPayments();
+            Page<Payment> page = paymentDAO.getPaymentsPage(null, PAGE_SIZE);
             
-            if (payments.isEmpty()) {
+            if (page.isEmpty()) {
                 System.out.println("\nNo payments found.");
                 return;
             }
@@ -1180,54 +1345,66 @@ public class ManagementView {
                 "Payment ID", "Order ID", "Payment Method", "Amount", "Status", "Date", "Customer");
             System.out.println("-".repeat(100));
             
-            for (Payment payment : payments) {
-                try {
-                    // Get order details
-                    Order order = orderDAO.getOrderById(payment.getOrderId());
-                    String customerName = "Unknown";
-                    if (order != null) {
-                        Customer customer = customerDAO.getCustomerById(order.getCustomerId());
-                        if (customer != null) {
-                            customerName = customer.getName();
-                        }
-                    }
-                    
-                    String paymentDate = "N/A";
-                    if (payment.getPaymentTime() != null) {
-                        paymentDate = payment.getPaymentTime().format(DateTimeFormatter.ofPattern("MM/dd HH:mm"));
-                    }
-                    
-                    System.out.printf("%-10d %-8d %-15s $%-11.2f %-10s %-12s %-15s%n",
-                        payment.getPaymentId(),
-                        payment.getOrderId(),
-                        payment.getPaymentMethod(),
-                        payment.getAmount(),
-                        payment.getStatus(),
-                        paymentDate,
-                        customerName);
-                        
-                } catch (Exception e) {
-                    System.out.println("Error displaying payment " + payment.getPaymentId() + ": " + e.getMessage());
-                }
+            displayPayments(page.getItems());
+            while (askForNextPage(page)) {
+                page = paymentDAO.getPaymentsPage(page.getNextCursor(), PAGE_SIZE);
+                displayPayments(page.getItems());
             }
             
-            // Show summary
+            // Tổng hợp tính bằng SQL trên toàn bảng, không cần nạp hết các trang
+            PaymentDAO.PaymentStats stats = paymentDAO.getPaymentStats();
             System.out.println("\n=== Payment Summary ===");
-            double totalAmount = payments.stream().mapToDouble(Payment::getAmount).sum();
-            long completedCount = payments.stream().filter(p -> p.getStatus().equals("COMPLETED")).count();
-            long pendingCount = payments.stream().filter(p -> p.getStatus().equals("PENDING")).count();
-            long cancelledCount = payments.stream().filter(p -> p.getStatus().equals("CANCELLED")).count();
-            
-            System.out.printf("Total Payments: %d%n", payments.size());
-            System.out.printf("Completed: %d%n", completedCount);
-            System.out.printf("Pending: %d%n", pendingCount);
-            System.out.printf("Cancelled: %d%n", cancelledCount);
-            System.out.printf("Total Amount: $%.2f%n", totalAmount);
+            System.out.printf("Total Payments: %d%n", stats.getTotalPayments());
+            System.out.printf("Completed: %d%n", stats.getCompletedPayments());
+            System.out.printf("Cancelled: %d%n", stats.getCancelledPayments());
+            System.out.printf("Total Amount: $%.2f%n", stats.getTotalRevenue());
             
         } catch (Exception e) {
             System.out.println("Error retrieving payments: " + e.getMessage());
         }
     }
+    
+    private void displayPayments(List<Payment> payments) {
+        for (Payment payment : payments) {
+            try {
+                // Get order details
+                Order order = orderDAO.getOrderById(payment.getOrderId());
+                String customerName = "Unknown";
+                if (order != null) {
+                    Customer customer = customerDAO.getCustomerById(order.getCustomerId());
+                    if (customer != null) {
+                        customerName = customer.getName();
+                    }
+                }
+                
+                String paymentDate = "N/A";
+                if (payment.getPaymentTime() != null) {
+                    paymentDate = payment.getPaymentTime().format(DateTimeFormatter.ofPattern("MM/dd HH:mm"));
+                }
+                
+                System.out.printf("%-10d %-8d %-15s $%-11.2f %-10s %-12s %-15s%n",
+                    payment.getPaymentId(),
+                    payment.getOrderId(),
+                    payment.getPaymentMethod(),
+                    payment.getAmount(),
+                    payment.getStatus(),
+                    paymentDate,
+                    customerName);
+                    
+            } catch (Exception e) {
+                System.out.println("Error displaying payment " + payment.getPaymentId() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /** Hỏi có xem trang tiếp không; false nếu đã hết dữ liệu hoặc người dùng dừng. */
+    private boolean askForNextPage(Page<?> page) {
+        if (!page.hasMore()) {
+            return false;
+        }
+        System.out.print("\nPress Enter for more, or 'q' to stop: ");
+        return !scanner.nextLine().trim().equalsIgnoreCase("q");
+    }
 
     
     private void popularMenuItems() {
@@ -1264,6 +1441,16 @@ public class ManagementView {
             // Database connection status
             DatabaseConnection dbConn = DatabaseConnection.getInstance();
             System.out.println("Database: Connected");
+            System.out.println("  " + DatabaseConnection.getPoolStats());
+            System.out.println("  " + DatabaseConnection.getStatementCacheStats());
+            System.out.println("  " + DatabaseConnection.getTransactionStats());
+            System.out.println("  " + DatabaseConnection.getRetryStats());
+            if (DatabaseConnection.getWriter() != null) {
+                System.out.println("  " + DatabaseConnection.getWriter());
+            }
+            System.out.println("  " + OrderDAO.getSubmissionQueueStats());
+            System.out.println("  " + LiveStats.get());
+            System.out.println(DatabaseConnection.getJdbcMetricsSummary(5));
             
             
             
@@ -1282,13 +1469,15 @@ public class ManagementView {
                     .orElse("None"));
             }
             
-            // Order queue
-            List<Order> pendingOrders = orderDAO.getOrdersByStatus(Order.OrderStatus.PENDING);
-            List<Order> preparingOrders = orderDAO.getOrdersByStatus(Order.OrderStatus.PREPARING);
+            // Order queue (hàng đợi bếp trong bộ nhớ)
+            KitchenQueue kitchen = KitchenQueue.get();
+            KitchenQueue.Ticket next = kitchen.next();
             
             System.out.println("\nOrder Queue:");
-            System.out.println("  Pending Orders: " + pendingOrders.size());
-            System.out.println("  Preparing Orders: " + preparingOrders.size());
+            System.out.println("  Waiting Orders: " + kitchen.getWaitingCount());
+            System.out.println("  Preparing Orders: " + kitchen.getPreparingCount());
+            System.out.println("  Next Order: " + (next == null ? "None" : "#" + next.getOrderId()));
+            System.out.println("  " + kitchen);
             
             System.out.println("\nSystem Time: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss")));
             